@@ -0,0 +1,54 @@
+package com.github.consistenthash.benchmark;
+
+import java.util.Random;
+
+import com.github.consistenthash.hasher.HashFunction;
+import com.github.consistenthash.hasher.MD5HashFunction;
+import com.github.consistenthash.hasher.Murmur3HashFunction;
+import com.github.consistenthash.hasher.WyHashFunction;
+import com.github.consistenthash.hasher.XXHash64HashFunction;
+
+/**
+ * Shared fixtures for the benchmarks.
+ * 
+ * @author gaurav
+ */
+final class Benchmarks {
+  // power of two so that cycling through keys is a mask rather than a modulo
+  static final int KEY_COUNT = 1 << 14;
+
+  private Benchmarks() {}
+
+  static HashFunction hashFunction(final String name) {
+    switch (name) {
+      case "md5":
+        return new MD5HashFunction();
+      case "xxhash64":
+        return new XXHash64HashFunction();
+      case "murmur3":
+        return new Murmur3HashFunction();
+      case "wyhash":
+        return new WyHashFunction();
+      default:
+        throw new IllegalArgumentException(String.format("%s is not a known hash function", name));
+    }
+  }
+
+  /**
+   * Random alphanumeric keys of the given length, deterministic across runs.
+   */
+  static String[] keys(final int keyLength) {
+    final String alphabet = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+    final Random random = new Random(42);
+    final String[] keys = new String[KEY_COUNT];
+    final char[] chars = new char[keyLength];
+    for (int iter = 0; iter < KEY_COUNT; iter++) {
+      for (int slot = 0; slot < keyLength; slot++) {
+        chars[slot] = alphabet.charAt(random.nextInt(alphabet.length()));
+      }
+      keys[iter] = new String(chars);
+    }
+    return keys;
+  }
+
+}
@@ -0,0 +1,121 @@
+package com.github.consistenthash.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.consistenthash.anchor.AnchorConsistentHash;
+import com.github.consistenthash.hasher.HashFunction;
+import com.github.consistenthash.jump.JumpConsistentHash;
+import com.github.consistenthash.maglev.MaglevConsistentHash;
+import com.github.consistenthash.multiprobe.MultiProbeConsistentHash;
+import com.github.consistenthash.rendezvous.RendezvousConsistentHash;
+import com.github.consistenthash.ring.PhysicalNode;
+import com.github.consistenthash.ring.RingConsistentHash;
+
+/**
+ * Head to head lookup cost of every engine for the same node count and hash function.
+ * 
+ * @author gaurav
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineLookupBenchmark {
+  @Param({"10", "100", "1000"})
+  private int nodes;
+
+  @Param({"xxhash64"})
+  private String hashFunction;
+
+  private RingConsistentHash<PhysicalNode> ring;
+  private JumpConsistentHash<PhysicalNode> jump;
+  private RendezvousConsistentHash<PhysicalNode> rendezvous;
+  private RendezvousConsistentHash<PhysicalNode> skeleton;
+  private MaglevConsistentHash<PhysicalNode> maglev;
+  private MultiProbeConsistentHash<PhysicalNode> multiProbe;
+  private AnchorConsistentHash<PhysicalNode> anchor;
+  private String[] keys;
+
+  @State(Scope.Thread)
+  public static class Cursor {
+    private int next;
+
+    private int next() {
+      return next++ & (Benchmarks.KEY_COUNT - 1);
+    }
+  }
+
+  @Setup
+  public void setup() {
+    final HashFunction hasher = Benchmarks.hashFunction(hashFunction);
+    ring = new RingConsistentHash<>(hasher);
+    jump = new JumpConsistentHash<>(hasher);
+    rendezvous = new RendezvousConsistentHash<>(hasher);
+    skeleton = new RendezvousConsistentHash<>(hasher, 8);
+    maglev = new MaglevConsistentHash<>(hasher, 655373);
+    multiProbe = new MultiProbeConsistentHash<>(hasher);
+    // anchor at twice the node count, as if half the fleet could still join
+    anchor = new AnchorConsistentHash<>(hasher, 2 * nodes);
+    for (int iter = 0; iter < nodes; iter++) {
+      final PhysicalNode node = new PhysicalNode();
+      ring.addNode(node, 100);
+      jump.addNode(node);
+      rendezvous.addNode(node);
+      skeleton.addNode(node);
+      maglev.addNode(node);
+      multiProbe.addNode(node);
+      anchor.addNode(node);
+    }
+    keys = Benchmarks.keys(36);
+  }
+
+  @Benchmark
+  public PhysicalNode ring(final Cursor cursor) {
+    return ring.chooseNode(keys[cursor.next()]);
+  }
+
+  @Benchmark
+  public PhysicalNode jump(final Cursor cursor) {
+    return jump.chooseNode(keys[cursor.next()]);
+  }
+
+  @Benchmark
+  public PhysicalNode rendezvous(final Cursor cursor) {
+    return rendezvous.chooseNode(keys[cursor.next()]);
+  }
+
+  @Benchmark
+  public PhysicalNode rendezvousSkeleton(final Cursor cursor) {
+    return skeleton.chooseNode(keys[cursor.next()]);
+  }
+
+  @Benchmark
+  public PhysicalNode maglev(final Cursor cursor) {
+    return maglev.chooseNode(keys[cursor.next()]);
+  }
+
+  @Benchmark
+  public PhysicalNode multiProbe(final Cursor cursor) {
+    return multiProbe.chooseNode(keys[cursor.next()]);
+  }
+
+  @Benchmark
+  public PhysicalNode anchor(final Cursor cursor) {
+    return anchor.chooseNode(keys[cursor.next()]);
+  }
+
+}
@@ -0,0 +1,63 @@
+package com.github.consistenthash.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.consistenthash.hasher.HashFunction;
+
+/**
+ * Cost per hash of every bundled hash function across key lengths and input flavors.
+ * 
+ * @author gaurav
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashFunctionBenchmark {
+  @Param({"md5", "xxhash64", "murmur3", "wyhash"})
+  private String hashFunction;
+
+  @Param({"8", "36", "128"})
+  private int keyLength;
+
+  private HashFunction hasher;
+  private String[] keys;
+  private byte[][] keyBytes;
+  private int next;
+
+  @Setup
+  public void setup() {
+    hasher = Benchmarks.hashFunction(hashFunction);
+    keys = Benchmarks.keys(keyLength);
+    keyBytes = new byte[keys.length][];
+    for (int iter = 0; iter < keys.length; iter++) {
+      keyBytes[iter] = keys[iter].getBytes(StandardCharsets.UTF_8);
+    }
+  }
+
+  @Benchmark
+  public long hashString() {
+    return hasher.hash(keys[next++ & (Benchmarks.KEY_COUNT - 1)]);
+  }
+
+  @Benchmark
+  public long hashBytes() {
+    return hasher.hash(keyBytes[next++ & (Benchmarks.KEY_COUNT - 1)]);
+  }
+
+}
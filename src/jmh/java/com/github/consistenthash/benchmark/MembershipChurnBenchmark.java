@@ -0,0 +1,74 @@
+package com.github.consistenthash.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.consistenthash.ring.PhysicalNode;
+import com.github.consistenthash.ring.RingConsistentHash;
+
+/**
+ * Lookup throughput while a writer continuously adds and removes a node, next to the cost of the
+ * membership change itself.
+ * 
+ * @author gaurav
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MembershipChurnBenchmark {
+  @Param({"100", "1000"})
+  private int nodes;
+
+  @Param({"100"})
+  private int virtualNodes;
+
+  private RingConsistentHash<PhysicalNode> ring;
+  private String[] keys;
+
+  @State(Scope.Thread)
+  public static class Cursor {
+    private int next;
+  }
+
+  @Setup
+  public void setup() {
+    ring = new RingConsistentHash<>();
+    for (int iter = 0; iter < nodes; iter++) {
+      ring.addNode(new PhysicalNode(), virtualNodes);
+    }
+    keys = Benchmarks.keys(36);
+  }
+
+  @Benchmark
+  @Group("churn")
+  @GroupThreads(3)
+  public PhysicalNode reader(final Cursor cursor) {
+    return ring.chooseNode(keys[cursor.next++ & (Benchmarks.KEY_COUNT - 1)]);
+  }
+
+  @Benchmark
+  @Group("churn")
+  @GroupThreads(1)
+  public boolean writer() {
+    final PhysicalNode node = new PhysicalNode();
+    ring.addNode(node, virtualNodes);
+    return ring.removeNode(node);
+  }
+
+}
@@ -0,0 +1,72 @@
+package com.github.consistenthash.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.consistenthash.hasher.HashFunction;
+import com.github.consistenthash.ring.PhysicalNode;
+import com.github.consistenthash.ring.RingConsistentHash;
+
+/**
+ * Cold start cost of building a whole ring, one addNode() at a time versus a single addNodes().
+ * 
+ * @author gaurav
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RingBuildBenchmark {
+  @Param({"1000", "5000"})
+  private int nodes;
+
+  @Param({"100"})
+  private int virtualNodes;
+
+  @Param({"xxhash64", "md5"})
+  private String hashFunction;
+
+  private HashFunction hasher;
+  private List<PhysicalNode> physicalNodes;
+
+  @Setup
+  public void setup() {
+    hasher = Benchmarks.hashFunction(hashFunction);
+    physicalNodes = new ArrayList<>(nodes);
+    for (int iter = 0; iter < nodes; iter++) {
+      physicalNodes.add(new PhysicalNode());
+    }
+  }
+
+  @Benchmark
+  public RingConsistentHash<PhysicalNode> oneByOne() {
+    final RingConsistentHash<PhysicalNode> ring = new RingConsistentHash<>(hasher);
+    for (final PhysicalNode node : physicalNodes) {
+      ring.addNode(node, virtualNodes);
+    }
+    return ring;
+  }
+
+  @Benchmark
+  public RingConsistentHash<PhysicalNode> bulk() {
+    final RingConsistentHash<PhysicalNode> ring = new RingConsistentHash<>(hasher);
+    ring.addNodes(physicalNodes, virtualNodes);
+    return ring;
+  }
+
+}
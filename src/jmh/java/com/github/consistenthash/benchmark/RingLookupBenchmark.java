@@ -0,0 +1,70 @@
+package com.github.consistenthash.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.consistenthash.ring.PhysicalNode;
+import com.github.consistenthash.ring.RingConsistentHash;
+
+/**
+ * Ring lookup cost across cluster shapes, key lengths and hash functions. Run with -t N to measure
+ * scaling with N reader threads, all of which share the one ring.
+ * 
+ * @author gaurav
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RingLookupBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class Ring {
+    @Param({"10", "100", "1000"})
+    private int nodes;
+
+    @Param({"10", "100", "500"})
+    private int virtualNodes;
+
+    @Param({"md5", "xxhash64", "murmur3", "wyhash"})
+    private String hashFunction;
+
+    @Param({"8", "36", "256"})
+    private int keyLength;
+
+    private RingConsistentHash<PhysicalNode> ring;
+    private String[] keys;
+
+    @Setup
+    public void setup() {
+      ring = new RingConsistentHash<>(Benchmarks.hashFunction(hashFunction));
+      for (int iter = 0; iter < nodes; iter++) {
+        ring.addNode(new PhysicalNode(), virtualNodes);
+      }
+      keys = Benchmarks.keys(keyLength);
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Cursor {
+    private int next;
+  }
+
+  @Benchmark
+  public PhysicalNode chooseNode(final Ring ring, final Cursor cursor) {
+    return ring.ring.chooseNode(ring.keys[cursor.next++ & (Benchmarks.KEY_COUNT - 1)]);
+  }
+
+}
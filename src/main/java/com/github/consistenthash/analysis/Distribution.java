@@ -0,0 +1,119 @@
+package com.github.consistenthash.analysis;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable summary of how a set of keys spread over a set of nodes.
+ * 
+ * @author gaurav
+ */
+public final class Distribution<N> {
+  private final List<N> nodes;
+  private final long[] loads;
+  private final long unplaced;
+  private final long keyCount;
+
+  Distribution(final List<N> nodes, final long[] loads, final long unplaced) {
+    this.nodes = nodes;
+    this.loads = loads;
+    this.unplaced = unplaced;
+    long placed = unplaced;
+    for (long load : loads) {
+      placed += load;
+    }
+    this.keyCount = placed;
+  }
+
+  /**
+   * Keys per node in the order the nodes were handed to the analyzer.
+   */
+  public Map<N, Long> getLoads() {
+    final Map<N, Long> perNode = new LinkedHashMap<>();
+    for (int iter = 0; iter < loads.length; iter++) {
+      perNode.put(nodes.get(iter), loads[iter]);
+    }
+    return Collections.unmodifiableMap(perNode);
+  }
+
+  public long getLoad(final int nodeOrdinal) {
+    return loads[nodeOrdinal];
+  }
+
+  public long getKeyCount() {
+    return keyCount;
+  }
+
+  /**
+   * Keys whose placement was null or a node outside the analyzed set.
+   */
+  public long getUnplacedKeyCount() {
+    return unplaced;
+  }
+
+  public double getMean() {
+    return loads.length == 0 ? 0.0d : (double) (keyCount - unplaced) / loads.length;
+  }
+
+  public double getStandardDeviation() {
+    if (loads.length == 0) {
+      return 0.0d;
+    }
+    final double mean = getMean();
+    double sumOfSquares = 0.0d;
+    for (long load : loads) {
+      sumOfSquares += (load - mean) * (load - mean);
+    }
+    return Math.sqrt(sumOfSquares / loads.length);
+  }
+
+  public long getMin() {
+    long min = loads.length == 0 ? 0L : Long.MAX_VALUE;
+    for (long load : loads) {
+      min = Math.min(min, load);
+    }
+    return min;
+  }
+
+  public long getMax() {
+    long max = 0L;
+    for (long load : loads) {
+      max = Math.max(max, load);
+    }
+    return max;
+  }
+
+  /**
+   * Peak to mean load ratio; 1.0 is a perfect spread.
+   */
+  public double getMaxToMean() {
+    final double mean = getMean();
+    return mean == 0.0d ? 0.0d : getMax() / mean;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("Distribution [keys:");
+    builder.append(keyCount);
+    builder.append(", nodes:");
+    builder.append(loads.length);
+    builder.append(", mean:");
+    builder.append(String.format("%.1f", getMean()));
+    builder.append(", stddev:");
+    builder.append(String.format("%.1f", getStandardDeviation()));
+    builder.append(", min:");
+    builder.append(getMin());
+    builder.append(", max:");
+    builder.append(getMax());
+    builder.append(", maxToMean:");
+    builder.append(String.format("%.3f", getMaxToMean()));
+    builder.append(", unplaced:");
+    builder.append(unplaced);
+    builder.append("]");
+    return builder.toString();
+  }
+
+}
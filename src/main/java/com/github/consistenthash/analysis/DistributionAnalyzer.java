@@ -0,0 +1,221 @@
+package com.github.consistenthash.analysis;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+import java.util.stream.Stream;
+
+import com.github.consistenthash.hasher.HashFunction;
+import com.github.consistenthash.ring.Node;
+
+/**
+ * Measures key distribution and key movement of any placement function, eg.
+ * RingConsistentHash::chooseNode, over synthetic key streams of arbitrary size or over real keys
+ * such as a sample of production traffic.
+ * 
+ * Synthetic keys are generated from their index, the key space is split across a fork-join pool
+ * and every leaf task tallies into its own primitive counters which are summed on the way back up,
+ * so runs of hundreds of millions of keys cost O(keys) placements and no shared state. Collections
+ * and streams of keys are consumed as parallel streams on the same pool. Placements are matched to
+ * the analyzed nodes by key, so an equal node under a different instance counts as the same node.
+ * 
+ * @author gaurav
+ */
+public final class DistributionAnalyzer<N extends Node> {
+  private static final int LEAF_KEY_COUNT = 1 << 16;
+  private final ForkJoinPool pool;
+  private final List<N> nodes;
+  private final Map<String, Integer> ordinals = new HashMap<>();
+
+  /**
+   * Analyze placements over the given nodes on the common fork-join pool.
+   */
+  public DistributionAnalyzer(final Collection<? extends N> nodes) {
+    this(nodes, ForkJoinPool.commonPool());
+  }
+
+  public DistributionAnalyzer(final Collection<? extends N> nodes, final ForkJoinPool pool) {
+    this.nodes = new ArrayList<>(nodes);
+    this.pool = pool;
+    for (int iter = 0; iter < this.nodes.size(); iter++) {
+      final N node = this.nodes.get(iter);
+      if (ordinals.put(node.getKey(), iter) != null) {
+        throw new IllegalArgumentException(String.format("%s is listed more than once", node));
+      }
+    }
+  }
+
+  /**
+   * Default key stream, "key_0", "key_1", ...
+   */
+  public static String key(final long index) {
+    return "key_" + index;
+  }
+
+  /**
+   * Load per node for keyCount keys taken from the default key stream.
+   */
+  public Distribution<N> analyze(final Function<String, N> placement, final long keyCount) {
+    return analyze(placement, DistributionAnalyzer::key, keyCount);
+  }
+
+  /**
+   * Load per node for keys(0) .. keys(keyCount - 1).
+   */
+  public Distribution<N> analyze(final Function<String, N> placement,
+      final LongFunction<String> keys, final long keyCount) {
+    final long[] counts =
+        pool.invoke(new CountingTask(index -> placement.apply(keys.apply(index)), null, 0,
+            keyCount));
+    return distribution(counts, 0);
+  }
+
+  /**
+   * Load per node for the given keys.
+   */
+  public Distribution<N> analyze(final Function<String, N> placement,
+      final Collection<String> keys) {
+    return analyze(placement, keys.stream());
+  }
+
+  /**
+   * Load per node for a stream of keys, eg. the lines of a key dump. The stream is consumed once.
+   */
+  public Distribution<N> analyze(final Function<String, N> placement, final Stream<String> keys) {
+    final long[] counts = collect(keys, nodes.size() + 1,
+        (tally, key) -> tally[ordinalOf(placement.apply(key))]++);
+    return distribution(counts, 0);
+  }
+
+  /**
+   * Load per node when placing raw key hashes, eg. to compare hash functions or hash based engines
+   * such as jump hash on the exact same key stream.
+   */
+  public Distribution<N> analyzeHashes(final LongFunction<N> placementByHash,
+      final HashFunction hashFunction, final LongFunction<String> keys, final long keyCount) {
+    final long[] counts = pool.invoke(new CountingTask(
+        index -> placementByHash.apply(hashFunction.hash(keys.apply(index))), null, 0, keyCount));
+    return distribution(counts, 0);
+  }
+
+  /**
+   * Load per node under both placements plus the number of keys whose node differs between them.
+   */
+  public KeyMovement<N> compare(final Function<String, N> before, final Function<String, N> after,
+      final long keyCount) {
+    return compare(before, after, DistributionAnalyzer::key, keyCount);
+  }
+
+  public KeyMovement<N> compare(final Function<String, N> before, final Function<String, N> after,
+      final LongFunction<String> keys, final long keyCount) {
+    final long[] counts = pool.invoke(new CountingTask(null,
+        (index, tally) -> tallyMove(before, after, keys.apply(index), tally), 0, keyCount));
+    return movement(counts);
+  }
+
+  public KeyMovement<N> compare(final Function<String, N> before, final Function<String, N> after,
+      final Collection<String> keys) {
+    return compare(before, after, keys.stream());
+  }
+
+  public KeyMovement<N> compare(final Function<String, N> before, final Function<String, N> after,
+      final Stream<String> keys) {
+    final long[] counts = collect(keys, 2 * (nodes.size() + 1) + 1,
+        (tally, key) -> tallyMove(before, after, key, tally));
+    return movement(counts);
+  }
+
+  // before counters in [0, n], after counters in [n + 1, 2n + 1], moved keys in the last slot
+  private void tallyMove(final Function<String, N> before, final Function<String, N> after,
+      final String key, final long[] tally) {
+    final int beforeOrdinal = ordinalOf(before.apply(key));
+    final int afterOrdinal = ordinalOf(after.apply(key));
+    tally[beforeOrdinal]++;
+    tally[nodes.size() + 1 + afterOrdinal]++;
+    if (beforeOrdinal != afterOrdinal) {
+      tally[tally.length - 1]++;
+    }
+  }
+
+  private KeyMovement<N> movement(final long[] counts) {
+    return new KeyMovement<>(distribution(counts, 0), distribution(counts, nodes.size() + 1),
+        counts[counts.length - 1]);
+  }
+
+  // a parallel stream started from within a fork-join task runs on that task's pool
+  private long[] collect(final Stream<String> keys, final int width,
+      final BiConsumer<long[], String> tally) {
+    final ForkJoinTask<long[]> task = pool.submit(() -> keys.parallel()
+        .collect(() -> new long[width], tally, DistributionAnalyzer::sum));
+    return task.join();
+  }
+
+  private static void sum(final long[] counts, final long[] other) {
+    for (int iter = 0; iter < counts.length; iter++) {
+      counts[iter] += other[iter];
+    }
+  }
+
+  private Distribution<N> distribution(final long[] counts, final int offset) {
+    final long[] loads = new long[nodes.size()];
+    System.arraycopy(counts, offset, loads, 0, loads.length);
+    return new Distribution<>(nodes, loads, counts[offset + nodes.size()]);
+  }
+
+  // unknown or null placements are tallied in the slot right after the last node
+  private int ordinalOf(final N node) {
+    final Integer ordinal = node == null ? null : ordinals.get(node.getKey());
+    return ordinal == null ? nodes.size() : ordinal;
+  }
+
+  private interface Tally {
+    void tally(long index, long[] counts);
+  }
+
+  private final class CountingTask extends RecursiveTask<long[]> {
+    private static final long serialVersionUID = 1L;
+    private final transient LongFunction<N> placement;
+    private final transient Tally tally;
+    private final long from;
+    private final long to;
+
+    private CountingTask(final LongFunction<N> placement, final Tally tally, final long from,
+        final long to) {
+      this.placement = placement;
+      this.tally = tally;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected long[] compute() {
+      if (to - from <= LEAF_KEY_COUNT) {
+        final long[] counts =
+            new long[tally == null ? nodes.size() + 1 : 2 * (nodes.size() + 1) + 1];
+        for (long index = from; index < to; index++) {
+          if (tally == null) {
+            counts[ordinalOf(placement.apply(index))]++;
+          } else {
+            tally.tally(index, counts);
+          }
+        }
+        return counts;
+      }
+      final long mid = (from + to) >>> 1;
+      final CountingTask left = new CountingTask(placement, tally, from, mid);
+      left.fork();
+      final long[] counts = new CountingTask(placement, tally, mid, to).compute();
+      sum(counts, left.join());
+      return counts;
+    }
+  }
+
+}
@@ -0,0 +1,53 @@
+package com.github.consistenthash.analysis;
+
+/**
+ * Immutable summary of how keys moved between two placements, eg. a ring before and after a
+ * membership change.
+ * 
+ * @author gaurav
+ */
+public final class KeyMovement<N> {
+  private final Distribution<N> before;
+  private final Distribution<N> after;
+  private final long movedKeyCount;
+
+  KeyMovement(final Distribution<N> before, final Distribution<N> after,
+      final long movedKeyCount) {
+    this.before = before;
+    this.after = after;
+    this.movedKeyCount = movedKeyCount;
+  }
+
+  public Distribution<N> getBefore() {
+    return before;
+  }
+
+  public Distribution<N> getAfter() {
+    return after;
+  }
+
+  public long getMovedKeyCount() {
+    return movedKeyCount;
+  }
+
+  public double getMovedFraction() {
+    final long keyCount = before.getKeyCount();
+    return keyCount == 0 ? 0.0d : (double) movedKeyCount / keyCount;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("KeyMovement [moved:");
+    builder.append(movedKeyCount);
+    builder.append(", movedFraction:");
+    builder.append(String.format("%.4f", getMovedFraction()));
+    builder.append(", before:");
+    builder.append(before);
+    builder.append(", after:");
+    builder.append(after);
+    builder.append("]");
+    return builder.toString();
+  }
+
+}
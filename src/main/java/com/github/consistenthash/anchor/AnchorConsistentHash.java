@@ -0,0 +1,248 @@
+package com.github.consistenthash.anchor;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.github.consistenthash.hasher.HashFunction;
+import com.github.consistenthash.hasher.XXHash64HashFunction;
+import com.github.consistenthash.ring.Node;
+
+/**
+ * AnchorHash as described by Mendelson et al. (https://arxiv.org/abs/1812.09674).
+ * 
+ * Guidelines:<br>
+ * 1. A fixed anchor of capacity buckets is laid out up front, nodes occupy the working subset of
+ * them; all state is four int[] of size capacity plus a stack of removed buckets<br>
+ * 2. Any node can be removed, not just the last one, and only its keys move<br>
+ * 3. Adding a node restores the most recently removed bucket (LIFO), so a node that comes back
+ * gets exactly its old keys back<br>
+ * 4. Lookups take O(1) expected steps as long as a fair share of the anchor is working, eg. about
+ * 1 + ln(capacity / nodes)<br>
+ * 
+ * Membership changes publish a new immutable copy of the state, lookups never lock.
+ * 
+ * @author gaurav
+ */
+public final class AnchorConsistentHash<N extends Node> {
+  private static final Logger logger =
+      LogManager.getLogger(AnchorConsistentHash.class.getSimpleName());
+  private final HashFunction hashFunction;
+  private final int capacity;
+
+  // every change clones the O(capacity) arrays before publishing, even to drop a single node
+  private volatile Anchor anchor;
+
+  private final ReentrantLock writeLock = new ReentrantLock(true);
+
+  public AnchorConsistentHash(final int capacity) {
+    this(new XXHash64HashFunction(), capacity);
+  }
+
+  /**
+   * Anchor of the given capacity, the most nodes that can ever be working at the same time. Keep it
+   * a small multiple of the expected node count, lookups slow down as the working share shrinks.
+   */
+  public AnchorConsistentHash(final HashFunction hashFunction, final int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException(String.format("%d is not a valid capacity", capacity));
+    }
+    this.hashFunction = hashFunction;
+    this.capacity = capacity;
+    this.anchor = new Anchor(capacity);
+  }
+
+  /**
+   * Add the node on the most recently removed bucket and return that bucket. Only keys that were
+   * on that bucket before it was removed move to the node.
+   */
+  public int addNode(final N node) {
+    logger.info("Adding {}", node);
+    writeLock.lock();
+    try {
+      final Anchor current = anchor;
+      if (current.buckets.containsKey(node.getKey())) {
+        throw new IllegalArgumentException(String.format("%s is already a member", node));
+      }
+      if (current.removedCount == 0) {
+        throw new IllegalStateException(
+            String.format("Anchor capacity %d exhausted, failed to add %s", capacity, node));
+      }
+      final Anchor next = current.copy();
+      final int bucket = next.restore();
+      next.nodes[bucket] = node;
+      next.buckets.put(node.getKey(), bucket);
+      anchor = next;
+      return bucket;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Remove the node, whichever bucket it is on. Only its keys move. Returns false if the node is
+   * not present.
+   */
+  public boolean removeNode(final N node) {
+    logger.info("Dropping {}", node);
+    writeLock.lock();
+    try {
+      final Anchor current = anchor;
+      final Integer bucket = current.buckets.get(node.getKey());
+      if (bucket == null) {
+        return false;
+      }
+      final Anchor next = current.copy();
+      next.remove(bucket);
+      next.nodes[bucket] = null;
+      next.buckets.remove(node.getKey());
+      anchor = next;
+      return true;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Choose the bucket for the given key or -1 if there are no nodes.
+   */
+  public int chooseBucket(final String key) {
+    final Anchor snapshot = anchor;
+    return snapshot.working == 0 ? -1 : snapshot.bucket(hashFunction.hash(key));
+  }
+
+  /**
+   * Choose the node owning the given key, or null if there are no nodes.
+   */
+  @SuppressWarnings("unchecked")
+  public N chooseNode(final String key) {
+    final Anchor snapshot = anchor;
+    if (snapshot.working == 0) {
+      return null;
+    }
+    return (N) snapshot.nodes[snapshot.bucket(hashFunction.hash(key))];
+  }
+
+  /**
+   * Lookup the node on the given bucket, or null if the bucket is not working.
+   */
+  @SuppressWarnings("unchecked")
+  public N getNode(final int bucket) {
+    final Anchor snapshot = anchor;
+    return bucket >= 0 && bucket < capacity ? (N) snapshot.nodes[bucket] : null;
+  }
+
+  public int getNodeCount() {
+    return anchor.working;
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * The AnchorHash state. A[b] is 0 for working buckets, else the working count right after b was
+   * removed; W[0, working) lists the working buckets with L as its inverse; K[b] is the bucket that
+   * replaced b in W when b was removed.
+   */
+  private static final class Anchor {
+    private final int[] a;
+    private final int[] k;
+    private final int[] w;
+    private final int[] l;
+    // stack of removed buckets, the top one is restored first
+    private final int[] removed;
+    private int removedCount;
+    private int working;
+    private final Node[] nodes;
+    private final Map<String, Integer> buckets;
+
+    // an anchor with every bucket removed, bucket 0 on top of the stack
+    private Anchor(final int capacity) {
+      a = new int[capacity];
+      k = new int[capacity];
+      w = new int[capacity];
+      l = new int[capacity];
+      removed = new int[capacity];
+      for (int bucket = 0; bucket < capacity; bucket++) {
+        a[bucket] = bucket;
+        k[bucket] = bucket;
+        w[bucket] = bucket;
+        l[bucket] = bucket;
+        removed[capacity - 1 - bucket] = bucket;
+      }
+      removedCount = capacity;
+      working = 0;
+      nodes = new Node[capacity];
+      buckets = new HashMap<>();
+    }
+
+    private Anchor(final Anchor other) {
+      a = other.a.clone();
+      k = other.k.clone();
+      w = other.w.clone();
+      l = other.l.clone();
+      removed = other.removed.clone();
+      removedCount = other.removedCount;
+      working = other.working;
+      nodes = other.nodes.clone();
+      buckets = new HashMap<>(other.buckets);
+    }
+
+    private Anchor copy() {
+      return new Anchor(this);
+    }
+
+    private int bucket(final long keyHash) {
+      int bucket = fastRange(keyHash, a.length);
+      while (a[bucket] > 0) {
+        // rehash into the buckets that were working when this one was removed
+        int candidate = fastRange(mix(keyHash, bucket), a[bucket]);
+        while (a[candidate] >= a[bucket]) {
+          candidate = k[candidate];
+        }
+        bucket = candidate;
+      }
+      return bucket;
+    }
+
+    private void remove(final int bucket) {
+      removed[removedCount++] = bucket;
+      working--;
+      a[bucket] = working;
+      final int last = w[working];
+      w[l[bucket]] = last;
+      l[last] = l[bucket];
+      k[bucket] = last;
+    }
+
+    private int restore() {
+      final int bucket = removed[--removedCount];
+      a[bucket] = 0;
+      l[w[working]] = working;
+      w[l[bucket]] = bucket;
+      k[bucket] = bucket;
+      working++;
+      return bucket;
+    }
+
+    // uniform in [0, range) from the high bits of the hash (Lemire's multiply-shift)
+    private static int fastRange(final long hash, final int range) {
+      return (int) (((hash >>> 32) * range) >>> 32);
+    }
+
+    // fmix64 of the key hash salted with the bucket, an independent hash per bucket
+    private static long mix(final long keyHash, final int bucket) {
+      long hash = keyHash ^ (bucket * 0x9E3779B97F4A7C15L);
+      hash ^= hash >>> 33;
+      hash *= 0xFF51AFD7ED558CCDL;
+      hash ^= hash >>> 33;
+      hash *= 0xC4CEB9FE1A85EC53L;
+      return hash ^ (hash >>> 33);
+    }
+  }
+
+}
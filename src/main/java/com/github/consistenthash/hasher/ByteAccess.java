@@ -0,0 +1,66 @@
+package com.github.consistenthash.hasher;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Little-endian reads over either a byte[] or a (heap or direct) ByteBuffer so that each hash
+ * algorithm is written exactly once and can consume both without copying. With only two
+ * implementations the call sites stay bimorphic and get inlined by the JIT.
+ * 
+ * @author gaurav
+ */
+abstract class ByteAccess<T> {
+  static final ByteAccess<byte[]> ARRAY = new ArrayAccess();
+  static final ByteAccess<ByteBuffer> BUFFER = new BufferAccess();
+
+  abstract long getLong(final T input, final int index);
+
+  // unsigned 32 bits widened to a long
+  abstract long getUnsignedInt(final T input, final int index);
+
+  // unsigned 8 bits widened to an int
+  abstract int getUnsignedByte(final T input, final int index);
+
+  private static final class ArrayAccess extends ByteAccess<byte[]> {
+    @Override
+    long getLong(final byte[] input, final int index) {
+      return (input[index] & 0xFFL) | (input[index + 1] & 0xFFL) << 8
+          | (input[index + 2] & 0xFFL) << 16 | (input[index + 3] & 0xFFL) << 24
+          | (input[index + 4] & 0xFFL) << 32 | (input[index + 5] & 0xFFL) << 40
+          | (input[index + 6] & 0xFFL) << 48 | (input[index + 7] & 0xFFL) << 56;
+    }
+
+    @Override
+    long getUnsignedInt(final byte[] input, final int index) {
+      return (input[index] & 0xFFL) | (input[index + 1] & 0xFFL) << 8
+          | (input[index + 2] & 0xFFL) << 16 | (input[index + 3] & 0xFFL) << 24;
+    }
+
+    @Override
+    int getUnsignedByte(final byte[] input, final int index) {
+      return input[index] & 0xFF;
+    }
+  }
+
+  private static final class BufferAccess extends ByteAccess<ByteBuffer> {
+    @Override
+    long getLong(final ByteBuffer input, final int index) {
+      final long value = input.getLong(index);
+      return input.order() == ByteOrder.LITTLE_ENDIAN ? value : Long.reverseBytes(value);
+    }
+
+    @Override
+    long getUnsignedInt(final ByteBuffer input, final int index) {
+      final int value = input.getInt(index);
+      return (input.order() == ByteOrder.LITTLE_ENDIAN ? value : Integer.reverseBytes(value))
+          & 0xFFFFFFFFL;
+    }
+
+    @Override
+    int getUnsignedByte(final ByteBuffer input, final int index) {
+      return input.get(index) & 0xFF;
+    }
+  }
+
+}
@@ -1,17 +1,90 @@
 package com.github.consistenthash.hasher;
 
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
 import java.util.function.Function;
 
 /**
  * Base skeleton for pluggable hash functions.
  * 
+ * Implementations hash raw bytes to a primitive long and must be thread-safe and allocation-free
+ * on the hashing path. Character data is hashed as its UTF-8 encoding, so the same key yields the
+ * same hash whether it arrives as a String, a byte[] or a ByteBuffer.
+ * 
  * @author gaurav
  */
 public interface HashFunction extends Function<String, Long> {
+  /**
+   * Boxing adapter for use as a plain {@link Function}; hot paths should call one of the primitive
+   * hash() flavors instead.
+   */
   @Override
   default Long apply(final String toHash) {
     return hash(toHash);
   }
 
-  Long hash(final String toHash);
+  /**
+   * Hash function that engines place nodes with by their keys. Wrappers that only hash part of a
+   * lookup key, such as {@link HashTagHashFunction}, return the function they wrap so that node
+   * keys are always hashed whole.
+   */
+  default HashFunction forNodeKeys() {
+    return this;
+  }
+
+  /**
+   * Hash length bytes of the given array starting at offset.
+   */
+  long hash(final byte[] bytes, final int offset, final int length);
+
+  default long hash(final byte[] bytes) {
+    return hash(bytes, 0, bytes.length);
+  }
+
+  /**
+   * Hash the UTF-8 encoding of the given characters. The encoding happens in a reusable per-thread
+   * scratch buffer, so no garbage is produced in steady state.
+   */
+  default long hash(final CharSequence toHash) {
+    return hash(toHash, 0, toHash.length());
+  }
+
+  /**
+   * Hash the UTF-8 encoding of characters [start, end) of toHash, exactly as
+   * hash(toHash.subSequence(start, end)) but without copying them out first.
+   */
+  default long hash(final CharSequence toHash, final int start, final int end) {
+    final Utf8.Scratch scratch = Utf8.scratch();
+    final int length = Utf8.encode(toHash, start, end, scratch);
+    return hash(scratch.bytes, 0, length);
+  }
+
+  /**
+   * Hash the decimal digits of value, exactly as hash(Long.toString(value)) but without allocating
+   * the String, so numeric ids and their string form land in the same place.
+   */
+  default long hashDecimal(final long value) {
+    final Utf8.Scratch scratch = Utf8.scratch();
+    final int length = Utf8.encodeDecimal(value, scratch);
+    return hash(scratch.bytes, 0, length);
+  }
+
+  /**
+   * Hash the remaining bytes of the given heap or direct buffer. Neither the buffer's position nor
+   * its limit are disturbed.
+   */
+  long hash(final ByteBuffer buffer);
+
+  /**
+   * Hash length bytes of the given heap or direct buffer starting at absolute index offset, which
+   * must lie within its limit. The buffer's position and limit are neither used nor disturbed.
+   * Every hash function shipped here does this without allocating; this fallback narrows a
+   * duplicate of the buffer.
+   */
+  default long hash(final ByteBuffer buffer, final int offset, final int length) {
+    final ByteBuffer range = buffer.duplicate();
+    ((Buffer) range).limit(offset + length).position(offset);
+    return hash(range);
+  }
+
 }
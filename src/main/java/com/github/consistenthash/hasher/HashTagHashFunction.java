@@ -0,0 +1,123 @@
+package com.github.consistenthash.hasher;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Hash tags a la Redis Cluster: when a key contains a non-empty tag between braces, only the tag is
+ * hashed, so that related keys such as user:{42}:profile and user:{42}:sessions land on the same
+ * node whatever the engine. As in Redis, the tag is whatever sits between the first open brace and
+ * the first close brace after it; keys without one, or with an empty one as in {}, are hashed
+ * whole. The tag is located in place and fed straight to the wrapped hash function, without any
+ * substring copies.
+ *
+ * Tags only apply to lookup keys: engines place nodes via forNodeKeys(), which hashes node keys
+ * whole, so a node key that happens to contain braces still spreads its virtual nodes.
+ *
+ * @author gaurav
+ */
+public final class HashTagHashFunction implements HashFunction {
+  public static final char DEFAULT_OPEN = '{';
+  public static final char DEFAULT_CLOSE = '}';
+
+  private final HashFunction hashFunction;
+  private final char open;
+  private final char close;
+
+  public HashTagHashFunction(final HashFunction hashFunction) {
+    this(hashFunction, DEFAULT_OPEN, DEFAULT_CLOSE);
+  }
+
+  /**
+   * Tags delimited by the given ASCII characters, which are matched against raw UTF-8 bytes just as
+   * well as against characters.
+   */
+  public HashTagHashFunction(final HashFunction hashFunction, final char open, final char close) {
+    if (open >= 0x80 || close >= 0x80) {
+      throw new IllegalArgumentException(
+          String.format("%c and %c are not both ASCII hash tag delimiters", open, close));
+    }
+    this.hashFunction = hashFunction;
+    this.open = open;
+    this.close = close;
+  }
+
+  @Override
+  public long hash(final byte[] bytes, final int offset, final int length) {
+    final int end = offset + length;
+    for (int start = offset; start < end; start++) {
+      if (bytes[start] == open) {
+        for (int stop = start + 1; stop < end; stop++) {
+          if (bytes[stop] == close) {
+            return stop > start + 1 ? hashFunction.hash(bytes, start + 1, stop - start - 1)
+                : hashFunction.hash(bytes, offset, length);
+          }
+        }
+        break;
+      }
+    }
+    return hashFunction.hash(bytes, offset, length);
+  }
+
+  @Override
+  public long hash(final CharSequence toHash, final int from, final int to) {
+    for (int start = from; start < to; start++) {
+      if (toHash.charAt(start) == open) {
+        for (int stop = start + 1; stop < to; stop++) {
+          if (toHash.charAt(stop) == close) {
+            return stop > start + 1 ? hashFunction.hash(toHash, start + 1, stop)
+                : hashFunction.hash(toHash, from, to);
+          }
+        }
+        break;
+      }
+    }
+    return hashFunction.hash(toHash, from, to);
+  }
+
+  @Override
+  public long hash(final ByteBuffer buffer) {
+    return hash(buffer, buffer.position(), buffer.remaining());
+  }
+
+  @Override
+  public long hash(final ByteBuffer buffer, final int offset, final int length) {
+    final int end = offset + length;
+    for (int start = offset; start < end; start++) {
+      if (buffer.get(start) == open) {
+        for (int stop = start + 1; stop < end; stop++) {
+          if (buffer.get(stop) == close) {
+            return stop > start + 1 ? hashFunction.hash(buffer, start + 1, stop - start - 1)
+                : hashFunction.hash(buffer, offset, length);
+          }
+        }
+        break;
+      }
+    }
+    return hashFunction.hash(buffer, offset, length);
+  }
+
+  @Override
+  public HashFunction forNodeKeys() {
+    return hashFunction.forNodeKeys();
+  }
+
+  @Override
+  public long hashDecimal(final long value) {
+    // digits never carry a tag
+    return hashFunction.hashDecimal(value);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("HashTagHashFunction [hashFunction:");
+    builder.append(hashFunction.getClass().getSimpleName());
+    builder.append(", open:");
+    builder.append(open);
+    builder.append(", close:");
+    builder.append(close);
+    builder.append("]");
+    return builder.toString();
+  }
+
+}
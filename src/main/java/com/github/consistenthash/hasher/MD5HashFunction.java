@@ -1,31 +1,67 @@
 package com.github.consistenthash.hasher;
 
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 /**
  * MD5 hash implementation. Note that this is a rather slow choice of hash function for consistent
- * hashing at scale.
+ * hashing at scale; prefer one of the non-cryptographic hashers.
+ * 
+ * The first 64 of the 128 digest bits are used and strings are hashed as UTF-8, whereas earlier
+ * releases kept only the first 32 digest bits of the platform-charset bytes. Placements therefore
+ * do not match rings built by those releases. MessageDigest is not thread-safe so every thread
+ * gets its own instance.
  * 
  * @author gaurav
  */
 public final class MD5HashFunction implements HashFunction {
-  private MessageDigest instance;
-
-  public MD5HashFunction() {
+  private static final ThreadLocal<MessageDigest> instance = ThreadLocal.withInitial(() -> {
     try {
-      instance = MessageDigest.getInstance("MD5");
+      return MessageDigest.getInstance("MD5");
     } catch (NoSuchAlgorithmException exception) {
+      // every compliant JRE is required to ship MD5
+      throw new IllegalStateException(exception);
     }
+  });
+
+  @Override
+  public long hash(final byte[] bytes, final int offset, final int length) {
+    final MessageDigest digest = instance.get();
+    digest.reset();
+    digest.update(bytes, offset, length);
+    return fold(digest.digest());
   }
 
   @Override
-  public Long hash(final String toHash) {
-    instance.reset();
-    instance.update(toHash.getBytes());
-    byte[] digest = instance.digest();
+  public long hash(final ByteBuffer buffer) {
+    final MessageDigest digest = instance.get();
+    digest.reset();
+    final int position = buffer.position();
+    digest.update(buffer);
+    ((Buffer) buffer).position(position);
+    return fold(digest.digest());
+  }
+
+  @Override
+  public long hash(final ByteBuffer buffer, final int offset, final int length) {
+    if (buffer.hasArray()) {
+      return hash(buffer.array(), buffer.arrayOffset() + offset, length);
+    }
+    // copied out into the per-thread scratch buffer rather than narrowing the caller's buffer
+    final Utf8.Scratch scratch = Utf8.scratch();
+    scratch.ensureCapacity(length);
+    final byte[] bytes = scratch.bytes;
+    for (int iter = 0; iter < length; iter++) {
+      bytes[iter] = buffer.get(offset + iter);
+    }
+    return hash(bytes, 0, length);
+  }
+
+  private static long fold(final byte[] digest) {
     long md5 = 0;
-    for (int iter = 0; iter < 4; iter++) {
+    for (int iter = 0; iter < 8; iter++) {
       md5 <<= 8;
       md5 |= ((int) digest[iter]) & 0xFF;
     }
@@ -0,0 +1,108 @@
+package com.github.consistenthash.hasher;
+
+import java.nio.ByteBuffer;
+
+/**
+ * MurmurHash3 x64 128-bit implementation (https://github.com/aappleby/smhasher) folded to 64 bits
+ * by returning the first half of the digest, the same as Guava's murmur3_128().asLong(). Stateless
+ * and hence thread-safe.
+ * 
+ * @author gaurav
+ */
+public final class Murmur3HashFunction implements HashFunction {
+  private static final long C1 = 0x87C37B91114253D5L;
+  private static final long C2 = 0x4CF5AD432745937FL;
+
+  private final long seed;
+
+  public Murmur3HashFunction() {
+    this(0);
+  }
+
+  public Murmur3HashFunction(final int seed) {
+    // the reference implementation takes a 32-bit seed
+    this.seed = seed & 0xFFFFFFFFL;
+  }
+
+  @Override
+  public long hash(final byte[] bytes, final int offset, final int length) {
+    return hash(ByteAccess.ARRAY, bytes, offset, length, seed);
+  }
+
+  @Override
+  public long hash(final ByteBuffer buffer) {
+    return hash(ByteAccess.BUFFER, buffer, buffer.position(), buffer.remaining(), seed);
+  }
+
+  @Override
+  public long hash(final ByteBuffer buffer, final int offset, final int length) {
+    return hash(ByteAccess.BUFFER, buffer, offset, length, seed);
+  }
+
+  private static <T> long hash(final ByteAccess<T> access, final T input, final int offset,
+      final int length, final long seed) {
+    long h1 = seed;
+    long h2 = seed;
+    final int blocksEnd = offset + (length & ~15);
+    int index = offset;
+    for (; index < blocksEnd; index += 16) {
+      final long k1 = access.getLong(input, index);
+      final long k2 = access.getLong(input, index + 8);
+      h1 ^= mixK1(k1);
+      h1 = Long.rotateLeft(h1, 27);
+      h1 += h2;
+      h1 = h1 * 5 + 0x52DCE729;
+      h2 ^= mixK2(k2);
+      h2 = Long.rotateLeft(h2, 31);
+      h2 += h1;
+      h2 = h2 * 5 + 0x38495AB5;
+    }
+
+    final int tail = length & 15;
+    long k1 = 0;
+    long k2 = 0;
+    for (int iter = tail - 1; iter >= 8; iter--) {
+      k2 ^= ((long) access.getUnsignedByte(input, index + iter)) << ((iter - 8) << 3);
+    }
+    for (int iter = Math.min(tail, 8) - 1; iter >= 0; iter--) {
+      k1 ^= ((long) access.getUnsignedByte(input, index + iter)) << (iter << 3);
+    }
+    if (tail > 8) {
+      h2 ^= mixK2(k2);
+    }
+    if (tail > 0) {
+      h1 ^= mixK1(k1);
+    }
+
+    h1 ^= length;
+    h2 ^= length;
+    h1 += h2;
+    h2 += h1;
+    h1 = fmix64(h1);
+    h2 = fmix64(h2);
+    h1 += h2;
+    return h1;
+  }
+
+  private static long mixK1(long k1) {
+    k1 *= C1;
+    k1 = Long.rotateLeft(k1, 31);
+    return k1 * C2;
+  }
+
+  private static long mixK2(long k2) {
+    k2 *= C2;
+    k2 = Long.rotateLeft(k2, 33);
+    return k2 * C1;
+  }
+
+  private static long fmix64(long k) {
+    k ^= k >>> 33;
+    k *= 0xFF51AFD7ED558CCDL;
+    k ^= k >>> 33;
+    k *= 0xC4CEB9FE1A85EC53L;
+    k ^= k >>> 33;
+    return k;
+  }
+
+}
@@ -0,0 +1,110 @@
+package com.github.consistenthash.hasher;
+
+/**
+ * Allocation-free UTF-8 encoding of character sequences into a reusable per-thread buffer.
+ * Malformed surrogates are replaced by '?' which matches what String.getBytes(UTF_8) does.
+ * 
+ * @author gaurav
+ */
+final class Utf8 {
+  private static final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+  private Utf8() {}
+
+  static final class Scratch {
+    byte[] bytes = new byte[256];
+
+    void ensureCapacity(final int capacity) {
+      if (bytes.length < capacity) {
+        bytes = new byte[Math.max(capacity, bytes.length << 1)];
+      }
+    }
+  }
+
+  static Scratch scratch() {
+    return scratch.get();
+  }
+
+  /**
+   * Encode all of the given characters into the scratch buffer, returning the encoded length.
+   */
+  static int encode(final CharSequence chars, final Scratch scratch) {
+    return encode(chars, 0, chars.length(), scratch);
+  }
+
+  /**
+   * Encode chars[start, end) into the scratch buffer, returning the encoded length.
+   */
+  static int encode(final CharSequence chars, final int start, final int end,
+      final Scratch scratch) {
+    // worst case is 3 bytes per UTF-16 unit, surrogate pairs take 4 bytes for 2 units
+    scratch.ensureCapacity((end - start) * 3);
+    final byte[] bytes = scratch.bytes;
+    int out = 0;
+    int iter = start;
+    // fast path for the overwhelmingly common case of ASCII keys
+    while (iter < end) {
+      final char c = chars.charAt(iter);
+      if (c >= 0x80) {
+        break;
+      }
+      bytes[out++] = (byte) c;
+      iter++;
+    }
+    while (iter < end) {
+      final char c = chars.charAt(iter++);
+      if (c < 0x80) {
+        bytes[out++] = (byte) c;
+      } else if (c < 0x800) {
+        bytes[out++] = (byte) (0xC0 | (c >> 6));
+        bytes[out++] = (byte) (0x80 | (c & 0x3F));
+      } else if (Character.isSurrogate(c)) {
+        final char low;
+        if (Character.isHighSurrogate(c) && iter < end
+            && Character.isLowSurrogate(low = chars.charAt(iter))) {
+          iter++;
+          final int codePoint = Character.toCodePoint(c, low);
+          bytes[out++] = (byte) (0xF0 | (codePoint >> 18));
+          bytes[out++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+          bytes[out++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+          bytes[out++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else {
+          bytes[out++] = (byte) '?';
+        }
+      } else {
+        bytes[out++] = (byte) (0xE0 | (c >> 12));
+        bytes[out++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+        bytes[out++] = (byte) (0x80 | (c & 0x3F));
+      }
+    }
+    return out;
+  }
+
+  /**
+   * Encode the decimal digits of value, with a leading '-' if negative, into the scratch buffer,
+   * returning the encoded length. Same bytes as Long.toString(value).
+   */
+  static int encodeDecimal(final long value, final Scratch scratch) {
+    // 19 digits plus a sign at most
+    scratch.ensureCapacity(20);
+    final byte[] bytes = scratch.bytes;
+    final boolean negative = value < 0;
+    // work on the negative side so that Long.MIN_VALUE needs no special casing
+    long remaining = negative ? value : -value;
+    int digits = 1;
+    for (long rest = remaining / 10; rest != 0; rest /= 10) {
+      digits++;
+    }
+    final int length = negative ? digits + 1 : digits;
+    if (negative) {
+      bytes[0] = '-';
+    }
+    int out = length;
+    do {
+      bytes[--out] = (byte) ('0' - (remaining % 10));
+      remaining /= 10;
+    } while (remaining != 0);
+    return length;
+  }
+
+}
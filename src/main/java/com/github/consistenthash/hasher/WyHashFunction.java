@@ -0,0 +1,118 @@
+package com.github.consistenthash.hasher;
+
+import java.nio.ByteBuffer;
+
+/**
+ * wyhash (https://github.com/wangyi-fudan/wyhash, final version 4 with its default secret) built
+ * around the 64x64->128 bit multiply-and-fold mixer. Typically the fastest of the bundled hashers
+ * for short keys. Stateless and hence thread-safe.
+ * 
+ * @author gaurav
+ */
+public final class WyHashFunction implements HashFunction {
+  private static final long SECRET0 = 0x2D358DCCAA6C78A5L;
+  private static final long SECRET1 = 0x8BB84B93962EACC9L;
+  private static final long SECRET2 = 0x4B33A62ED433D4A3L;
+  private static final long SECRET3 = 0x4D5A2DA51DE1AA47L;
+
+  private final long seed;
+
+  public WyHashFunction() {
+    this(0L);
+  }
+
+  public WyHashFunction(final long seed) {
+    this.seed = seed;
+  }
+
+  @Override
+  public long hash(final byte[] bytes, final int offset, final int length) {
+    return hash(ByteAccess.ARRAY, bytes, offset, length, seed);
+  }
+
+  @Override
+  public long hash(final ByteBuffer buffer) {
+    return hash(ByteAccess.BUFFER, buffer, buffer.position(), buffer.remaining(), seed);
+  }
+
+  @Override
+  public long hash(final ByteBuffer buffer, final int offset, final int length) {
+    return hash(ByteAccess.BUFFER, buffer, offset, length, seed);
+  }
+
+  private static <T> long hash(final ByteAccess<T> access, final T input, final int offset,
+      final int length, long seed) {
+    seed ^= mix(seed ^ SECRET0, SECRET1);
+    long a;
+    long b;
+    if (length <= 16) {
+      if (length >= 4) {
+        final int shift = (length >>> 3) << 2;
+        a = (access.getUnsignedInt(input, offset) << 32)
+            | access.getUnsignedInt(input, offset + shift);
+        b = (access.getUnsignedInt(input, offset + length - 4) << 32)
+            | access.getUnsignedInt(input, offset + length - 4 - shift);
+      } else if (length > 0) {
+        a = ((long) access.getUnsignedByte(input, offset) << 16)
+            | ((long) access.getUnsignedByte(input, offset + (length >>> 1)) << 8)
+            | access.getUnsignedByte(input, offset + length - 1);
+        b = 0;
+      } else {
+        a = 0;
+        b = 0;
+      }
+    } else {
+      int index = offset;
+      int remaining = length;
+      if (remaining > 48) {
+        long see1 = seed;
+        long see2 = seed;
+        do {
+          seed = mix(access.getLong(input, index) ^ SECRET1,
+              access.getLong(input, index + 8) ^ seed);
+          see1 = mix(access.getLong(input, index + 16) ^ SECRET2,
+              access.getLong(input, index + 24) ^ see1);
+          see2 = mix(access.getLong(input, index + 32) ^ SECRET3,
+              access.getLong(input, index + 40) ^ see2);
+          index += 48;
+          remaining -= 48;
+        } while (remaining > 48);
+        seed ^= see1 ^ see2;
+      }
+      while (remaining > 16) {
+        seed = mix(access.getLong(input, index) ^ SECRET1,
+            access.getLong(input, index + 8) ^ seed);
+        index += 16;
+        remaining -= 16;
+      }
+      a = access.getLong(input, index + remaining - 16);
+      b = access.getLong(input, index + remaining - 8);
+    }
+    a ^= SECRET1;
+    b ^= seed;
+    final long low = a * b;
+    final long high = unsignedMultiplyHigh(a, b);
+    return mix(low ^ SECRET0 ^ length, high ^ SECRET1);
+  }
+
+  // fold the 128 bit product of a and b into 64 bits
+  private static long mix(final long a, final long b) {
+    return (a * b) ^ unsignedMultiplyHigh(a, b);
+  }
+
+  // upper 64 bits of the unsigned 128 bit product; Math.multiplyHigh() is not available on java 8
+  static long unsignedMultiplyHigh(final long x, final long y) {
+    final long x1 = x >> 32;
+    final long x2 = x & 0xFFFFFFFFL;
+    final long y1 = y >> 32;
+    final long y2 = y & 0xFFFFFFFFL;
+    final long z2 = x2 * y2;
+    final long t = x1 * y2 + (z2 >>> 32);
+    long z1 = t & 0xFFFFFFFFL;
+    final long z0 = t >> 32;
+    z1 += x2 * y1;
+    final long signedHigh = x1 * y1 + z0 + (z1 >> 32);
+    return signedHigh + ((x >> 63) & y) + ((y >> 63) & x);
+  }
+
+}
@@ -0,0 +1,108 @@
+package com.github.consistenthash.hasher;
+
+import java.nio.ByteBuffer;
+
+/**
+ * xxHash64 implementation (https://github.com/Cyan4973/xxHash). Fast, mixes very well, and is a
+ * solid default choice for placing keys and virtual nodes on a ring. Stateless and hence
+ * thread-safe.
+ * 
+ * @author gaurav
+ */
+public final class XXHash64HashFunction implements HashFunction {
+  private static final long PRIME64_1 = 0x9E3779B185EBCA87L;
+  private static final long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+  private static final long PRIME64_3 = 0x165667B19E3779F9L;
+  private static final long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+  private static final long PRIME64_5 = 0x27D4EB2F165667C5L;
+
+  private final long seed;
+
+  public XXHash64HashFunction() {
+    this(0L);
+  }
+
+  public XXHash64HashFunction(final long seed) {
+    this.seed = seed;
+  }
+
+  @Override
+  public long hash(final byte[] bytes, final int offset, final int length) {
+    return hash(ByteAccess.ARRAY, bytes, offset, length, seed);
+  }
+
+  @Override
+  public long hash(final ByteBuffer buffer) {
+    return hash(ByteAccess.BUFFER, buffer, buffer.position(), buffer.remaining(), seed);
+  }
+
+  @Override
+  public long hash(final ByteBuffer buffer, final int offset, final int length) {
+    return hash(ByteAccess.BUFFER, buffer, offset, length, seed);
+  }
+
+  private static <T> long hash(final ByteAccess<T> access, final T input, final int offset,
+      final int length, final long seed) {
+    final int end = offset + length;
+    int index = offset;
+    long hash;
+    if (length >= 32) {
+      long v1 = seed + PRIME64_1 + PRIME64_2;
+      long v2 = seed + PRIME64_2;
+      long v3 = seed;
+      long v4 = seed - PRIME64_1;
+      final int limit = end - 32;
+      do {
+        v1 = round(v1, access.getLong(input, index));
+        v2 = round(v2, access.getLong(input, index + 8));
+        v3 = round(v3, access.getLong(input, index + 16));
+        v4 = round(v4, access.getLong(input, index + 24));
+        index += 32;
+      } while (index <= limit);
+      hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12)
+          + Long.rotateLeft(v4, 18);
+      hash = mergeRound(hash, v1);
+      hash = mergeRound(hash, v2);
+      hash = mergeRound(hash, v3);
+      hash = mergeRound(hash, v4);
+    } else {
+      hash = seed + PRIME64_5;
+    }
+    hash += length;
+
+    while (index <= end - 8) {
+      hash ^= round(0, access.getLong(input, index));
+      hash = Long.rotateLeft(hash, 27) * PRIME64_1 + PRIME64_4;
+      index += 8;
+    }
+    if (index <= end - 4) {
+      hash ^= access.getUnsignedInt(input, index) * PRIME64_1;
+      hash = Long.rotateLeft(hash, 23) * PRIME64_2 + PRIME64_3;
+      index += 4;
+    }
+    while (index < end) {
+      hash ^= access.getUnsignedByte(input, index) * PRIME64_5;
+      hash = Long.rotateLeft(hash, 11) * PRIME64_1;
+      index++;
+    }
+
+    hash ^= hash >>> 33;
+    hash *= PRIME64_2;
+    hash ^= hash >>> 29;
+    hash *= PRIME64_3;
+    hash ^= hash >>> 32;
+    return hash;
+  }
+
+  private static long round(long accumulator, final long input) {
+    accumulator += input * PRIME64_2;
+    accumulator = Long.rotateLeft(accumulator, 31);
+    return accumulator * PRIME64_1;
+  }
+
+  private static long mergeRound(long accumulator, final long value) {
+    accumulator ^= round(0, value);
+    return accumulator * PRIME64_1 + PRIME64_4;
+  }
+
+}
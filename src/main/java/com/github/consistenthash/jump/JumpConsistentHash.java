@@ -1,10 +1,152 @@
 package com.github.consistenthash.jump;
 
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.github.consistenthash.hasher.HashFunction;
+import com.github.consistenthash.hasher.XXHash64HashFunction;
+import com.github.consistenthash.ring.Node;
+
 /**
- * TODO: Implement jump hash
+ * Jump consistent hash as described by Lamping and Veach (https://arxiv.org/abs/1406.2294).
+ * 
+ * Guidelines:<br>
+ * 1. Lookups are O(ln n) arithmetic with zero memory per bucket<br>
+ * 2. Buckets are numbered 0..n-1 and only the last bucket can be added or removed, which makes
+ * this a great fit for fixed or append-only shard tiers and a poor fit for caches that lose random
+ * hosts<br>
+ * 3. Shard ids are handed out sequentially as nodes are appended and are stable for the lifetime
+ * of the node<br>
+ * 
+ * Membership changes publish a new immutable node array, lookups never lock.
  * 
  * @author gaurav
  */
-public final class JumpConsistentHash {
+public final class JumpConsistentHash<N extends Node> {
+  private static final Logger logger =
+      LogManager.getLogger(JumpConsistentHash.class.getSimpleName());
+  private final HashFunction hashFunction;
+
+  // shard id -> node, republished on every membership change
+  private volatile Node[] nodes = new Node[0];
+
+  private final ReentrantLock writeLock = new ReentrantLock(true);
+
+  public JumpConsistentHash() {
+    this(new XXHash64HashFunction());
+  }
+
+  public JumpConsistentHash(final HashFunction hashFunction) {
+    this.hashFunction = hashFunction;
+  }
+
+  /**
+   * Map a 64 bit key hash to a bucket in [0, buckets). This is the algorithm straight out of the
+   * paper: a 64 bit LCG drives the "jumps" forward until the next jump would leave the range.
+   */
+  public static int bucket(long keyHash, final int buckets) {
+    if (buckets <= 0) {
+      throw new IllegalArgumentException(String.format("%d is not a valid bucket count", buckets));
+    }
+    long bucket = -1;
+    long jump = 0;
+    while (jump < buckets) {
+      bucket = jump;
+      keyHash = keyHash * 2862933555777941757L + 1;
+      jump = (long) ((bucket + 1) * ((double) (1L << 31) / (double) ((keyHash >>> 33) + 1)));
+    }
+    return (int) bucket;
+  }
+
+  /**
+   * Append the node as the new last bucket and return its shard id. Keys move only from existing
+   * buckets to this new one, roughly 1/n of them.
+   */
+  public int addNode(final N node) {
+    logger.info("Appending {}", node);
+    writeLock.lock();
+    try {
+      final Node[] current = nodes;
+      for (final Node existing : current) {
+        if (existing.getKey().equals(node.getKey())) {
+          throw new IllegalArgumentException(String.format("%s is already a member", node));
+        }
+      }
+      final Node[] next = Arrays.copyOf(current, current.length + 1);
+      next[current.length] = node;
+      nodes = next;
+      return current.length;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Drop the last bucket, the only one jump hash can remove, and return the node that owned it or
+   * null if there are no nodes. Only keys of the dropped bucket move.
+   */
+  @SuppressWarnings("unchecked")
+  public N removeLastNode() {
+    writeLock.lock();
+    try {
+      final Node[] current = nodes;
+      if (current.length == 0) {
+        return null;
+      }
+      final N removed = (N) current[current.length - 1];
+      nodes = Arrays.copyOf(current, current.length - 1);
+      logger.info("Dropped {}", removed);
+      return removed;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Shard id that the next call to addNode() will hand out.
+   */
+  public int nextShardId() {
+    return nodes.length;
+  }
+
+  /**
+   * Choose the shard for the given key or -1 if there are no nodes.
+   */
+  public int chooseShard(final String key) {
+    final int buckets = nodes.length;
+    if (buckets == 0) {
+      return -1;
+    }
+    return bucket(hashFunction.hash(key), buckets);
+  }
+
+  /**
+   * Choose the node owning the given key, or null if there are no nodes.
+   */
+  @SuppressWarnings("unchecked")
+  public N chooseNode(final String key) {
+    // pin the node array so the bucket count and the lookup agree
+    final Node[] snapshot = nodes;
+    if (snapshot.length == 0) {
+      return null;
+    }
+    return (N) snapshot[bucket(hashFunction.hash(key), snapshot.length)];
+  }
+
+  /**
+   * Lookup the node by its shard id, or null if no such shard exists.
+   */
+  @SuppressWarnings("unchecked")
+  public N getNode(final int shardId) {
+    final Node[] snapshot = nodes;
+    return shardId >= 0 && shardId < snapshot.length ? (N) snapshot[shardId] : null;
+  }
+
+  public int getNodeCount() {
+    return nodes.length;
+  }
 
 }
@@ -0,0 +1,286 @@
+package com.github.consistenthash.maglev;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.github.consistenthash.hasher.HashFunction;
+import com.github.consistenthash.hasher.XXHash64HashFunction;
+import com.github.consistenthash.ring.Node;
+
+/**
+ * Maglev hashing as described in section 3.4 of https://ai.google/research/pubs/pub44824.
+ * 
+ * Guidelines:<br>
+ * 1. Every node derives a permutation of the table slots from an (offset, skip) pair; nodes then
+ * take turns claiming their next preferred free slot until the table is full<br>
+ * 2. Lookups are one hash plus one array index<br>
+ * 3. Table size must be prime and should be much larger than the node count, eg. 65537 for
+ * hundreds of nodes or 655373 for thousands; every node ends up owning either floor(M/N) or
+ * ceil(M/N) slots<br>
+ * 4. Disruption on membership changes is small but not minimal; use MaglevTable.slotsMoved() to
+ * measure it between any two tables<br>
+ * 
+ * Every membership change is a full, sequential rebuild of the M slot table: O(M log M) additions
+ * and O(M + N) memory, however few nodes joined or left. Each node's (offset, skip) pair is hashed
+ * once when it joins and its permutation is walked by repeated addition rather than materialized,
+ * so the rebuild is all slot filling. That fill is deliberately neither incremental nor parallel:
+ * nodes claim slots in strict turns, so splitting the work would change the result, and carrying
+ * slots over from the previous table would make the table depend on the order of past changes.
+ * Nodes are ordered by key before populating so every client builds the exact same table
+ * irrespective of insertion order. To pay for one rebuild per change set rather than per node, use
+ * addNodes() and removeNodes().
+ * 
+ * @author gaurav
+ */
+public final class MaglevConsistentHash<N extends Node> {
+  private static final Logger logger =
+      LogManager.getLogger(MaglevConsistentHash.class.getSimpleName());
+  public static final int DEFAULT_TABLE_SIZE = 65537;
+  private static final long OFFSET_SALT = 0x2545F4914F6CDD1DL;
+  private static final long SKIP_SALT = 0x9E3779B97F4A7C15L;
+
+  private final HashFunction hashFunction;
+  private final int tableSize;
+
+  // writer state, guarded by writeLock and kept sorted by node key
+  private final List<Backend> backends = new ArrayList<>();
+  private final ReentrantLock writeLock = new ReentrantLock(true);
+
+  // rebuilt in full by populate() and swapped in whole on every change
+  private volatile MaglevTable<N> table;
+
+  public MaglevConsistentHash() {
+    this(new XXHash64HashFunction());
+  }
+
+  public MaglevConsistentHash(final HashFunction hashFunction) {
+    this(hashFunction, DEFAULT_TABLE_SIZE);
+  }
+
+  public MaglevConsistentHash(final HashFunction hashFunction, final int tableSize) {
+    if (!isPrime(tableSize)) {
+      throw new IllegalArgumentException(
+          String.format("%d is not a valid table size, it must be prime", tableSize));
+    }
+    this.hashFunction = hashFunction;
+    this.tableSize = tableSize;
+    this.table = new MaglevTable<>(new int[tableSize], new Node[0]);
+  }
+
+  /**
+   * Add the node and publish a rebuilt table. Returns false if a node with the same key is already
+   * a member.
+   */
+  public boolean addNode(final N node) {
+    logger.info("Adding {}", node);
+    writeLock.lock();
+    try {
+      if (!insert(node)) {
+        return false;
+      }
+      table = populate();
+      return true;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Add every one of the nodes and publish a single rebuilt table. Nodes whose key is already a
+   * member are skipped. Returns true if any node was added.
+   */
+  public boolean addNodes(final Collection<N> nodes) {
+    logger.info("Adding {} nodes", nodes.size());
+    writeLock.lock();
+    try {
+      boolean added = false;
+      for (final N node : nodes) {
+        added |= insert(node);
+      }
+      if (added) {
+        table = populate();
+      }
+      return added;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  private boolean insert(final N node) {
+    final int index = search(node.getKey());
+    if (index >= 0) {
+      return false;
+    }
+    final long hash = hashFunction.forNodeKeys().hash(node.getKey());
+    final int offset = (int) Long.remainderUnsigned(mix(hash ^ OFFSET_SALT), tableSize);
+    final int skip = (int) Long.remainderUnsigned(mix(hash ^ SKIP_SALT), tableSize - 1) + 1;
+    backends.add(-index - 1, new Backend(node, offset, skip));
+    return true;
+  }
+
+  /**
+   * Drop the node and publish a rebuilt table.
+   */
+  public boolean removeNode(final N node) {
+    logger.info("Dropping {}", node);
+    writeLock.lock();
+    try {
+      final int index = search(node.getKey());
+      if (index < 0) {
+        return false;
+      }
+      backends.remove(index);
+      table = populate();
+      return true;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Drop every one of the nodes and publish a single rebuilt table. Returns true if any of them was
+   * a member.
+   */
+  public boolean removeNodes(final Collection<N> nodes) {
+    logger.info("Dropping {} nodes", nodes.size());
+    writeLock.lock();
+    try {
+      boolean removed = false;
+      for (final N node : nodes) {
+        final int index = search(node.getKey());
+        if (index >= 0) {
+          backends.remove(index);
+          removed = true;
+        }
+      }
+      if (removed) {
+        table = populate();
+      }
+      return removed;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Choose the node owning the slot the key hashes to, or null if there are no nodes.
+   */
+  public N chooseNode(final String key) {
+    final MaglevTable<N> snapshot = table;
+    if (snapshot.isEmpty()) {
+      return null;
+    }
+    return snapshot.getNode(snapshot.slotOf(hashFunction.hash(key)));
+  }
+
+  /**
+   * The currently published table; hold on to it to compute disruption after later changes.
+   */
+  public MaglevTable<N> getTable() {
+    return table;
+  }
+
+  public int getTableSize() {
+    return tableSize;
+  }
+
+  public int getNodeCount() {
+    return table.getNodeCount();
+  }
+
+  private MaglevTable<N> populate() {
+    final int backendCount = backends.size();
+    final int[] entries = new int[tableSize];
+    final Node[] nodes = new Node[backendCount];
+    if (backendCount == 0) {
+      return new MaglevTable<>(entries, nodes);
+    }
+    Arrays.fill(entries, -1);
+    // current position of every backend in its own permutation, walked by repeated addition
+    final int[] cursors = new int[backendCount];
+    final int[] skips = new int[backendCount];
+    for (int iter = 0; iter < backendCount; iter++) {
+      final Backend backend = backends.get(iter);
+      nodes[iter] = backend.node;
+      cursors[iter] = backend.offset;
+      skips[iter] = backend.skip;
+    }
+    int filled = 0;
+    while (true) {
+      for (int iter = 0; iter < backendCount; iter++) {
+        int slot = cursors[iter];
+        while (entries[slot] >= 0) {
+          slot += skips[iter];
+          if (slot >= tableSize) {
+            slot -= tableSize;
+          }
+        }
+        entries[slot] = iter;
+        slot += skips[iter];
+        cursors[iter] = slot >= tableSize ? slot - tableSize : slot;
+        if (++filled == tableSize) {
+          return new MaglevTable<>(entries, nodes);
+        }
+      }
+    }
+  }
+
+  // binary search by key, same contract as Collections.binarySearch()
+  private int search(final String key) {
+    int low = 0;
+    int high = backends.size() - 1;
+    while (low <= high) {
+      final int mid = (low + high) >>> 1;
+      final int comparison = backends.get(mid).node.getKey().compareTo(key);
+      if (comparison < 0) {
+        low = mid + 1;
+      } else if (comparison > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  }
+
+  // murmur3 fmix64 finalizer, decorrelates offset from skip even though both derive from one hash
+  private static long mix(long value) {
+    value ^= value >>> 33;
+    value *= 0xFF51AFD7ED558CCDL;
+    value ^= value >>> 33;
+    value *= 0xC4CEB9FE1A85EC53L;
+    value ^= value >>> 33;
+    return value;
+  }
+
+  private static boolean isPrime(final int candidate) {
+    if (candidate < 2) {
+      return false;
+    }
+    for (int divisor = 2; (long) divisor * divisor <= candidate; divisor++) {
+      if (candidate % divisor == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static final class Backend {
+    private final Node node;
+    private final int offset;
+    private final int skip;
+
+    private Backend(final Node node, final int offset, final int skip) {
+      this.node = node;
+      this.offset = offset;
+      this.skip = skip;
+    }
+  }
+
+}
@@ -0,0 +1,109 @@
+package com.github.consistenthash.maglev;
+
+import com.github.consistenthash.ring.Node;
+
+/**
+ * An immutable, fully populated Maglev lookup table: every slot holds the ordinal of the node that
+ * owns it. Tables are published as a whole so lookups never see a half built table and old tables
+ * can be kept around to measure disruption against newer ones.
+ * 
+ * @author gaurav
+ */
+public final class MaglevTable<N extends Node> {
+  private final int[] entries;
+  private final Node[] nodes;
+
+  MaglevTable(final int[] entries, final Node[] nodes) {
+    this.entries = entries;
+    this.nodes = nodes;
+  }
+
+  public int size() {
+    return entries.length;
+  }
+
+  public boolean isEmpty() {
+    return nodes.length == 0;
+  }
+
+  public int getNodeCount() {
+    return nodes.length;
+  }
+
+  /**
+   * Map a key hash to its slot: Lemire's multiply-shift range reduction over the upper 32 bits of
+   * the hash, which is a lot cheaper than a modulo.
+   */
+  public int slotOf(final long keyHash) {
+    return (int) (((keyHash >>> 32) * entries.length) >>> 32);
+  }
+
+  /**
+   * Owner of the given slot, or null if the table is empty.
+   */
+  @SuppressWarnings("unchecked")
+  public N getNode(final int slot) {
+    return nodes.length == 0 ? null : (N) nodes[entries[slot]];
+  }
+
+  /**
+   * Number of slots owned by the given node.
+   */
+  public int getSlotCount(final N node) {
+    int ordinal = -1;
+    for (int iter = 0; iter < nodes.length; iter++) {
+      if (nodes[iter].getKey().equals(node.getKey())) {
+        ordinal = iter;
+        break;
+      }
+    }
+    int slots = 0;
+    if (ordinal >= 0) {
+      for (final int entry : entries) {
+        if (entry == ordinal) {
+          slots++;
+        }
+      }
+    }
+    return slots;
+  }
+
+  /**
+   * Count the slots whose owner differs between this and the other table of the same size. Empty
+   * slots on either side count as moved.
+   */
+  public int slotsMoved(final MaglevTable<N> other) {
+    if (other.size() != size()) {
+      throw new IllegalArgumentException(
+          String.format("Cannot compare tables of size %d and %d", size(), other.size()));
+    }
+    int moved = 0;
+    for (int slot = 0; slot < entries.length; slot++) {
+      final Node before = isEmpty() ? null : nodes[entries[slot]];
+      final Node after = other.isEmpty() ? null : other.nodes[other.entries[slot]];
+      if (before == null || after == null || !before.getKey().equals(after.getKey())) {
+        moved++;
+      }
+    }
+    return moved;
+  }
+
+  /**
+   * Fraction of slots that changed owners between this and the other table.
+   */
+  public double disruption(final MaglevTable<N> other) {
+    return (double) slotsMoved(other) / size();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("MaglevTable [size:");
+    builder.append(entries.length);
+    builder.append(", nodes:");
+    builder.append(nodes.length);
+    builder.append("]");
+    return builder.toString();
+  }
+
+}
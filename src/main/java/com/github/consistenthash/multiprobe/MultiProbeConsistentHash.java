@@ -0,0 +1,209 @@
+package com.github.consistenthash.multiprobe;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.github.consistenthash.hasher.HashFunction;
+import com.github.consistenthash.hasher.XXHash64HashFunction;
+import com.github.consistenthash.ring.Node;
+
+/**
+ * Multi-probe consistent hash as described by Appleton and O'Reilly
+ * (https://arxiv.org/abs/1505.00062).
+ * 
+ * Guidelines:<br>
+ * 1. Every physical node is exactly one point on the ring, so memory is O(n) with no virtual
+ * nodes<br>
+ * 2. Every key is instead hashed to k probe points via double hashing and goes to the node whose
+ * point follows any of its probes most closely; 21 probes get the peak-to-mean load down to about
+ * 1.05<br>
+ * 3. Lookups cost k binary searches over n points, O(k log n), trading some lookup time for the
+ * memory and depth of virtual nodes<br>
+ * 4. Adding or removing a node only moves keys to or from that node<br>
+ * 
+ * Membership changes publish a new immutable set of points, lookups never lock.
+ * 
+ * @author gaurav
+ */
+public final class MultiProbeConsistentHash<N extends Node> {
+  private static final Logger logger =
+      LogManager.getLogger(MultiProbeConsistentHash.class.getSimpleName());
+  public static final int DEFAULT_PROBE_COUNT = 21;
+  private final HashFunction hashFunction;
+  private final int probeCount;
+
+  // one point per node, so a change copies both arrays in O(n) rather than O(n * vnodes)
+  private volatile Points points = new Points(new long[0], new Node[0]);
+
+  private final ReentrantLock writeLock = new ReentrantLock(true);
+
+  public MultiProbeConsistentHash() {
+    this(new XXHash64HashFunction());
+  }
+
+  public MultiProbeConsistentHash(final HashFunction hashFunction) {
+    this(hashFunction, DEFAULT_PROBE_COUNT);
+  }
+
+  public MultiProbeConsistentHash(final HashFunction hashFunction, final int probeCount) {
+    if (probeCount < 1) {
+      throw new IllegalArgumentException(
+          String.format("%d is not a valid probe count", probeCount));
+    }
+    this.hashFunction = hashFunction;
+    this.probeCount = probeCount;
+  }
+
+  /**
+   * Place the node at the hash of its key. Returns false if a node with the same key is already
+   * present.
+   */
+  public boolean addNode(final N node) {
+    logger.info("Adding {}", node);
+    final long position = hashFunction.forNodeKeys().hash(node.getKey());
+    writeLock.lock();
+    try {
+      final Points current = points;
+      if (current.indexOf(node, position) >= 0) {
+        return false;
+      }
+      final int size = current.positions.length;
+      // existing points win ties, the new point goes after any equal ones
+      int insertAt = current.ceiling(position);
+      while (insertAt < size && current.positions[insertAt] == position) {
+        insertAt++;
+      }
+      final long[] positions = new long[size + 1];
+      final Node[] nodes = new Node[size + 1];
+      System.arraycopy(current.positions, 0, positions, 0, insertAt);
+      System.arraycopy(current.nodes, 0, nodes, 0, insertAt);
+      positions[insertAt] = position;
+      nodes[insertAt] = node;
+      System.arraycopy(current.positions, insertAt, positions, insertAt + 1, size - insertAt);
+      System.arraycopy(current.nodes, insertAt, nodes, insertAt + 1, size - insertAt);
+      points = new Points(positions, nodes);
+    } finally {
+      writeLock.unlock();
+    }
+    return true;
+  }
+
+  /**
+   * Drop the node's point. Returns false if the node is not present.
+   */
+  public boolean removeNode(final N node) {
+    logger.info("Dropping {}", node);
+    final long position = hashFunction.forNodeKeys().hash(node.getKey());
+    writeLock.lock();
+    try {
+      final Points current = points;
+      final int index = current.indexOf(node, position);
+      if (index < 0) {
+        return false;
+      }
+      final int size = current.positions.length;
+      final long[] positions = new long[size - 1];
+      final Node[] nodes = new Node[size - 1];
+      System.arraycopy(current.positions, 0, positions, 0, index);
+      System.arraycopy(current.nodes, 0, nodes, 0, index);
+      System.arraycopy(current.positions, index + 1, positions, index, size - index - 1);
+      System.arraycopy(current.nodes, index + 1, nodes, index, size - index - 1);
+      points = new Points(positions, nodes);
+    } finally {
+      writeLock.unlock();
+    }
+    return true;
+  }
+
+  /**
+   * Choose the node owning the given key, or null if there are no nodes.
+   */
+  @SuppressWarnings("unchecked")
+  public N chooseNode(final String key) {
+    // pin the points so that every probe sees the same membership
+    final Points snapshot = points;
+    final long[] positions = snapshot.positions;
+    if (positions.length == 0) {
+      return null;
+    }
+    final long hash = hashFunction.hash(key);
+    // double hashing: probe i sits at hash + i * step, with an odd step derived from the hash
+    final long step = mix(hash) | 1L;
+    long probe = hash;
+    int closest = 0;
+    long closestDistance = -1L;
+    for (int iter = 0; iter < probeCount; iter++) {
+      int index = snapshot.ceiling(probe);
+      if (index == positions.length) {
+        index = 0;
+      }
+      // clockwise distance around the 2^64 ring, compared as unsigned
+      final long distance = positions[index] - probe;
+      if (Long.compareUnsigned(distance, closestDistance) < 0) {
+        closestDistance = distance;
+        closest = index;
+      }
+      probe += step;
+    }
+    return (N) snapshot.nodes[closest];
+  }
+
+  public int getNodeCount() {
+    return points.positions.length;
+  }
+
+  public int getProbeCount() {
+    return probeCount;
+  }
+
+  // fmix64 from murmur3, decorrelates the probe step from the first probe
+  private static long mix(long hash) {
+    hash ^= hash >>> 33;
+    hash *= 0xFF51AFD7ED558CCDL;
+    hash ^= hash >>> 33;
+    hash *= 0xC4CEB9FE1A85EC53L;
+    return hash ^ (hash >>> 33);
+  }
+
+  /**
+   * One point per node: positions sorted ascending with the owning node at the same index.
+   */
+  private static final class Points {
+    private final long[] positions;
+    private final Node[] nodes;
+
+    private Points(final long[] positions, final Node[] nodes) {
+      this.positions = positions;
+      this.nodes = nodes;
+    }
+
+    // index of the first position >= hash, positions.length if there is none
+    private int ceiling(final long hash) {
+      int low = 0;
+      int high = positions.length - 1;
+      while (low <= high) {
+        final int mid = (low + high) >>> 1;
+        if (positions[mid] < hash) {
+          low = mid + 1;
+        } else {
+          high = mid - 1;
+        }
+      }
+      return low;
+    }
+
+    // index of the node sitting at the given position, -1 if it is not there
+    private int indexOf(final Node node, final long position) {
+      for (int iter = ceiling(position); iter < positions.length
+          && positions[iter] == position; iter++) {
+        if (nodes[iter].getKey().equals(node.getKey())) {
+          return iter;
+        }
+      }
+      return -1;
+    }
+  }
+
+}
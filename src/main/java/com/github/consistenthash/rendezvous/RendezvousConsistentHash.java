@@ -1,10 +1,426 @@
 package com.github.consistenthash.rendezvous;
 
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.github.consistenthash.hasher.HashFunction;
+import com.github.consistenthash.hasher.XXHash64HashFunction;
+import com.github.consistenthash.ring.Node;
+
 /**
- * TODO: Implement rendezvous hash
+ * Rendezvous or highest random weight (HRW) hashing as described by Thaler and Ravishankar
+ * (https://www.eecs.umich.edu/techreports/cse/96/CSE-TR-316-96.pdf).
+ * 
+ * Guidelines:<br>
+ * 1. Every node scores every key, the highest score wins; no virtual nodes are needed and a
+ * membership change moves the minimum possible number of keys<br>
+ * 2. Each node's seed is hashed once on insertion so that scoring a key is a cheap mix of two longs
+ * rather than a string hash<br>
+ * 3. Weights use the logarithmic method, score = -weight / ln(u) for a uniform u in (0, 1), which
+ * gives every node a share of keys proportional to its weight<br>
+ * 4. Flat mode is O(n) per lookup. Skeleton mode arranges nodes into a virtual hierarchy of
+ * clusters (fanout^levels leaf clusters), runs weighted HRW among the children of each level and
+ * finally among the nodes of one leaf cluster, which is O(fanout * levels + cluster size). The depth
+ * follows the node count so that a leaf cluster holds at most about fanout nodes, which keeps
+ * lookups at O(fanout * log n). This is the way to go for clusters of thousands of nodes; the
+ * trade-off is that a membership change can also shift some keys between sibling subtrees whose
+ * aggregate weights changed<br>
+ * 5. The skeleton is rebuilt one level deeper once the node count exceeds fanout^(levels + 1), and
+ * shallower once the nodes would fit a skeleton at least two levels shallower. A rebuild reassigns
+ * nodes to new clusters and so moves a large share of keys, but it only happens when the node
+ * count crosses a power of the fanout<br>
+ * 
+ * Membership changes publish a new immutable snapshot, lookups never lock.
  * 
  * @author gaurav
  */
-public final class RendezvousConsistentHash {
+public final class RendezvousConsistentHash<N extends Node> {
+  private static final Logger logger =
+      LogManager.getLogger(RendezvousConsistentHash.class.getSimpleName());
+  private static final long SKELETON_SALT = 0x632BE59BD9B4E019L;
+  private final HashFunction hashFunction;
+
+  private volatile Membership membership;
+
+  private final ReentrantLock writeLock = new ReentrantLock(true);
+
+  public RendezvousConsistentHash() {
+    this(new XXHash64HashFunction());
+  }
+
+  /**
+   * Flat HRW with O(n) lookups.
+   */
+  public RendezvousConsistentHash(final HashFunction hashFunction) {
+    this.hashFunction = hashFunction;
+    this.membership = new Membership(1, 0);
+  }
+
+  /**
+   * Skeleton based HRW whose depth grows and shrinks with the node count so that a leaf cluster
+   * holds at most about fanout nodes, eg. 3 levels for ~4k nodes with fanout 8.
+   */
+  public RendezvousConsistentHash(final HashFunction hashFunction, final int fanout) {
+    if (fanout < 2 || (long) fanout * fanout > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException(String.format("%d is not a valid fanout", fanout));
+    }
+    this.hashFunction = hashFunction;
+    this.membership = new Membership(fanout, 1);
+  }
+
+  /**
+   * Add a node with unit weight.
+   */
+  public boolean addNode(final N node) {
+    return addNode(node, 1.0d);
+  }
+
+  /**
+   * Add a node with the given relative weight, eg. its capacity. Returns false if a node with the
+   * same key is already a member.
+   */
+  public boolean addNode(final N node, final double weight) {
+    if (!(weight > 0.0d) || Double.isInfinite(weight)) {
+      throw new IllegalArgumentException(String.format("%f is not a valid weight", weight));
+    }
+    logger.info("Adding {} with weight {}", node, weight);
+    writeLock.lock();
+    try {
+      final Membership current = membership;
+      final long seed = hashFunction.forNodeKeys().hash(node.getKey());
+      final int cluster = current.clusterOf(seed);
+      if (current.slotOf(cluster, node) >= 0) {
+        return false;
+      }
+      membership = fit(current.with(cluster, node, seed, weight));
+      return true;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Drop the node; only the keys it owned move elsewhere (in flat mode).
+   */
+  public boolean removeNode(final N node) {
+    logger.info("Dropping {}", node);
+    writeLock.lock();
+    try {
+      final Membership current = membership;
+      final int cluster = current.clusterOf(hashFunction.forNodeKeys().hash(node.getKey()));
+      final int slot = current.slotOf(cluster, node);
+      if (slot < 0) {
+        return false;
+      }
+      membership = fit(current.without(cluster, slot));
+      return true;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Choose the node with the highest random weight for this key, or null if there are no nodes.
+   */
+  @SuppressWarnings("unchecked")
+  public N chooseNode(final String key) {
+    final Membership snapshot = membership;
+    if (snapshot.nodeCount == 0) {
+      return null;
+    }
+    final long keyHash = hashFunction.hash(key);
+    int cluster = 0;
+    if (snapshot.levels > 0) {
+      // descend the skeleton from the root, picking the best weighted child at every level
+      final int fanout = snapshot.fanout;
+      int position = 0;
+      for (int level = 0; level < snapshot.levels; level++) {
+        final int firstChild = position * fanout + 1;
+        int best = -1;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (int child = firstChild; child < firstChild + fanout; child++) {
+          final double weight = snapshot.treeWeights[child];
+          if (weight > 0.0d) {
+            final double score = weightedScore(keyHash, snapshot.treeSeeds[child], weight);
+            if (score > bestScore) {
+              bestScore = score;
+              best = child;
+            }
+          }
+        }
+        position = best;
+      }
+      cluster = position - snapshot.firstLeaf;
+    }
+    return (N) snapshot.clusterNodes[cluster][chooseInCluster(snapshot, cluster, keyHash)];
+  }
+
+  public int getNodeCount() {
+    return membership.nodeCount;
+  }
+
+  // current skeleton depth, 0 in flat mode
+  int getLevels() {
+    return membership.levels;
+  }
+
+  // rebuild the skeleton at the depth suiting its node count, if it has drifted too far from it
+  private static Membership fit(final Membership snapshot) {
+    if (snapshot.levels == 0) {
+      return snapshot;
+    }
+    final int levels = levelsFor(snapshot.fanout, snapshot.nodeCount);
+    if (levels <= snapshot.levels && levels >= snapshot.levels - 1) {
+      return snapshot;
+    }
+    logger.info("Resizing skeleton from {} to {} levels for {} nodes", snapshot.levels, levels,
+        snapshot.nodeCount);
+    return snapshot.resized(levels);
+  }
+
+  // the least depth at which leaf clusters hold at most fanout nodes on average
+  private static int levelsFor(final int fanout, final int nodeCount) {
+    int levels = 1;
+    long capacity = (long) fanout * fanout;
+    while (capacity < nodeCount && capacity * fanout <= Integer.MAX_VALUE) {
+      capacity *= fanout;
+      levels++;
+    }
+    return levels;
+  }
+
+  private static int chooseInCluster(final Membership snapshot, final int cluster,
+      final long keyHash) {
+    final long[] seeds = snapshot.clusterSeeds[cluster];
+    final double[] weights = snapshot.clusterWeights[cluster];
+    int best = 0;
+    if (snapshot.uniformWeights) {
+      // equal weights, so the raw mixed value orders nodes exactly like the weighted score would
+      long bestScore = mix(keyHash ^ seeds[0]);
+      for (int iter = 1; iter < seeds.length; iter++) {
+        final long score = mix(keyHash ^ seeds[iter]);
+        if (Long.compareUnsigned(score, bestScore) > 0) {
+          bestScore = score;
+          best = iter;
+        }
+      }
+    } else {
+      double bestScore = weightedScore(keyHash, seeds[0], weights[0]);
+      for (int iter = 1; iter < seeds.length; iter++) {
+        final double score = weightedScore(keyHash, seeds[iter], weights[iter]);
+        if (score > bestScore) {
+          bestScore = score;
+          best = iter;
+        }
+      }
+    }
+    return best;
+  }
+
+  // logarithmic method: -weight / ln(u) with u uniform in (0, 1)
+  private static double weightedScore(final long keyHash, final long seed, final double weight) {
+    final double uniform = ((mix(keyHash ^ seed) >>> 11) + 0.5d) * 0x1.0p-53;
+    return -weight / Math.log(uniform);
+  }
+
+  // murmur3 fmix64 finalizer, a bijection with full avalanche
+  private static long mix(long value) {
+    value ^= value >>> 33;
+    value *= 0xFF51AFD7ED558CCDL;
+    value ^= value >>> 33;
+    value *= 0xC4CEB9FE1A85EC53L;
+    value ^= value >>> 33;
+    return value;
+  }
+
+  /**
+   * Immutable membership laid out per leaf cluster (there's exactly one cluster in flat mode) plus
+   * the aggregate weights of every position in the skeleton, stored heap-style.
+   */
+  private static final class Membership {
+    private final int fanout;
+    private final int levels;
+    private final int firstLeaf;
+    private final long[] treeSeeds;
+    private final double[] treeWeights;
+    private final Node[][] clusterNodes;
+    private final long[][] clusterSeeds;
+    private final double[][] clusterWeights;
+    private final int nodeCount;
+    private final boolean uniformWeights;
+
+    private Membership(final int fanout, final int levels) {
+      this.fanout = fanout;
+      this.levels = levels;
+      int leafCount = 1;
+      int treeSize = 1;
+      for (int level = 0; level < levels; level++) {
+        leafCount *= fanout;
+        treeSize += leafCount;
+      }
+      this.firstLeaf = treeSize - leafCount;
+      this.treeSeeds = new long[treeSize];
+      for (int position = 0; position < treeSize; position++) {
+        treeSeeds[position] = mix(SKELETON_SALT + position);
+      }
+      this.treeWeights = new double[treeSize];
+      this.clusterNodes = new Node[leafCount][0];
+      this.clusterSeeds = new long[leafCount][0];
+      this.clusterWeights = new double[leafCount][0];
+      this.nodeCount = 0;
+      this.uniformWeights = true;
+    }
+
+    private Membership(final Membership source, final double[] treeWeights,
+        final Node[][] clusterNodes, final long[][] clusterSeeds,
+        final double[][] clusterWeights, final int nodeCount) {
+      this.fanout = source.fanout;
+      this.levels = source.levels;
+      this.firstLeaf = source.firstLeaf;
+      this.treeSeeds = source.treeSeeds;
+      this.treeWeights = treeWeights;
+      this.clusterNodes = clusterNodes;
+      this.clusterSeeds = clusterSeeds;
+      this.clusterWeights = clusterWeights;
+      this.nodeCount = nodeCount;
+      boolean uniform = true;
+      double firstWeight = Double.NaN;
+      for (double[] weights : clusterWeights) {
+        for (double weight : weights) {
+          if (Double.isNaN(firstWeight)) {
+            firstWeight = weight;
+          } else if (weight != firstWeight) {
+            uniform = false;
+          }
+        }
+      }
+      this.uniformWeights = uniform;
+    }
+
+    // a node's cluster depends only on its own seed so it never changes with membership
+    private int clusterOf(final long seed) {
+      return (int) Long.remainderUnsigned(mix(seed ^ SKELETON_SALT), clusterNodes.length);
+    }
+
+    private int slotOf(final int cluster, final Node node) {
+      final Node[] nodes = clusterNodes[cluster];
+      for (int slot = 0; slot < nodes.length; slot++) {
+        if (nodes[slot].getKey().equals(node.getKey())) {
+          return slot;
+        }
+      }
+      return -1;
+    }
+
+    private Membership with(final int cluster, final Node node, final long seed,
+        final double weight) {
+      final Node[][] nodes = clusterNodes.clone();
+      final long[][] seeds = clusterSeeds.clone();
+      final double[][] weights = clusterWeights.clone();
+      final int size = nodes[cluster].length;
+      nodes[cluster] = Arrays.copyOf(nodes[cluster], size + 1);
+      nodes[cluster][size] = node;
+      seeds[cluster] = Arrays.copyOf(seeds[cluster], size + 1);
+      seeds[cluster][size] = seed;
+      weights[cluster] = Arrays.copyOf(weights[cluster], size + 1);
+      weights[cluster][size] = weight;
+      return new Membership(this, reweigh(cluster, weights[cluster]), nodes, seeds, weights,
+          nodeCount + 1);
+    }
+
+    private Membership without(final int cluster, final int slot) {
+      final Node[][] nodes = clusterNodes.clone();
+      final long[][] seeds = clusterSeeds.clone();
+      final double[][] weights = clusterWeights.clone();
+      final int size = nodes[cluster].length;
+      final Node[] retainedNodes = new Node[size - 1];
+      final long[] retainedSeeds = new long[size - 1];
+      final double[] retainedWeights = new double[size - 1];
+      for (int iter = 0, out = 0; iter < size; iter++) {
+        if (iter != slot) {
+          retainedNodes[out] = nodes[cluster][iter];
+          retainedSeeds[out] = seeds[cluster][iter];
+          retainedWeights[out++] = weights[cluster][iter];
+        }
+      }
+      nodes[cluster] = retainedNodes;
+      seeds[cluster] = retainedSeeds;
+      weights[cluster] = retainedWeights;
+      return new Membership(this, reweigh(cluster, retainedWeights), nodes, seeds, weights,
+          nodeCount - 1);
+    }
+
+    // the same nodes laid out on a skeleton of the given depth
+    private Membership resized(final int levels) {
+      final Membership empty = new Membership(fanout, levels);
+      final int leafCount = empty.clusterNodes.length;
+      final int[] sizes = new int[leafCount];
+      final int[][] targets = new int[clusterNodes.length][];
+      for (int cluster = 0; cluster < clusterNodes.length; cluster++) {
+        targets[cluster] = new int[clusterSeeds[cluster].length];
+        for (int slot = 0; slot < targets[cluster].length; slot++) {
+          targets[cluster][slot] = empty.clusterOf(clusterSeeds[cluster][slot]);
+          sizes[targets[cluster][slot]]++;
+        }
+      }
+      final Node[][] nodes = new Node[leafCount][];
+      final long[][] seeds = new long[leafCount][];
+      final double[][] weights = new double[leafCount][];
+      for (int cluster = 0; cluster < leafCount; cluster++) {
+        nodes[cluster] = new Node[sizes[cluster]];
+        seeds[cluster] = new long[sizes[cluster]];
+        weights[cluster] = new double[sizes[cluster]];
+        sizes[cluster] = 0;
+      }
+      for (int cluster = 0; cluster < clusterNodes.length; cluster++) {
+        for (int slot = 0; slot < targets[cluster].length; slot++) {
+          final int target = targets[cluster][slot];
+          final int out = sizes[target]++;
+          nodes[target][out] = clusterNodes[cluster][slot];
+          seeds[target][out] = clusterSeeds[cluster][slot];
+          weights[target][out] = clusterWeights[cluster][slot];
+        }
+      }
+      // aggregate bottom-up; children always sit after their parent in the heap layout
+      final double[] treeWeights = new double[empty.treeWeights.length];
+      for (int cluster = 0; cluster < leafCount; cluster++) {
+        for (double weight : weights[cluster]) {
+          treeWeights[empty.firstLeaf + cluster] += weight;
+        }
+      }
+      for (int position = empty.firstLeaf - 1; position >= 0; position--) {
+        final int firstChild = position * fanout + 1;
+        for (int child = firstChild; child < firstChild + fanout; child++) {
+          treeWeights[position] += treeWeights[child];
+        }
+      }
+      return new Membership(empty, treeWeights, nodes, seeds, weights, nodeCount);
+    }
+
+    // recompute the aggregate weight of the leaf cluster and every one of its ancestors from
+    // scratch rather than by deltas, so an emptied subtree is exactly 0 and never gets picked
+    private double[] reweigh(final int cluster, final double[] leafWeights) {
+      final double[] weights = treeWeights.clone();
+      int position = firstLeaf + cluster;
+      double sum = 0.0d;
+      for (double weight : leafWeights) {
+        sum += weight;
+      }
+      weights[position] = sum;
+      while (position > 0) {
+        position = (position - 1) / fanout;
+        sum = 0.0d;
+        final int firstChild = position * fanout + 1;
+        for (int child = firstChild; child < firstChild + fanout; child++) {
+          sum += weights[child];
+        }
+        weights[position] = sum;
+      }
+      return weights;
+    }
+  }
 
 }
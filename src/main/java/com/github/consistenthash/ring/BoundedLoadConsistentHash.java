@@ -0,0 +1,177 @@
+package com.github.consistenthash.ring;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Consistent hashing with bounded loads as described by Mirrokni, Thorup and Zadimoghaddam
+ * (https://arxiv.org/abs/1608.01350), layered on top of a {@link RingConsistentHash}.
+ * 
+ * Guidelines:<br>
+ * 1. Every node may carry at most ceil((1 + epsilon) * average load) units of load<br>
+ * 2. A key whose natural owner is full is forwarded clockwise to the next node with room, so hot
+ * nodes shed load to their ring neighbours instead of melting down<br>
+ * 3. Callers either lease load per key via acquire()/release() or report measured loads via
+ * reportLoad(); smaller epsilon means tighter balance but more forwarded keys<br>
+ * 
+ * Per-node loads are lock-free CAS counters that are only ever incremented below capacity, the
+ * total is a striped LongAdder, so load accounting scales with the ring's lock-free lookups.
+ * Counters of nodes that leave the ring are dropped on the ring's next membership change, together
+ * with their load, so a node that rejoins starts out idle and releasing a lease it held before it
+ * left is a no-op. close() stops listening to the ring.
+ * 
+ * @author gaurav
+ */
+public final class BoundedLoadConsistentHash<N extends Node> implements AutoCloseable {
+  private final RingConsistentHash<N> ring;
+  private final double epsilon;
+  private final ConcurrentMap<String, AtomicLong> loads = new ConcurrentHashMap<>();
+  private final LongAdder totalLoad = new LongAdder();
+  private final MembershipListener<N> pruner = (epoch, moves) -> prune();
+
+  public BoundedLoadConsistentHash(final RingConsistentHash<N> ring, final double epsilon) {
+    if (!(epsilon > 0.0d) || Double.isInfinite(epsilon)) {
+      throw new IllegalArgumentException(String.format("%f is not a valid epsilon", epsilon));
+    }
+    this.ring = ring;
+    this.epsilon = epsilon;
+    ring.addMembershipListener(pruner);
+  }
+
+  @Override
+  public void close() {
+    ring.removeMembershipListener(pruner);
+  }
+
+  /**
+   * Choose the node for the key, honoring capacity, without leasing any load to it. Returns null
+   * if the ring is empty.
+   */
+  public N chooseNode(final String key) {
+    return choose(key, false);
+  }
+
+  /**
+   * Choose the node for the key, honoring capacity, and lease one unit of load on it. Every
+   * successful acquire() must be paired with a release() of the returned node. Returns null if the
+   * ring is empty.
+   */
+  public N acquire(final String key) {
+    return choose(key, true);
+  }
+
+  /**
+   * Release one unit of load previously leased on the node via acquire().
+   */
+  public void release(final N node) {
+    final AtomicLong load = loads.get(node.getKey());
+    if (load != null && load.getAndUpdate(current -> current > 0 ? current - 1 : 0) > 0) {
+      totalLoad.decrement();
+    }
+  }
+
+  /**
+   * Overwrite the node's load with an externally measured value, eg. in-flight requests.
+   */
+  public void reportLoad(final N node, final long load) {
+    if (load < 0) {
+      throw new IllegalArgumentException(String.format("%d is not a valid load", load));
+    }
+    final long previous = counter(node).getAndSet(load);
+    totalLoad.add(load - previous);
+  }
+
+  public long getLoad(final N node) {
+    final AtomicLong load = loads.get(node.getKey());
+    return load == null ? 0L : load.get();
+  }
+
+  public long getTotalLoad() {
+    return totalLoad.sum();
+  }
+
+  /**
+   * Per node capacity were one more unit of load to be placed right now.
+   */
+  public long getCapacity() {
+    return capacity(ring.snapshot().physicalNodeCount());
+  }
+
+  private long capacity(final int physicalNodeCount) {
+    if (physicalNodeCount == 0) {
+      return 0L;
+    }
+    return (long) Math.ceil((1.0d + epsilon) * (totalLoad.sum() + 1) / physicalNodeCount);
+  }
+
+  private N choose(final String key, final boolean lease) {
+    final RingSnapshot<N> snapshot = ring.snapshot();
+    if (snapshot.isEmpty()) {
+      return null;
+    }
+    final long capacity = capacity(snapshot.physicalNodeCount());
+    final int start = snapshot.ceilingIndex(ring.hashFunction().hash(key));
+    final int size = snapshot.size();
+    N previous = null;
+    for (int step = 0; step < size; step++) {
+      final N candidate = snapshot.ownerAt((start + step) % size);
+      if (candidate == previous) {
+        // consecutive points of the same full node, no need to look at its counter again
+        continue;
+      }
+      previous = candidate;
+      if (tryPlace(candidate, capacity, lease)) {
+        return candidate;
+      }
+    }
+    // only reachable when reported loads exceed capacity everywhere; fall back to the owner
+    final N owner = snapshot.ownerAt(start);
+    if (lease) {
+      counter(owner).incrementAndGet();
+      totalLoad.increment();
+    }
+    return owner;
+  }
+
+  private boolean tryPlace(final N node, final long capacity, final boolean lease) {
+    final AtomicLong load = counter(node);
+    while (true) {
+      final long current = load.get();
+      if (current >= capacity) {
+        return false;
+      }
+      if (!lease) {
+        return true;
+      }
+      if (load.compareAndSet(current, current + 1)) {
+        totalLoad.increment();
+        return true;
+      }
+    }
+  }
+
+  // runs on the ring's writer right after it published, so snapshot() is the new membership; a
+  // lookup still racing on the old one may recreate a counter, which the next change drops again
+  private void prune() {
+    final RingSnapshot<N> snapshot = ring.snapshot();
+    for (final String nodeKey : loads.keySet()) {
+      if (!snapshot.hasNode(nodeKey)) {
+        final AtomicLong load = loads.remove(nodeKey);
+        if (load != null) {
+          totalLoad.add(-load.getAndSet(0L));
+        }
+      }
+    }
+  }
+
+  private AtomicLong counter(final N node) {
+    AtomicLong load = loads.get(node.getKey());
+    if (load == null) {
+      load = loads.computeIfAbsent(node.getKey(), key -> new AtomicLong());
+    }
+    return load;
+  }
+
+}
@@ -0,0 +1,160 @@
+package com.github.consistenthash.ring;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded key->owner cache in front of a {@link RingConsistentHash} for skewed (eg. Zipfian)
+ * traffic where a small set of hot keys accounts for most lookups.
+ * 
+ * Guidelines:<br>
+ * 1. Entries are stamped with the ring epoch they were resolved against; any addNode() or
+ * removeNode() bumps the epoch which invalidates every entry at once without a clear<br>
+ * 2. The cache is 4-way set associative with CLOCK style second chances within a set and a
+ * TinyLFU admission filter, so a one-hit-wonder cannot evict a hot key<br>
+ * 3. Reads and writes are lock-free; racing writers may lose an insert, which only costs a miss<br>
+ * 4. Size it with the hit and miss counters, a hit is worth a hash plus a binary search saved<br>
+ * 
+ * @author gaurav
+ */
+public final class CachingConsistentHash<N extends Node> {
+  private static final int WAYS = 4;
+  private final RingConsistentHash<N> ring;
+  private final AtomicReferenceArray<Entry<N>> entries;
+  private final int setMask;
+  private final FrequencySketch sketch;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder rejections = new LongAdder();
+
+  /**
+   * Cache up to roughly capacity keys, rounded up to a power of two.
+   */
+  public CachingConsistentHash(final RingConsistentHash<N> ring, final int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException(String.format("%d is not a valid capacity", capacity));
+    }
+    final int sets = Math.max(1, Integer.highestOneBit(Math.max(1, capacity / WAYS - 1) << 1));
+    this.ring = ring;
+    this.entries = new AtomicReferenceArray<>(sets * WAYS);
+    this.setMask = sets - 1;
+    this.sketch = new FrequencySketch(sets * WAYS);
+  }
+
+  /**
+   * Same contract as RingConsistentHash.chooseNode().
+   */
+  public N chooseNode(final String key) {
+    // pin the snapshot so that the epoch we compare against and the owner we compute agree
+    final RingSnapshot<N> snapshot = ring.snapshot();
+    if (snapshot.isEmpty()) {
+      return null;
+    }
+    final long epoch = snapshot.epoch();
+    final int hash = spread(key.hashCode());
+    final int base = (hash & setMask) * WAYS;
+    for (int way = 0; way < WAYS; way++) {
+      final Entry<N> entry = entries.get(base + way);
+      if (entry != null && entry.epoch == epoch && entry.hash == hash && entry.key.equals(key)) {
+        if (!entry.referenced) {
+          // credit the key once per CLOCK sweep rather than writing shared state on every hit
+          entry.referenced = true;
+          sketch.increment(hash);
+        }
+        hits.increment();
+        return entry.node;
+      }
+    }
+    misses.increment();
+    sketch.increment(hash);
+    final N node = snapshot.ownerOf(ring.hashFunction().hash(key));
+    admit(base, new Entry<>(key, hash, node, epoch));
+    return node;
+  }
+
+  private void admit(final int base, final Entry<N> candidate) {
+    // free or stale slots are taken without further ado
+    for (int way = 0; way < WAYS; way++) {
+      final Entry<N> entry = entries.get(base + way);
+      if (entry == null || entry.epoch != candidate.epoch) {
+        entries.set(base + way, candidate);
+        return;
+      }
+    }
+    // otherwise sweep the set once clearing reference bits, the first unreferenced entry is the
+    // victim and the candidate only gets in if it is the more frequent of the two
+    final int start = candidate.hash >>> 28 & (WAYS - 1);
+    int victim = start;
+    for (int step = 0; step < WAYS; step++) {
+      final int way = (start + step) & (WAYS - 1);
+      final Entry<N> entry = entries.get(base + way);
+      if (!entry.referenced) {
+        victim = way;
+        break;
+      }
+      entry.referenced = false;
+    }
+    final Entry<N> evicted = entries.get(base + victim);
+    if (sketch.frequency(candidate.hash) < sketch.frequency(evicted.hash)) {
+      rejections.increment();
+      return;
+    }
+    if (entries.compareAndSet(base + victim, evicted, candidate)) {
+      evictions.increment();
+    }
+  }
+
+  // spread higher bits downwards, the set index only looks at the lowest bits
+  private static int spread(final int hash) {
+    final int mixed = hash * 0x9E3779B9;
+    return mixed ^ (mixed >>> 16);
+  }
+
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  public double getHitRate() {
+    final long hitCount = hits.sum();
+    final long total = hitCount + misses.sum();
+    return total == 0 ? 0.0d : (double) hitCount / total;
+  }
+
+  public long getEvictionCount() {
+    return evictions.sum();
+  }
+
+  /**
+   * Misses that were not admitted because their key was colder than the would-be victim.
+   */
+  public long getRejectionCount() {
+    return rejections.sum();
+  }
+
+  public int getCapacity() {
+    return entries.length();
+  }
+
+  private static final class Entry<N> {
+    private final String key;
+    private final int hash;
+    private final N node;
+    private final long epoch;
+    // CLOCK reference bit, racy updates are harmless
+    private volatile boolean referenced;
+
+    private Entry(final String key, final int hash, final N node, final long epoch) {
+      this.key = key;
+      this.hash = hash;
+      this.node = node;
+      this.epoch = epoch;
+    }
+  }
+
+}
@@ -0,0 +1,78 @@
+package com.github.consistenthash.ring;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * An approximate, aging frequency counter in the spirit of TinyLFU: a count-min sketch of 4 rows
+ * whose counters saturate at 15 and are all halved once sampleSize increments have been recorded,
+ * so that yesterday's heavy hitters fade away.
+ * 
+ * Safe for any number of concurrent readers without blocking: counters are bumped with CAS so no
+ * increment is lost or pushed past the cap, and exactly one of the threads whose increments cross
+ * sampleSize halves the counters. Increments racing the halving may land on either side of it.
+ * 
+ * @author gaurav
+ */
+final class FrequencySketch {
+  private static final int DEPTH = 4;
+  private static final int MAX_COUNT = 15;
+  private static final long[] SEEDS = {0xC3A5C85C97CB3127L, 0xB492B66FBE98F273L,
+      0x9AE16A3B2F90404FL, 0xCBF29CE484222325L};
+
+  private final AtomicIntegerArray counters;
+  private final int mask;
+  private final int sampleSize;
+  private final AtomicInteger additions = new AtomicInteger();
+
+  /**
+   * Size the sketch for roughly the given number of distinct hot items.
+   */
+  FrequencySketch(final int expectedItems) {
+    final int width = Integer.highestOneBit(Math.max(16, expectedItems - 1) << 1);
+    this.counters = new AtomicIntegerArray(DEPTH * width);
+    this.mask = width - 1;
+    this.sampleSize = 10 * Math.max(16, expectedItems);
+  }
+
+  void increment(final int hash) {
+    boolean incremented = false;
+    for (int row = 0; row < DEPTH; row++) {
+      final int slot = slot(hash, row);
+      int count;
+      while ((count = counters.get(slot)) < MAX_COUNT) {
+        if (counters.compareAndSet(slot, count, count + 1)) {
+          incremented = true;
+          break;
+        }
+      }
+    }
+    // only the increment that lands exactly on sampleSize ages the sketch
+    if (incremented && additions.incrementAndGet() == sampleSize) {
+      age();
+    }
+  }
+
+  int frequency(final int hash) {
+    int frequency = MAX_COUNT;
+    for (int row = 0; row < DEPTH; row++) {
+      frequency = Math.min(frequency, counters.get(slot(hash, row)));
+    }
+    return frequency;
+  }
+
+  private int slot(final int hash, final int row) {
+    long mixed = (hash + SEEDS[row]) * SEEDS[(row + 1) & (DEPTH - 1)];
+    mixed ^= mixed >>> 32;
+    return row * (mask + 1) + ((int) mixed & mask);
+  }
+
+  private void age() {
+    for (int iter = 0; iter < counters.length(); iter++) {
+      counters.updateAndGet(iter, count -> count >>> 1);
+    }
+    // keep the additions recorded while halving, they count towards the next sample
+    additions.addAndGet(-sampleSize);
+  }
+
+}
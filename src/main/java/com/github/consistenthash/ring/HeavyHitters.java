@@ -0,0 +1,104 @@
+package com.github.consistenthash.ring;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Approximate top-k heavy hitter tracking: a count-min sketch estimates every key's frequency in
+ * constant memory and a small candidate table keeps the k keys with the highest estimates.
+ * Estimates only ever over-count, by at most a small fraction of all updates with high
+ * probability.
+ * 
+ * @author gaurav
+ */
+final class HeavyHitters {
+  private static final int DEPTH = 4;
+  private static final long[] SEEDS = {0x9E3779B97F4A7C15L, 0xBF58476D1CE4E5B9L,
+      0x94D049BB133111EBL, 0xD6E8FEB86659FD93L};
+
+  private final AtomicLongArray counters;
+  private final int mask;
+  private final int capacity;
+  private final Map<String, Long> candidates = new ConcurrentHashMap<>();
+  // smallest estimate in a full candidate table, keys below it never take the slow path
+  private volatile long threshold;
+
+  HeavyHitters(final int capacity, final int width) {
+    final int roundedWidth = Integer.highestOneBit(Math.max(16, width - 1) << 1);
+    this.counters = new AtomicLongArray(DEPTH * roundedWidth);
+    this.mask = roundedWidth - 1;
+    this.capacity = capacity;
+  }
+
+  void record(final String key) {
+    final int hash = key.hashCode();
+    long estimate = Long.MAX_VALUE;
+    for (int row = 0; row < DEPTH; row++) {
+      estimate = Math.min(estimate, counters.incrementAndGet(slot(hash, row)));
+    }
+    if (!update(key, estimate) && estimate > threshold) {
+      admit(key, estimate);
+    }
+  }
+
+  // raise the estimate of a tracked key; never re-inserts a key that admit() evicted meanwhile
+  private boolean update(final String key, final long estimate) {
+    return candidates.computeIfPresent(key,
+        (tracked, current) -> Math.max(current, estimate)) != null;
+  }
+
+  private synchronized void admit(final String key, final long estimate) {
+    if (update(key, estimate)) {
+      // admitted by a racing record() while this one waited for the lock
+      return;
+    }
+    if (candidates.size() >= capacity) {
+      String coldest = null;
+      long coldestEstimate = Long.MAX_VALUE;
+      for (Map.Entry<String, Long> candidate : candidates.entrySet()) {
+        if (candidate.getValue() < coldestEstimate) {
+          coldest = candidate.getKey();
+          coldestEstimate = candidate.getValue();
+        }
+      }
+      if (coldest == null || coldestEstimate >= estimate) {
+        threshold = coldestEstimate;
+        return;
+      }
+      candidates.remove(coldest);
+    }
+    candidates.put(key, estimate);
+    if (candidates.size() >= capacity) {
+      long coldestEstimate = Long.MAX_VALUE;
+      for (long candidate : candidates.values()) {
+        coldestEstimate = Math.min(coldestEstimate, candidate);
+      }
+      threshold = coldestEstimate;
+    }
+  }
+
+  /**
+   * Tracked keys and their estimated counts, hottest first.
+   */
+  List<Map.Entry<String, Long>> top() {
+    final List<Map.Entry<String, Long>> top = new ArrayList<>();
+    for (Map.Entry<String, Long> candidate : candidates.entrySet()) {
+      top.add(new AbstractMap.SimpleImmutableEntry<>(candidate.getKey(),
+          candidate.getValue()));
+    }
+    top.sort(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()));
+    return top;
+  }
+
+  private int slot(final int hash, final int row) {
+    long mixed = (hash ^ SEEDS[row]) * SEEDS[(row + 1) & (DEPTH - 1)];
+    mixed ^= mixed >>> 29;
+    return row * (mask + 1) + ((int) mixed & mask);
+  }
+
+}
@@ -0,0 +1,76 @@
+package com.github.consistenthash.ring;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size log-linear histogram of nanosecond latencies in the style of HdrHistogram: values
+ * are bucketed by their power of two and then linearly by the next 3 bits, which bounds the
+ * relative error of any reported percentile to 12.5% across the whole long range in 488 buckets.
+ * 
+ * @author gaurav
+ */
+final class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = (64 - SUB_BUCKET_BITS) << SUB_BUCKET_BITS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+  void record(final long value) {
+    counts.incrementAndGet(bucketOf(Math.max(0L, value)));
+  }
+
+  static int bucketOf(final long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    final int exponent = 63 - Long.numberOfLeadingZeros(value);
+    final int mantissa = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) | mantissa;
+  }
+
+  // smallest value that lands in the given bucket
+  static long lowerBound(final int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    final int exponent = (bucket >>> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+    final long mantissa = bucket & (SUB_BUCKETS - 1);
+    return (SUB_BUCKETS | mantissa) << (exponent - SUB_BUCKET_BITS);
+  }
+
+  /**
+   * Point-in-time copy of the bucket counts.
+   */
+  long[] counts() {
+    final long[] copy = new long[BUCKETS];
+    for (int bucket = 0; bucket < BUCKETS; bucket++) {
+      copy[bucket] = counts.get(bucket);
+    }
+    return copy;
+  }
+
+  /**
+   * Upper bound of the bucket holding the given percentile (0 < percentile <= 100) of the counts,
+   * 0 if nothing has been recorded.
+   */
+  static long percentile(final long[] counts, final double percentile) {
+    long total = 0;
+    for (long count : counts) {
+      total += count;
+    }
+    if (total == 0) {
+      return 0L;
+    }
+    final long rank = Math.max(1L, (long) Math.ceil(total * percentile / 100.0d));
+    long seen = 0;
+    for (int bucket = 0; bucket < counts.length; bucket++) {
+      seen += counts[bucket];
+      if (seen >= rank) {
+        return bucket + 1 < counts.length ? lowerBound(bucket + 1) - 1 : Long.MAX_VALUE;
+      }
+    }
+    return Long.MAX_VALUE;
+  }
+
+}
@@ -0,0 +1,129 @@
+package com.github.consistenthash.ring;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.Function;
+
+import com.github.consistenthash.hasher.HashFunction;
+
+/**
+ * A read-only ring served straight off a memory-mapped ring file written by
+ * RingConsistentHash.save(). Opening one costs a checksum pass over the file plus one resolver call
+ * per physical node; lookups binary search the mapped positions and never copy the ring onto the
+ * heap, so many processes can share the one copy held by the page cache.
+ *
+ * Use RingConsistentHash.load() instead when the ring needs to change after startup.
+ *
+ * @author gaurav
+ */
+public final class MappedRing<N extends Node> {
+  private final RingFile file;
+  private final HashFunction hashFunction;
+  // physical nodes by ordinal in the file
+  private final N[] nodes;
+
+  private MappedRing(final RingFile file, final HashFunction hashFunction, final N[] nodes) {
+    this.file = file;
+    this.hashFunction = hashFunction;
+    this.nodes = nodes;
+  }
+
+  /**
+   * Map the ring file at path. The resolver turns every physical node key in the file back into a
+   * node; hashFunction must hash exactly like the one the file was written with.
+   */
+  @SuppressWarnings("unchecked")
+  public static <N extends Node> MappedRing<N> open(final Path path,
+      final HashFunction hashFunction, final Function<String, N> resolver) throws IOException {
+    final RingFile file = RingFile.map(path);
+    if (file.fingerprint() != RingFile.fingerprint(hashFunction)) {
+      throw new IllegalArgumentException(String.format(
+          "%s was written with %s which does not hash like %s", path, file.hashFunctionName(),
+          hashFunction.getClass().getName()));
+    }
+    final String[] nodeKeys = file.nodeKeys();
+    final N[] nodes = (N[]) new Node[nodeKeys.length];
+    for (int ordinal = 0; ordinal < nodeKeys.length; ordinal++) {
+      nodes[ordinal] = resolver.apply(nodeKeys[ordinal]);
+      if (nodes[ordinal] == null || !nodeKeys[ordinal].equals(nodes[ordinal].getKey())) {
+        throw new IllegalArgumentException(
+            String.format("Failed to resolve node with key %s", nodeKeys[ordinal]));
+      }
+    }
+    for (int iter = 0; iter < file.pointCount(); iter++) {
+      final int ordinal = file.ordinalAt(iter);
+      if (ordinal < 0 || ordinal >= nodes.length) {
+        throw new IOException(String.format("%s is corrupt, bad node ordinal %d", path, ordinal));
+      }
+    }
+    return new MappedRing<>(file, hashFunction, nodes);
+  }
+
+  /**
+   * Same placement as RingConsistentHash.chooseNode() on the ring that was saved.
+   */
+  public N chooseNode(final String key) {
+    if (file.pointCount() == 0) {
+      return null;
+    }
+    return nodes[file.ordinalAt(file.ceilingIndex(hashFunction.hash(key)))];
+  }
+
+  public int getTotalVirtualNodeCount() {
+    return file.pointCount();
+  }
+
+  public int getTotalPhysicalNodeCount() {
+    return nodes.length;
+  }
+
+  /**
+   * Epoch of the ring at the time it was saved.
+   */
+  public long getEpoch() {
+    return file.epoch();
+  }
+
+  /**
+   * Copy the mapped ring onto the heap as a regular snapshot with the given epoch.
+   */
+  RingSnapshot<N> toSnapshot(final long epoch) {
+    final int size = file.pointCount();
+    final long[] positions = file.positions();
+    final int[] ordinals = file.ordinals();
+    final int[] virtualNodeIndices = file.virtualNodeIndices();
+    final int[] counts = new int[nodes.length];
+    for (int iter = 0; iter < size; iter++) {
+      counts[ordinals[iter]]++;
+    }
+    // rebuild the per-node index in virtual node index order
+    final long[][] index = new long[nodes.length][];
+    for (int ordinal = 0; ordinal < nodes.length; ordinal++) {
+      index[ordinal] = new long[counts[ordinal]];
+    }
+    for (int iter = 0; iter < size; iter++) {
+      final long[] target = index[ordinals[iter]];
+      if (virtualNodeIndices[iter] < 0 || virtualNodeIndices[iter] >= target.length) {
+        throw new IllegalStateException(String.format(
+            "virtual node index %d out of range for %s", virtualNodeIndices[iter],
+            nodes[ordinals[iter]]));
+      }
+      target[virtualNodeIndices[iter]] = positions[iter];
+    }
+    return RingSnapshot.restore(positions, ordinals, nodes, index, epoch);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("MappedRing [virtualNodes:");
+    builder.append(file.pointCount());
+    builder.append(", physicalNodes:");
+    builder.append(nodes.length);
+    builder.append(", epoch:");
+    builder.append(file.epoch());
+    builder.append("]");
+    return builder.toString();
+  }
+
+}
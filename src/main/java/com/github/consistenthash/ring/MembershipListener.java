@@ -0,0 +1,20 @@
+package com.github.consistenthash.ring;
+
+import java.util.List;
+
+/**
+ * Notified of the hash ranges that changed owner whenever a ring's membership changes, so that a
+ * data mover can stream just those ranges instead of rescanning every key.
+ *
+ * @author gaurav
+ */
+@FunctionalInterface
+public interface MembershipListener<N extends Node> {
+  /**
+   * Called once per published ring, in epoch order, on the writer's thread while it still holds
+   * the ring's write lock: hand heavy lifting off to another thread. moves is unmodifiable, sorted
+   * by endHash apart from a wrapping range which comes first, and never empty.
+   */
+  void onRangesMoved(final long epoch, final List<RangeMove<N>> moves);
+
+}
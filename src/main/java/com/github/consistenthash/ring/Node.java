@@ -1,5 +1,8 @@
 package com.github.consistenthash.ring;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Basic node skeleton to represent potentially physical or virtual nodes that will live as points
  * on the ring.
@@ -10,6 +13,11 @@ public interface Node {
   // return the key which will be used for hash mapping
   String getKey();
 
+  // failure domains this node lives in, outermost first, eg. [region, zone, rack]; none by default
+  default List<String> getFailureDomains() {
+    return Collections.emptyList();
+  }
+
   default KeyProvider keyProvider() {
     return new RandomKeyProvider();
   }
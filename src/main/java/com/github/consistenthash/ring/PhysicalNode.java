@@ -1,5 +1,9 @@
 package com.github.consistenthash.ring;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Allow for representation of a physical server/node on a ring.
  * 
@@ -7,17 +11,38 @@ package com.github.consistenthash.ring;
  */
 public final class PhysicalNode implements Node {
   private final String key = keyProvider().key();
+  private final List<String> failureDomains;
+
+  public PhysicalNode() {
+    this.failureDomains = Collections.emptyList();
+  }
+
+  /**
+   * A node living in the given failure domains, outermost first, eg. region, zone, rack.
+   */
+  public PhysicalNode(final String... failureDomains) {
+    this.failureDomains = Collections.unmodifiableList(Arrays.asList(failureDomains.clone()));
+  }
 
   @Override
   public String getKey() {
     return key;
   }
 
+  @Override
+  public List<String> getFailureDomains() {
+    return failureDomains;
+  }
+
   @Override
   public String toString() {
     StringBuilder builder = new StringBuilder();
     builder.append("PhysicalNode [key:");
     builder.append(key);
+    if (!failureDomains.isEmpty()) {
+      builder.append(", failureDomains:");
+      builder.append(failureDomains);
+    }
     builder.append("]");
     return builder.toString();
   }
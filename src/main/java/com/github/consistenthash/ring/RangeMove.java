@@ -0,0 +1,75 @@
+package com.github.consistenthash.ring;
+
+/**
+ * A hash range that changed owner in a membership change: every key hashing into (startHash,
+ * endHash] moved from oldOwner to newOwner. Ranges are clockwise, so one with startHash >= endHash
+ * wraps around past Long.MAX_VALUE, and one with startHash == endHash covers the whole ring. Either
+ * owner is null when the ring was, or became, empty.
+ *
+ * @author gaurav
+ */
+public final class RangeMove<N extends Node> {
+  private final long startHash;
+  private final long endHash;
+  private final N oldOwner;
+  private final N newOwner;
+
+  RangeMove(final long startHash, final long endHash, final N oldOwner, final N newOwner) {
+    this.startHash = startHash;
+    this.endHash = endHash;
+    this.oldOwner = oldOwner;
+    this.newOwner = newOwner;
+  }
+
+  /**
+   * Exclusive start of the range.
+   */
+  public long getStartHash() {
+    return startHash;
+  }
+
+  /**
+   * Inclusive end of the range.
+   */
+  public long getEndHash() {
+    return endHash;
+  }
+
+  public N getOldOwner() {
+    return oldOwner;
+  }
+
+  public N getNewOwner() {
+    return newOwner;
+  }
+
+  public boolean isWrapping() {
+    return startHash >= endHash;
+  }
+
+  /**
+   * True if a key with the given hash falls into this range.
+   */
+  public boolean contains(final long hash) {
+    if (startHash < endHash) {
+      return hash > startHash && hash <= endHash;
+    }
+    return startHash == endHash || hash > startHash || hash <= endHash;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("RangeMove [startHash:");
+    builder.append(startHash);
+    builder.append(", endHash:");
+    builder.append(endHash);
+    builder.append(", oldOwner:");
+    builder.append(oldOwner);
+    builder.append(", newOwner:");
+    builder.append(newOwner);
+    builder.append("]");
+    return builder.toString();
+  }
+
+}
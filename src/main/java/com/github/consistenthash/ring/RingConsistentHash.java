@@ -1,45 +1,79 @@
 package com.github.consistenthash.ring;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.SortedMap;
-import java.util.TreeMap;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import com.github.consistenthash.hasher.HashFunction;
+import com.github.consistenthash.hasher.XXHash64HashFunction;
 
 /**
  * A ring based consistent hash.
  * 
  * Guidelines:<br>
  * 1. Replicate nodes as virtual nodes to improve key distribution<br>
- * 2. Consider using a red-black tree<br>
+ * 2. Keep the ring in sorted primitive arrays published as immutable snapshots<br>
  * 3. Don't worry about read misses, just re-hydrate from client->server<br>
  * 4. Keep application on client, don't apply to storage stratum<br>
  * 5. Tunables:<br>
- * a) virtual node count (can also vary by node size to change node weight in the ring)<br>
+ * a) virtual node count (can also vary by node size to change node weight in the ring, see
+ * setWeight())<br>
  * b) choice of hashing algorithm (fast and perfect, as much as possible)<br>
  * 
- * There exist many open questions one of which is efficient hot node handling.
+ * There exist many open questions; for hot node handling, see {@link BoundedLoadConsistentHash}.
  * 
  * @author gaurav
  */
 public final class RingConsistentHash<N extends Node> {
   private static final Logger logger =
       LogManager.getLogger(RingConsistentHash.class.getSimpleName());
-  private final SortedMap<Long, VirtualNode<N>> ring = new TreeMap<Long, VirtualNode<N>>();
+  // batches larger than this are split across the fork-join pool when one is provided
+  private static final int PARALLEL_BATCH_THRESHOLD = 8_192;
+  // virtual nodes per unit of weight for nodes sized via setWeight()
+  public static final int DEFAULT_VIRTUAL_NODES_PER_WEIGHT = 100;
   private final HashFunction hashFunction;
+  // virtual node keys are hashed whole even when lookup keys are not, see forNodeKeys()
+  private final HashFunction nodeHashFunction;
+  private final int virtualNodesPerWeight;
 
-  // somewhat pessimistic attempt at locking; we can do better with some more time investment
-  private final ReentrantReadWriteLock superLock = new ReentrantReadWriteLock(true);
-  private final WriteLock writeLock = superLock.writeLock();
-  private final ReadLock readLock = superLock.readLock();
+  // readers only ever dereference the currently published immutable snapshot and never block;
+  // writers copy-on-write a new snapshot and swap it in
+  private volatile RingSnapshot<N> ring = RingSnapshot.empty();
+  // only touched by writers, 0 until setPreferenceListWidth() opts in
+  private int preferenceListWidth;
+
+  // writers serialize among themselves on this lock, readers never touch it
+  private final ReentrantLock writeLock = new ReentrantLock(true);
+
+  // null unless enableMetrics() was called, so that lookups pay a single null check by default
+  private volatile RingMetrics<N> metrics;
+
+  // told about the ranges that move on every membership change, diffing is skipped when empty
+  private final List<MembershipListener<N>> listeners = new CopyOnWriteArrayList<>();
+
+  /**
+   * Seed the ring with xxHash64, a fast non-cryptographic hash function that mixes well.
+   */
+  public RingConsistentHash() {
+    this(new XXHash64HashFunction());
+  }
 
   /**
    * Seed the ring with a "good" hash function. The definition of what's good depends on what you
@@ -47,7 +81,21 @@ public final class RingConsistentHash<N extends Node> {
    * (blazing fast), pure hash function.
    */
   public RingConsistentHash(final HashFunction hashFunction) {
+    this(hashFunction, DEFAULT_VIRTUAL_NODES_PER_WEIGHT);
+  }
+
+  /**
+   * Seed the ring with the given hash function, sizing nodes added via setWeight() at
+   * virtualNodesPerWeight virtual nodes per unit of weight.
+   */
+  public RingConsistentHash(final HashFunction hashFunction, final int virtualNodesPerWeight) {
+    if (virtualNodesPerWeight < 1) {
+      throw new IllegalArgumentException(String.format(
+          "%d is not a valid virtual node count per weight", virtualNodesPerWeight));
+    }
     this.hashFunction = hashFunction;
+    this.nodeHashFunction = hashFunction.forNodeKeys();
+    this.virtualNodesPerWeight = virtualNodesPerWeight;
   }
 
   /**
@@ -57,31 +105,233 @@ public final class RingConsistentHash<N extends Node> {
    * Typically, in order to lower the standard deviation from mean of the spread of keys around the
    * ring, pick a good hash function (fast, does not easily collide, mixes well) plus a sufficiently
    * large virtualNodeCount value.
+   * 
+   * Concurrent writers queue up behind each other; readers continue to see the previous ring
+   * until the new one is published in a single step.
    */
   public boolean addNode(final N physicalNode, final int virtualNodeCount) {
-    boolean added = false;
     if (virtualNodeCount < 0) {
       throw new IllegalArgumentException(
           String.format("%d is not a valid virtual node count", virtualNodeCount));
     }
-    logger.info(
-        String.format("Hydrating %s with virtual node count %d", physicalNode, virtualNodeCount));
-    int existingVirtualNodeCount = getVirtualNodeCount(physicalNode);
-    if (writeLock.tryLock()) {
-      try {
-        for (int iter = 0; iter < virtualNodeCount; iter++) {
-          final VirtualNode<N> virtualNode =
-              new VirtualNode<N>(physicalNode, iter + existingVirtualNodeCount);
-          long hash = hashFunction.hash(virtualNode.getKey());
-          ring.put(hash, virtualNode);
-          logger.debug(String.format("  Inserted %s at hash %d", virtualNode, hash));
-          added = true; // overwrite away
+    logger.info("Hydrating {} with virtual node count {}", physicalNode, virtualNodeCount);
+    lockForWrite();
+    try {
+      final RingSnapshot<N> current = ring;
+      final int existingVirtualNodeCount = current.virtualNodeCount(physicalNode);
+      publish(current.add(physicalNode,
+          virtualNodePositions(physicalNode, existingVirtualNodeCount, virtualNodeCount)));
+    } finally {
+      writeLock.unlock();
+    }
+    return virtualNodeCount > 0;
+  }
+
+  /**
+   * Add every one of the physical nodes with virtualNodeCount virtual nodes each, same as calling
+   * addNode() for each of them but published as a single change, see applyMembership().
+   */
+  public boolean addNodes(final Collection<N> physicalNodes, final int virtualNodeCount) {
+    if (virtualNodeCount < 0) {
+      throw new IllegalArgumentException(
+          String.format("%d is not a valid virtual node count", virtualNodeCount));
+    }
+    final List<N> changed = new ArrayList<>(physicalNodes);
+    final int[] counts = new int[changed.size()];
+    Arrays.fill(counts, virtualNodeCount);
+    return change(changed, counts, true, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Set the virtual node count of every physical node in the map at once, adding nodes not on the
+   * ring yet and removing those set to 0; nodes not in the map are left alone. Each node ends up
+   * exactly as if setVirtualNodeCount() had been called for it, but virtual node keys are hashed in
+   * parallel on the common fork-join pool, the new ring is built in a single merge pass and all of
+   * it is published in one step, so readers never see a half applied topology. Returns true if the
+   * ring changed.
+   */
+  public boolean applyMembership(final Map<N, Integer> virtualNodeCounts) {
+    return applyMembership(virtualNodeCounts, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Same as applyMembership(Map) but hashes virtual node keys on the given pool.
+   */
+  public boolean applyMembership(final Map<N, Integer> virtualNodeCounts,
+      final ForkJoinPool pool) {
+    final List<N> changed = new ArrayList<>(virtualNodeCounts.size());
+    final int[] counts = new int[virtualNodeCounts.size()];
+    for (final Map.Entry<N, Integer> entry : virtualNodeCounts.entrySet()) {
+      final Integer virtualNodeCount = entry.getValue();
+      if (virtualNodeCount == null || virtualNodeCount < 0) {
+        throw new IllegalArgumentException(String.format(
+            "%s is not a valid virtual node count for %s", virtualNodeCount, entry.getKey()));
+      }
+      counts[changed.size()] = virtualNodeCount;
+      changed.add(entry.getKey());
+    }
+    return change(changed, counts, false, pool);
+  }
+
+  // set, or with relative grow by, counts[i] virtual nodes of every changed node in one publish
+  private boolean change(final List<N> changed, final int[] counts, final boolean relative,
+      final ForkJoinPool pool) {
+    final Set<String> keys = new HashSet<>();
+    for (final N physicalNode : changed) {
+      if (!keys.add(physicalNode.getKey())) {
+        throw new IllegalArgumentException(
+            String.format("%s is listed more than once", physicalNode));
+      }
+    }
+    logger.info("Applying membership change to {} physical nodes", changed.size());
+    lockForWrite();
+    try {
+      final RingSnapshot<N> current = ring;
+      final int[] keep = new int[counts.length];
+      final long[][] added = new long[counts.length][];
+      final List<GrowTask<N>> growths = new ArrayList<>();
+      for (int iter = 0; iter < counts.length; iter++) {
+        final int existing = current.virtualNodeCount(changed.get(iter));
+        final long target = relative ? (long) existing + counts[iter] : counts[iter];
+        if (target > Integer.MAX_VALUE) {
+          throw new IllegalArgumentException(
+              String.format("%d is too many virtual nodes for %s", target, changed.get(iter)));
         }
-      } finally {
-        writeLock.unlock();
+        keep[iter] = (int) Math.min(existing, target);
+        added[iter] = new long[(int) target - keep[iter]];
+        for (int from = 0; from < added[iter].length; from += PARALLEL_BATCH_THRESHOLD) {
+          growths.add(new GrowTask<>(this, changed.get(iter), existing + from, added[iter], from,
+              Math.min(added[iter].length - from, PARALLEL_BATCH_THRESHOLD)));
+        }
+      }
+      if (growths.size() == 1) {
+        growths.get(0).compute();
+      } else if (!growths.isEmpty()) {
+        pool.invoke(new RecursiveAction() {
+          private static final long serialVersionUID = 1L;
+
+          @Override
+          protected void compute() {
+            invokeAll(growths);
+          }
+        });
+      }
+      final RingSnapshot<N> next = current.apply(changed, keep, added);
+      if (next == current) {
+        return false;
+      }
+      publish(next);
+      logger.info("Published {}", next);
+    } finally {
+      writeLock.unlock();
+    }
+    return true;
+  }
+
+  // hashes count virtual nodes of one physical node into a slice of its additions
+  private static final class GrowTask<N extends Node> extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final transient RingConsistentHash<N> consistentHash;
+    private final transient N physicalNode;
+    private final int from;
+    private final long[] positions;
+    private final int offset;
+    private final int count;
+
+    private GrowTask(final RingConsistentHash<N> consistentHash, final N physicalNode,
+        final int from, final long[] positions, final int offset, final int count) {
+      this.consistentHash = consistentHash;
+      this.physicalNode = physicalNode;
+      this.from = from;
+      this.positions = positions;
+      this.offset = offset;
+      this.count = count;
+    }
+
+    @Override
+    protected void compute() {
+      consistentHash.virtualNodePositions(physicalNode, from, count, positions, offset);
+    }
+  }
+
+  // positions of count virtual nodes of physicalNode starting at virtual node index from
+  private long[] virtualNodePositions(final N physicalNode, final int from, final int count) {
+    final long[] positions = new long[count];
+    virtualNodePositions(physicalNode, from, count, positions, 0);
+    return positions;
+  }
+
+  private void virtualNodePositions(final N physicalNode, final int from, final int count,
+      final long[] positions, final int offset) {
+    // virtual node keys are physicalKey_index, hashed straight out of one reusable builder
+    final StringBuilder virtualNodeKey =
+        new StringBuilder(physicalNode.getKey()).append(VirtualNode.SEPARATOR);
+    final int prefixLength = virtualNodeKey.length();
+    for (int iter = 0; iter < count; iter++) {
+      virtualNodeKey.setLength(prefixLength);
+      virtualNodeKey.append(from + iter);
+      positions[offset + iter] = nodeHashFunction.hash(virtualNodeKey);
+      if (logger.isDebugEnabled()) {
+        logger.debug("  Inserted {} at hash {}", virtualNodeKey, positions[offset + iter]);
       }
     }
-    return added;
+  }
+
+  /**
+   * Set the weight of a physical node, eg. its capacity, adding the node if it is not on the ring
+   * yet and dropping it for a weight of 0. The node gets round(weight * virtualNodesPerWeight)
+   * virtual nodes, see setVirtualNodeCount() for how few keys move on a change. Returns true if the
+   * ring changed.
+   */
+  public boolean setWeight(final N physicalNode, final double weight) {
+    if (!(weight >= 0.0d) || Double.isInfinite(weight)) {
+      throw new IllegalArgumentException(String.format("%f is not a valid weight", weight));
+    }
+    final long virtualNodeCount = Math.round(weight * virtualNodesPerWeight);
+    if (virtualNodeCount > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException(String.format("%f is too large a weight", weight));
+    }
+    return setVirtualNodeCount(physicalNode, (int) virtualNodeCount);
+  }
+
+  /**
+   * Weight of the physical node as per setWeight(), 0 if it is not on the ring.
+   */
+  public double getWeight(final N physicalNode) {
+    return (double) ring.virtualNodeCount(physicalNode) / virtualNodesPerWeight;
+  }
+
+  /**
+   * Grow or shrink the physical node to exactly virtualNodeCount virtual nodes. Growing appends the
+   * next virtual node indices and shrinking drops the highest ones, so a node's points are always
+   * its first n virtual nodes: only keys on the added or dropped points move, in proportion to the
+   * change, and going back to an earlier count restores the earlier placement exactly. Returns true
+   * if the ring changed.
+   */
+  public boolean setVirtualNodeCount(final N physicalNode, final int virtualNodeCount) {
+    if (virtualNodeCount < 0) {
+      throw new IllegalArgumentException(
+          String.format("%d is not a valid virtual node count", virtualNodeCount));
+    }
+    lockForWrite();
+    try {
+      final RingSnapshot<N> current = ring;
+      final int existingVirtualNodeCount = current.virtualNodeCount(physicalNode);
+      if (existingVirtualNodeCount == virtualNodeCount) {
+        return false;
+      }
+      logger.info("Resizing {} from {} to {} virtual nodes", physicalNode,
+          existingVirtualNodeCount, virtualNodeCount);
+      if (virtualNodeCount > existingVirtualNodeCount) {
+        publish(current.add(physicalNode, virtualNodePositions(physicalNode,
+            existingVirtualNodeCount, virtualNodeCount - existingVirtualNodeCount)));
+      } else {
+        publish(current.truncate(physicalNode, virtualNodeCount));
+      }
+    } finally {
+      writeLock.unlock();
+    }
+    return true;
   }
 
   /**
@@ -94,27 +344,48 @@ public final class RingConsistentHash<N extends Node> {
    */
   public boolean removeNode(final N physicalNode) {
     boolean removed = false;
-    logger.info(String.format("Dropping %s and all its virtual nodes", physicalNode));
-    // this is silly, we can easily do better
-    if (writeLock.tryLock()) {
-      try {
-        Iterator<Long> iterator = ring.keySet().iterator();
-        while (iterator.hasNext()) {
-          final Long key = iterator.next();
-          final VirtualNode<N> virtualNode = ring.get(key);
-          if (virtualNode.isVirtualNodeOf(physicalNode)) {
-            iterator.remove();
-            logger.debug(String.format("  Removed %s", virtualNode));
-            removed = true; // overwrite away
-          }
-        }
-      } finally {
-        writeLock.unlock();
+    logger.info("Dropping {} and all its virtual nodes", physicalNode);
+    lockForWrite();
+    try {
+      final RingSnapshot<N> current = ring;
+      final RingSnapshot<N> next = current.remove(physicalNode);
+      if (next != current) {
+        publish(next);
+        removed = true;
       }
+    } finally {
+      writeLock.unlock();
     }
     return removed;
   }
 
+  /**
+   * Write the current ring to path in the compact binary ring file format: positions plus a table
+   * of physical node keys, versioned and checksummed. Other processes can then map it in via
+   * load() or {@link MappedRing} without hashing any virtual node keys.
+   */
+  public void save(final Path path) throws IOException {
+    final RingSnapshot<N> snapshot = ring;
+    RingFile.write(snapshot, hashFunction, path);
+    logger.info("Saved {} to {}", snapshot, path);
+  }
+
+  /**
+   * Replace the whole ring with the one saved at path, resolving its physical node keys to nodes
+   * via resolver. The file's hash function must hash like this ring's. The loaded ring is published
+   * in a single step with an epoch past both the current one and the saved one.
+   */
+  public void load(final Path path, final Function<String, N> resolver) throws IOException {
+    final MappedRing<N> mapped = MappedRing.open(path, hashFunction, resolver);
+    lockForWrite();
+    try {
+      publish(mapped.toSnapshot(Math.max(ring.epoch() + 1, mapped.getEpoch())));
+    } finally {
+      writeLock.unlock();
+    }
+    logger.info("Loaded {} from {}", mapped, path);
+  }
+
   /**
    * Choose a node in the ring to store the value keyed by the provided key. Note that this, along
    * with other functions for ring based consistent hashing can purely be computed on client side of
@@ -123,65 +394,388 @@ public final class RingConsistentHash<N extends Node> {
    * The idea is to pick a node on the client side and then independently deal with the storage of
    * the key on that server. Storage is a concern completely disjoint with the server selection
    * algorithm.
+   * 
+   * This is lock-free and wait-free: it reads whichever ring snapshot is current and only returns
+   * null when the ring has no nodes at all.
    */
   public N chooseNode(final String key) {
-    N node = null;
-    if (readLock.tryLock()) {
-      try {
-        if (ring.isEmpty()) {
-          return node;
-        }
-        // a. compute incoming key's hash
-        final Long hash = hashFunction.hash(key);
+    final RingMetrics<N> observer = metrics;
+    if (observer != null) {
+      return chooseNodeObserved(key, observer);
+    }
+    // a. pin the current snapshot, membership changes publish a new one rather than mutating it
+    final RingSnapshot<N> snapshot = ring;
+    if (snapshot.isEmpty()) {
+      return null;
+    }
+    // b. compute incoming key's hash
+    final long hash = hashFunction.hash(key);
 
-        // b. look for all virtual nodes with hashValue >= hash
-        final SortedMap<Long, VirtualNode<N>> tailMap = ring.tailMap(hash);
+    // c. binary search for the first virtual node with position >= hash, wrapping around to the
+    // lowest position on the ring; then lookup virtualNode->physicalNode
+    return snapshot.ownerOf(hash);
+  }
 
-        // c. if not empty, select the hash for the first virtual node. Else, for wrap-around case,
-        // pick the first hash (lowest hash value) from the ring
-        final Long nodeHash = !tailMap.isEmpty() ? tailMap.firstKey() : ring.firstKey();
+  private N chooseNodeObserved(final String key, final RingMetrics<N> observer) {
+    final long start = observer.startLookup();
+    final N node = ownerOf(hashFunction.hash(key));
+    observer.endLookup(key, node, start);
+    return node;
+  }
 
-        // d. lookup hash->virtualNode->physicalNode
-        node = ring.get(nodeHash).getPhysicalNode();
-      } finally {
-        readLock.unlock();
-      }
+  /**
+   * Same as chooseNode(String) for the key's UTF-8 encoding, bytes [offset, offset + length) of
+   * the given array, without decoding it into a String first.
+   */
+  public N chooseNode(final byte[] key, final int offset, final int length) {
+    final RingMetrics<N> observer = metrics;
+    final long start = observer == null ? 0L : observer.startLookup();
+    final N node = ownerOf(hashFunction.hash(key, offset, length));
+    if (observer != null) {
+      observer.endLookup(null, node, start);
     }
     return node;
   }
 
   /**
-   * "Compute" total number of virtual nodes in the ring.
+   * Same as chooseNode(String) for the key's UTF-8 encoding, the remaining bytes of the given heap
+   * or direct buffer. The bytes are hashed in place; the buffer's position and limit are left
+   * untouched.
    */
-  public int getTotalVirtualNodeCount() {
-    int totalVirtualNodeCount = Integer.MIN_VALUE;
-    if (readLock.tryLock()) {
+  public N chooseNode(final ByteBuffer key) {
+    final RingMetrics<N> observer = metrics;
+    final long start = observer == null ? 0L : observer.startLookup();
+    final N node = ownerOf(hashFunction.hash(key));
+    if (observer != null) {
+      observer.endLookup(null, node, start);
+    }
+    return node;
+  }
+
+  /**
+   * Same as chooseNode(String.valueOf(key)) for numeric ids, without allocating the String.
+   */
+  public N chooseNode(final long key) {
+    final RingMetrics<N> observer = metrics;
+    final long start = observer == null ? 0L : observer.startLookup();
+    final N node = ownerOf(hashFunction.hashDecimal(key));
+    if (observer != null) {
+      observer.endLookup(null, node, start);
+    }
+    return node;
+  }
+
+  /**
+   * Choose the node for a pre-hashed key. The hash must come from the same hash function that this
+   * ring was seeded with, in which case this agrees with every other chooseNode() flavor.
+   */
+  public N chooseNodeByHash(final long keyHash) {
+    final RingMetrics<N> observer = metrics;
+    final long start = observer == null ? 0L : observer.startLookup();
+    final N node = ownerOf(keyHash);
+    if (observer != null) {
+      observer.endLookup(null, node, start);
+    }
+    return node;
+  }
+
+  private N ownerOf(final long hash) {
+    final RingSnapshot<N> snapshot = ring;
+    return snapshot.isEmpty() ? null : snapshot.ownerOf(hash);
+  }
+
+  // swap in the next snapshot, caller holds the write lock
+  private void publish(final RingSnapshot<N> change) {
+    final RingSnapshot<N> previous = ring;
+    // readers of the new ring find its preference lists ready, they never build them
+    final RingSnapshot<N> next = change.withPreferences(preferenceListWidth);
+    ring = next;
+    final RingMetrics<N> observer = metrics;
+    if (observer != null) {
+      observer.membershipChanged(next);
+    }
+    if (listeners.isEmpty() || next == previous) {
+      return;
+    }
+    final List<RangeMove<N>> moves = RingDiff.between(previous, next);
+    if (moves.isEmpty()) {
+      return;
+    }
+    final List<RangeMove<N>> published = Collections.unmodifiableList(moves);
+    for (final MembershipListener<N> listener : listeners) {
       try {
-        totalVirtualNodeCount = ring.values().size();
-      } finally {
-        readLock.unlock();
+        listener.onRangesMoved(next.epoch(), published);
+      } catch (RuntimeException problem) {
+        // the ring is already published, a failing listener must not stop the others
+        logger.error("Membership listener {} failed at epoch {}", listener, next.epoch(), problem);
       }
     }
-    return totalVirtualNodeCount;
   }
 
   /**
-   * "Compute" total number of physical nodes in the ring.
+   * Register a listener to be told which hash ranges changed owner on every subsequent membership
+   * change: addNode(), removeNode(), setWeight(), setVirtualNodeCount() and load(). Ranges come out
+   * of one merge pass over the old and new ring positions, so a data mover can stream just those
+   * ranges, in parallel, rather than re-running chooseNode() over every stored key.
    */
-  public int getTotalPhysicalNodeCount() {
-    int physicalNodeSize = Integer.MIN_VALUE;
-    if (readLock.tryLock()) {
-      try {
-        final Set<N> physicalNodes = new HashSet<>();
-        for (VirtualNode<N> virtualNode : ring.values()) {
-          physicalNodes.add(virtualNode.getPhysicalNode());
+  public void addMembershipListener(final MembershipListener<N> listener) {
+    listeners.add(listener);
+  }
+
+  public boolean removeMembershipListener(final MembershipListener<N> listener) {
+    return listeners.remove(listener);
+  }
+
+  /**
+   * Hash ranges that would change owner going from this ring, as it is right now, to the other
+   * one, eg. a ring staged with the next membership. Both rings must use the same hash function.
+   */
+  public List<RangeMove<N>> diff(final RingConsistentHash<N> other) {
+    return RingDiff.between(ring, other.ring);
+  }
+
+  private void lockForWrite() {
+    final RingMetrics<N> observer = metrics;
+    // racy by design: a peek at the lock rather than a tryLock() which would barge the fair queue
+    if (observer != null && writeLock.isLocked()) {
+      observer.recordContendedWrite();
+    }
+    writeLock.lock();
+  }
+
+  /**
+   * Start collecting lookup metrics for the single-key chooseNode() flavors, timing one in
+   * sampleRate lookups (a power of 2) and tracking hot String keys among those. Returns the
+   * already running metrics if enabled before.
+   */
+  public RingMetrics<N> enableMetrics(final int sampleRate, final int hotKeyCapacity) {
+    writeLock.lock();
+    try {
+      if (metrics == null) {
+        final RingMetrics<N> observer = new RingMetrics<>(sampleRate, hotKeyCapacity);
+        observer.membershipChanged(ring);
+        metrics = observer;
+      }
+      return metrics;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  public RingMetrics<N> enableMetrics() {
+    return enableMetrics(RingMetrics.DEFAULT_SAMPLE_RATE, RingMetrics.DEFAULT_HOT_KEY_CAPACITY);
+  }
+
+  /**
+   * Stop collecting lookup metrics and drop those collected so far.
+   */
+  public void disableMetrics() {
+    metrics = null;
+  }
+
+  /**
+   * Current metrics, null if they are not enabled.
+   */
+  public RingMetrics<N> getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Placement function pinned to the ring as it is right now; later membership changes do not
+   * affect it. Handy to compare placements before and after a change, eg. with the
+   * DistributionAnalyzer.
+   */
+  public Function<String, N> placementSnapshot() {
+    final RingSnapshot<N> snapshot = ring;
+    return key -> snapshot.isEmpty() ? null : snapshot.ownerOf(hashFunction.hash(key));
+  }
+
+  /**
+   * Precompute preference lists of up to width replicas for the current ring and every ring
+   * published after it. Each replica costs a reference per virtual node and makes every membership
+   * change O(virtual nodes * width), so nothing is precomputed unless asked for; a width of 0 drops
+   * the table again and leaves every chooseNodes() call to walk the ring.
+   */
+  public void setPreferenceListWidth(final int width) {
+    if (width < 0) {
+      throw new IllegalArgumentException(
+          String.format("%d is not a valid preference list width", width));
+    }
+    lockForWrite();
+    try {
+      preferenceListWidth = width;
+      ring = ring.withPreferences(width);
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Choose the preference list for the given key: the owner followed by the next distinct physical
+   * nodes walking clockwise, replicas nodes in total or fewer if the ring has fewer physical nodes.
+   * 
+   * Lists walk the ring clockwise from the owner. Once setPreferenceListWidth() is set, lists of up
+   * to that many replicas instead come out of a table of distinct successors precomputed by the
+   * writer that published the ring, so they cost a binary search plus a copy of replicas
+   * references. Either way this never blocks.
+   * Adding a node to the ring changes any list by at most the insertion of that one node; removing
+   * a node drops it and promotes the next distinct successor.
+   */
+  public List<N> chooseNodes(final String key, final int replicas) {
+    return chooseNodesByHash(hashFunction.hash(key), replicas);
+  }
+
+  /**
+   * Preference list for a pre-hashed key, see chooseNodes(String, int). The hash must come from the
+   * same hash function that this ring was seeded with.
+   */
+  @SuppressWarnings("unchecked")
+  public List<N> chooseNodesByHash(final long keyHash, final int replicas) {
+    if (replicas < 1) {
+      throw new IllegalArgumentException(
+          String.format("%d is not a valid replica count", replicas));
+    }
+    final RingSnapshot<N> snapshot = ring;
+    if (snapshot.isEmpty()) {
+      return new ArrayList<>(0);
+    }
+    final int index = snapshot.ceilingIndex(keyHash);
+    final Object[] owners = new Object[replicas];
+    final int count = snapshot.preferenceList(index, replicas, owners);
+    final List<N> preferenceList = new ArrayList<>(count);
+    for (int iter = 0; iter < count; iter++) {
+      preferenceList.add((N) owners[iter]);
+    }
+    return preferenceList;
+  }
+
+  /**
+   * Batch flavor of chooseNode(): resolves the owner of keys[i] into owners[i]. All keys are
+   * resolved against the same ring snapshot; large batches are hashed, sorted and resolved in one
+   * merge pass over the ring rather than with one binary search per key.
+   */
+  public void chooseNodes(final String[] keys, final N[] owners) {
+    checkBatch(keys.length, owners);
+    final long[] hashes = new long[keys.length];
+    for (int iter = 0; iter < keys.length; iter++) {
+      hashes[iter] = hashFunction.hash(keys[iter]);
+    }
+    ring.ownersOf(hashes, 0, keys.length, owners);
+  }
+
+  /**
+   * Same as chooseNodes(String[], N[]) but hashes and resolves slices of large batches in parallel
+   * on the given pool.
+   */
+  public void chooseNodes(final String[] keys, final N[] owners, final ForkJoinPool pool) {
+    checkBatch(keys.length, owners);
+    pool.invoke(new BatchTask<>(ring, hashFunction, keys, new long[keys.length], owners, 0,
+        keys.length));
+  }
+
+  /**
+   * Resolve the owner of keys.get(i) into owners[i].
+   */
+  public void chooseNodes(final List<String> keys, final N[] owners) {
+    checkBatch(keys.size(), owners);
+    final long[] hashes = new long[keys.size()];
+    int iter = 0;
+    for (final String key : keys) {
+      hashes[iter++] = hashFunction.hash(key);
+    }
+    ring.ownersOf(hashes, 0, hashes.length, owners);
+  }
+
+  /**
+   * Resolve the owner of pre-hashed keys, keyHashes[i] into owners[i]. The hashes must come from
+   * the same hash function that this ring was seeded with.
+   */
+  public void chooseNodesByHash(final long[] keyHashes, final N[] owners) {
+    checkBatch(keyHashes.length, owners);
+    ring.ownersOf(keyHashes, 0, keyHashes.length, owners);
+  }
+
+  /**
+   * Group keys by their owning node, eg. to issue one multi-get per node. Keys keep their relative
+   * order within each group. Returns an empty map if the ring is empty.
+   */
+  public Map<N, List<String>> groupByNode(final Collection<String> keys) {
+    final String[] keyArray = keys.toArray(new String[keys.size()]);
+    final N[] owners = newNodeArray(keyArray.length);
+    chooseNodes(keyArray, owners);
+    final Map<N, List<String>> groups = new HashMap<>();
+    for (int iter = 0; iter < keyArray.length; iter++) {
+      if (owners[iter] != null) {
+        groups.computeIfAbsent(owners[iter], node -> new ArrayList<>()).add(keyArray[iter]);
+      }
+    }
+    return groups;
+  }
+
+  private static void checkBatch(final int keyCount, final Object[] owners) {
+    if (owners.length < keyCount) {
+      throw new IllegalArgumentException(String.format(
+          "owners array of length %d cannot hold %d keys", owners.length, keyCount));
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <N extends Node> N[] newNodeArray(final int size) {
+    return (N[]) new Node[size];
+  }
+
+  /**
+   * Splits a batch in halves until slices are small enough, then hashes and resolves each slice
+   * against the one snapshot pinned for the whole batch. Slices write disjoint ranges.
+   */
+  private static final class BatchTask<N extends Node> extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final transient RingSnapshot<N> snapshot;
+    private final transient HashFunction hashFunction;
+    private final String[] keys;
+    private final long[] hashes;
+    private final N[] owners;
+    private final int from;
+    private final int to;
+
+    private BatchTask(final RingSnapshot<N> snapshot, final HashFunction hashFunction,
+        final String[] keys, final long[] hashes, final N[] owners, final int from, final int to) {
+      this.snapshot = snapshot;
+      this.hashFunction = hashFunction;
+      this.keys = keys;
+      this.hashes = hashes;
+      this.owners = owners;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= PARALLEL_BATCH_THRESHOLD) {
+        for (int iter = from; iter < to; iter++) {
+          hashes[iter] = hashFunction.hash(keys[iter]);
         }
-        physicalNodeSize = physicalNodes.size();
-      } finally {
-        readLock.unlock();
+        snapshot.ownersOf(hashes, from, to, owners);
+        return;
       }
+      final int mid = (from + to) >>> 1;
+      invokeAll(new BatchTask<>(snapshot, hashFunction, keys, hashes, owners, from, mid),
+          new BatchTask<>(snapshot, hashFunction, keys, hashes, owners, mid, to));
     }
-    return physicalNodeSize;
+  }
+
+  /**
+   * "Compute" total number of virtual nodes in the ring.
+   */
+  public int getTotalVirtualNodeCount() {
+    return ring.size();
+  }
+
+  /**
+   * "Compute" total number of physical nodes in the ring.
+   */
+  public int getTotalPhysicalNodeCount() {
+    return ring.physicalNodeCount();
   }
 
   /**
@@ -189,20 +783,40 @@ public final class RingConsistentHash<N extends Node> {
    * physicalNode.
    */
   public int getVirtualNodeCount(final N physicalNode) {
-    int virtualNodeCount = Integer.MIN_VALUE;
-    if (readLock.tryLock()) {
-      virtualNodeCount = 0;
-      try {
-        for (final VirtualNode<N> virtualNode : ring.values()) {
-          if (virtualNode.isVirtualNodeOf(physicalNode)) {
-            virtualNodeCount++;
-          }
-        }
-      } finally {
-        readLock.unlock();
-      }
-    }
-    return virtualNodeCount;
+    return ring.virtualNodeCount(physicalNode);
+  }
+
+  /**
+   * Estimated heap retained by the ring's own structures, excluding the physical nodes themselves;
+   * divide by getTotalVirtualNodeCount() for the cost per virtual node.
+   */
+  public long getMemoryFootprint() {
+    return ring.footprintBytes();
+  }
+
+  /**
+   * Monotonically increasing version of the ring's membership, bumped by every addNode() and
+   * removeNode() that changes the ring.
+   */
+  public long getEpoch() {
+    return ring.epoch();
+  }
+
+  /**
+   * Hash function the ring was seeded with, for callers that hash a key once up front and then
+   * resolve it via chooseNodeByHash().
+   */
+  public HashFunction getHashFunction() {
+    return hashFunction;
+  }
+
+  // current snapshot for engines layered on top of the ring
+  RingSnapshot<N> snapshot() {
+    return ring;
+  }
+
+  HashFunction hashFunction() {
+    return hashFunction;
   }
 
 }
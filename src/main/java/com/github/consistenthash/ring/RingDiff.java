@@ -0,0 +1,101 @@
+package com.github.consistenthash.ring;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hash ranges that changed owner between two ring snapshots.
+ *
+ * Between any two neighbouring positions of either snapshot, every hash has the same owner in
+ * both: the owner of the next position clockwise. So one merge pass over the sorted positions of
+ * both snapshots, O(V) with V virtual nodes, finds every moved range; neighbouring ranges moving
+ * between the same pair of nodes are coalesced.
+ *
+ * @author gaurav
+ */
+final class RingDiff {
+
+  private RingDiff() {}
+
+  static <N extends Node> List<RangeMove<N>> between(final RingSnapshot<N> before,
+      final RingSnapshot<N> after) {
+    final List<RangeMove<N>> moves = new ArrayList<>();
+    final long[] bounds = union(before, after);
+    if (bounds.length == 0) {
+      return moves;
+    }
+    // the range wrapping around the top of the ring ends at the lowest position of either
+    final long last = bounds[bounds.length - 1];
+    add(moves, last, bounds[0], first(before), first(after));
+    int beforeIndex = 0;
+    int afterIndex = 0;
+    for (int iter = 1; iter < bounds.length; iter++) {
+      final long bound = bounds[iter];
+      while (beforeIndex < before.size() && before.positionAt(beforeIndex) < bound) {
+        beforeIndex++;
+      }
+      while (afterIndex < after.size() && after.positionAt(afterIndex) < bound) {
+        afterIndex++;
+      }
+      add(moves, bounds[iter - 1], bound, ownerAt(before, beforeIndex), ownerAt(after, afterIndex));
+    }
+    return moves;
+  }
+
+  // distinct positions of both snapshots, ascending
+  private static long[] union(final RingSnapshot<?> before, final RingSnapshot<?> after) {
+    final long[] bounds = new long[before.size() + after.size()];
+    int count = 0;
+    int beforeIndex = 0;
+    int afterIndex = 0;
+    while (beforeIndex < before.size() || afterIndex < after.size()) {
+      final long next;
+      if (afterIndex == after.size() || (beforeIndex < before.size()
+          && before.positionAt(beforeIndex) <= after.positionAt(afterIndex))) {
+        next = before.positionAt(beforeIndex++);
+      } else {
+        next = after.positionAt(afterIndex++);
+      }
+      if (count == 0 || bounds[count - 1] != next) {
+        bounds[count++] = next;
+      }
+    }
+    final long[] distinct = new long[count];
+    System.arraycopy(bounds, 0, distinct, 0, count);
+    return distinct;
+  }
+
+  private static <N extends Node> N first(final RingSnapshot<N> snapshot) {
+    return snapshot.isEmpty() ? null : snapshot.ownerAt(0);
+  }
+
+  // owner of the first position at or past index, wrapping around
+  private static <N extends Node> N ownerAt(final RingSnapshot<N> snapshot, final int index) {
+    return index == snapshot.size() ? first(snapshot) : snapshot.ownerAt(index);
+  }
+
+  private static <N extends Node> void add(final List<RangeMove<N>> moves, final long start,
+      final long end, final N oldOwner, final N newOwner) {
+    if (same(oldOwner, newOwner)) {
+      return;
+    }
+    if (!moves.isEmpty()) {
+      final RangeMove<N> previous = moves.get(moves.size() - 1);
+      if (previous.getEndHash() == start && previous.getOldOwner() == oldOwner
+          && previous.getNewOwner() == newOwner) {
+        moves.set(moves.size() - 1,
+            new RangeMove<>(previous.getStartHash(), end, oldOwner, newOwner));
+        return;
+      }
+    }
+    moves.add(new RangeMove<>(start, end, oldOwner, newOwner));
+  }
+
+  private static boolean same(final Node one, final Node other) {
+    if (one == other) {
+      return true;
+    }
+    return one != null && other != null && one.getKey().equals(other.getKey());
+  }
+
+}
@@ -0,0 +1,281 @@
+package com.github.consistenthash.ring;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import com.github.consistenthash.hasher.HashFunction;
+
+/**
+ * Binary file format for a ring snapshot, so that a ring can be built once and then mapped in by
+ * any number of processes without hashing a single virtual node key. All values are big-endian:
+ *
+ * <pre>
+ * int    magic "CHRG"
+ * int    version
+ * long   hash function fingerprint, the hash of a fixed probe string
+ * long   epoch
+ * int    hash function class name length, then its UTF-8 bytes
+ * int    physical node count, then per node: int key length, key UTF-8 bytes
+ * int    virtual node count V
+ * long[V] positions, sorted ascending
+ * int[V]  physical node ordinal of every position
+ * int[V]  virtual node index of every position
+ * int    CRC32 of everything above
+ * </pre>
+ *
+ * Buffer position and limit calls go through java.nio.Buffer so the bytecode also links on Java 8.
+ *
+ * @author gaurav
+ */
+final class RingFile {
+  static final int MAGIC = 0x43485247;
+  static final int VERSION = 1;
+  private static final String FINGERPRINT_PROBE = "consistenthash";
+  private static final int CHECKSUM_BYTES = 4;
+
+  private final ByteBuffer buffer;
+  private final String hashFunctionName;
+  private final long fingerprint;
+  private final long epoch;
+  private final String[] nodeKeys;
+  private final int pointCount;
+  private final int positionsOffset;
+  private final int ordinalsOffset;
+  private final int indicesOffset;
+
+  private RingFile(final ByteBuffer buffer, final String hashFunctionName, final long fingerprint,
+      final long epoch, final String[] nodeKeys, final int pointCount, final int positionsOffset) {
+    this.buffer = buffer;
+    this.hashFunctionName = hashFunctionName;
+    this.fingerprint = fingerprint;
+    this.epoch = epoch;
+    this.nodeKeys = nodeKeys;
+    this.pointCount = pointCount;
+    this.positionsOffset = positionsOffset;
+    this.ordinalsOffset = positionsOffset + Long.BYTES * pointCount;
+    this.indicesOffset = ordinalsOffset + Integer.BYTES * pointCount;
+  }
+
+  static long fingerprint(final HashFunction hashFunction) {
+    return hashFunction.hash(FINGERPRINT_PROBE);
+  }
+
+  /**
+   * Write the snapshot to path. The file is written next to path and then moved over it, so
+   * processes mapping path never observe a partially written ring.
+   */
+  static void write(final RingSnapshot<?> snapshot, final HashFunction hashFunction,
+      final Path path) throws IOException {
+    final int size = snapshot.size();
+    final Map<String, Integer> ordinals = new LinkedHashMap<>();
+    final int[] nodeOrdinals = new int[size];
+    final int[] virtualNodeIndices = snapshot.virtualNodeIndices();
+    for (int iter = 0; iter < size; iter++) {
+      final String nodeKey = snapshot.ownerAt(iter).getKey();
+      Integer ordinal = ordinals.get(nodeKey);
+      if (ordinal == null) {
+        ordinal = ordinals.size();
+        ordinals.put(nodeKey, ordinal);
+      }
+      nodeOrdinals[iter] = ordinal;
+    }
+    final byte[] hashFunctionName =
+        hashFunction.getClass().getName().getBytes(StandardCharsets.UTF_8);
+    final List<byte[]> nodeKeys = new ArrayList<>(ordinals.size());
+    long length = 4 + 4 + 8 + 8 + 4 + hashFunctionName.length + 4 + 4 + 16L * size
+        + CHECKSUM_BYTES;
+    for (final String nodeKey : ordinals.keySet()) {
+      final byte[] encoded = nodeKey.getBytes(StandardCharsets.UTF_8);
+      nodeKeys.add(encoded);
+      length += 4 + encoded.length;
+    }
+    if (length > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException(
+          String.format("ring of %d virtual nodes is too large for a ring file", size));
+    }
+
+    final ByteBuffer buffer = ByteBuffer.allocate((int) length);
+    buffer.putInt(MAGIC).putInt(VERSION).putLong(fingerprint(hashFunction))
+        .putLong(snapshot.epoch());
+    buffer.putInt(hashFunctionName.length).put(hashFunctionName);
+    buffer.putInt(nodeKeys.size());
+    for (final byte[] nodeKey : nodeKeys) {
+      buffer.putInt(nodeKey.length).put(nodeKey);
+    }
+    buffer.putInt(size);
+    for (int iter = 0; iter < size; iter++) {
+      buffer.putLong(snapshot.positionAt(iter));
+    }
+    for (final int ordinal : nodeOrdinals) {
+      buffer.putInt(ordinal);
+    }
+    for (final int virtualNodeIndex : virtualNodeIndices) {
+      buffer.putInt(virtualNodeIndex);
+    }
+    final CRC32 checksum = new CRC32();
+    checksum.update(buffer.array(), 0, buffer.position());
+    buffer.putInt((int) checksum.getValue());
+    ((Buffer) buffer).flip();
+
+    final Path absolute = path.toAbsolutePath();
+    final Path temp = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(),
+        ".tmp");
+    try {
+      try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+        channel.force(true);
+      }
+      Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * Map the file at path read-only and verify its header and checksum. The mapping stays valid
+   * after this returns and is released once the returned RingFile is garbage collected.
+   */
+  static RingFile map(final Path path) throws IOException {
+    final MappedByteBuffer mapped;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException(String.format("%s is too large to be a ring file", path));
+      }
+      mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    return parse(mapped, path);
+  }
+
+  private static RingFile parse(final ByteBuffer buffer, final Path path) throws IOException {
+    final int length = buffer.limit();
+    if (length < 4 + 4 + CHECKSUM_BYTES || buffer.getInt(0) != MAGIC) {
+      throw new IOException(String.format("%s is not a ring file", path));
+    }
+    if (buffer.getInt(4) != VERSION) {
+      throw new IOException(String.format("%s has unsupported ring file version %d", path,
+          buffer.getInt(4)));
+    }
+    final ByteBuffer content = buffer.duplicate();
+    ((Buffer) content).limit(length - CHECKSUM_BYTES);
+    final CRC32 checksum = new CRC32();
+    checksum.update(content);
+    if ((int) checksum.getValue() != buffer.getInt(length - CHECKSUM_BYTES)) {
+      throw new IOException(String.format("%s is corrupt, checksum mismatch", path));
+    }
+
+    try {
+      final ByteBuffer header = buffer.duplicate();
+      ((Buffer) header).limit(length - CHECKSUM_BYTES).position(8);
+      final long fingerprint = header.getLong();
+      final long epoch = header.getLong();
+      final String hashFunctionName = readString(header);
+      final String[] nodeKeys = new String[header.getInt()];
+      for (int iter = 0; iter < nodeKeys.length; iter++) {
+        nodeKeys[iter] = readString(header);
+      }
+      final int pointCount = header.getInt();
+      if (pointCount < 0 || header.remaining() != 16L * pointCount) {
+        throw new IOException(String.format("%s is corrupt, bad virtual node count", path));
+      }
+      return new RingFile(buffer, hashFunctionName, fingerprint, epoch, nodeKeys, pointCount,
+          header.position());
+    } catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException
+        problem) {
+      throw new IOException(String.format("%s is corrupt, truncated header", path), problem);
+    }
+  }
+
+  private static String readString(final ByteBuffer buffer) {
+    final byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  String hashFunctionName() {
+    return hashFunctionName;
+  }
+
+  long fingerprint() {
+    return fingerprint;
+  }
+
+  long epoch() {
+    return epoch;
+  }
+
+  String[] nodeKeys() {
+    return nodeKeys.clone();
+  }
+
+  int pointCount() {
+    return pointCount;
+  }
+
+  long positionAt(final int index) {
+    return buffer.getLong(positionsOffset + Long.BYTES * index);
+  }
+
+  int ordinalAt(final int index) {
+    return buffer.getInt(ordinalsOffset + Integer.BYTES * index);
+  }
+
+  /**
+   * Same contract as RingSnapshot.ceilingIndex(), searched straight off the buffer.
+   */
+  int ceilingIndex(final long hash) {
+    int low = 0;
+    int high = pointCount - 1;
+    while (low <= high) {
+      final int mid = (low + high) >>> 1;
+      if (positionAt(mid) < hash) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low == pointCount ? 0 : low;
+  }
+
+  // bulk copies of the point arrays onto the heap
+  long[] positions() {
+    final long[] positions = new long[pointCount];
+    final ByteBuffer view = buffer.duplicate();
+    ((Buffer) view).position(positionsOffset);
+    view.asLongBuffer().get(positions);
+    return positions;
+  }
+
+  int[] ordinals() {
+    return ints(ordinalsOffset);
+  }
+
+  int[] virtualNodeIndices() {
+    return ints(indicesOffset);
+  }
+
+  private int[] ints(final int offset) {
+    final int[] values = new int[pointCount];
+    final ByteBuffer view = buffer.duplicate();
+    ((Buffer) view).position(offset);
+    view.asIntBuffer().get(values);
+    return values;
+  }
+
+}
@@ -0,0 +1,243 @@
+package com.github.consistenthash.ring;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lookup metrics for a {@link RingConsistentHash}, enabled via
+ * RingConsistentHash.enableMetrics(). While disabled the ring pays a single null check per
+ * lookup.
+ * 
+ * Every single-key lookup bumps striped per-node hit counters; one in sampleRate lookups is also
+ * timed into a log-linear latency histogram and, for String keys, fed to a count-min heavy hitter
+ * tracker naming the hottest keys. Nothing is pushed anywhere, callers pull a point-in-time
+ * {@link Snapshot}.
+ * 
+ * @author gaurav
+ */
+public final class RingMetrics<N extends Node> {
+  public static final int DEFAULT_SAMPLE_RATE = 16;
+  public static final int DEFAULT_HOT_KEY_CAPACITY = 16;
+  static final long UNTIMED = Long.MIN_VALUE;
+
+  private final int sampleMask;
+  private final LongAdder lookups = new LongAdder();
+  private final LongAdder nullLookups = new LongAdder();
+  private final LongAdder contendedWrites = new LongAdder();
+  private final Map<N, LongAdder> nodeHits = new ConcurrentHashMap<>();
+  private final LatencyHistogram latencies = new LatencyHistogram();
+  private final HeavyHitters hotKeys;
+  // ring as of the latest membership change, hits of nodes no longer on it are dropped
+  private volatile RingSnapshot<N> members;
+
+  RingMetrics(final int sampleRate, final int hotKeyCapacity) {
+    if (sampleRate < 1 || Integer.bitCount(sampleRate) != 1) {
+      throw new IllegalArgumentException(
+          String.format("%d is not a valid sample rate, it must be a power of 2", sampleRate));
+    }
+    if (hotKeyCapacity < 1) {
+      throw new IllegalArgumentException(
+          String.format("%d is not a valid hot key capacity", hotKeyCapacity));
+    }
+    this.sampleMask = sampleRate - 1;
+    this.hotKeys = new HeavyHitters(hotKeyCapacity, 1024 * hotKeyCapacity);
+  }
+
+  /**
+   * Start of a lookup: the current nano time if this lookup is sampled, else UNTIMED.
+   */
+  long startLookup() {
+    return (ThreadLocalRandom.current().nextInt() & sampleMask) == 0 ? System.nanoTime() : UNTIMED;
+  }
+
+  /**
+   * Record a lookup resolved to node, null if the ring was empty, that started at start. Hot keys
+   * are only tracked for String keys, pass null for any other kind of key.
+   */
+  void endLookup(final String key, final N node, final long start) {
+    lookups.increment();
+    if (node == null) {
+      nullLookups.increment();
+    } else {
+      LongAdder hits = nodeHits.get(node);
+      if (hits == null) {
+        hits = nodeHits.computeIfAbsent(node, absent -> new LongAdder());
+      }
+      hits.increment();
+    }
+    if (start != UNTIMED) {
+      latencies.record(System.nanoTime() - start);
+      if (key != null) {
+        hotKeys.record(key);
+      }
+    }
+  }
+
+  void recordContendedWrite() {
+    contendedWrites.increment();
+  }
+
+  /**
+   * Follow the ring's membership, forgetting the hits of nodes that left it.
+   */
+  void membershipChanged(final RingSnapshot<N> ring) {
+    members = ring;
+    prune();
+  }
+
+  // a lookup racing a removal can bring a departed node back, so this also runs per snapshot
+  private void prune() {
+    final RingSnapshot<N> ring = members;
+    if (ring != null) {
+      nodeHits.keySet().removeIf(node -> ring.virtualNodeCount(node) == 0);
+    }
+  }
+
+  /**
+   * Point-in-time view of the metrics. Counters keep running while it is being taken so the
+   * figures are not mutually consistent to the last increment.
+   */
+  public Snapshot<N> snapshot() {
+    prune();
+    final List<Map.Entry<N, Long>> hits = new ArrayList<>(nodeHits.size());
+    for (Map.Entry<N, LongAdder> nodeHit : nodeHits.entrySet()) {
+      hits.add(new AbstractMap.SimpleImmutableEntry<>(nodeHit.getKey(),
+          nodeHit.getValue().sum()));
+    }
+    hits.sort(Map.Entry.<N, Long>comparingByValue().reversed());
+    return new Snapshot<>(lookups.sum(), nullLookups.sum(), contendedWrites.sum(), hits,
+        latencies.counts(), hotKeys.top(), sampleMask + 1);
+  }
+
+  /**
+   * Metrics as of the time RingMetrics.snapshot() was called.
+   */
+  public static final class Snapshot<N extends Node> {
+    private final long lookups;
+    private final long nullLookups;
+    private final long contendedWrites;
+    private final List<Map.Entry<N, Long>> nodeHits;
+    private final long[] latencyCounts;
+    private final List<Map.Entry<String, Long>> hotKeys;
+    private final int sampleRate;
+
+    private Snapshot(final long lookups, final long nullLookups, final long contendedWrites,
+        final List<Map.Entry<N, Long>> nodeHits, final long[] latencyCounts,
+        final List<Map.Entry<String, Long>> hotKeys, final int sampleRate) {
+      this.lookups = lookups;
+      this.nullLookups = nullLookups;
+      this.contendedWrites = contendedWrites;
+      this.nodeHits = Collections.unmodifiableList(nodeHits);
+      this.latencyCounts = latencyCounts;
+      this.hotKeys = Collections.unmodifiableList(hotKeys);
+      this.sampleRate = sampleRate;
+    }
+
+    public long getLookupCount() {
+      return lookups;
+    }
+
+    /**
+     * Lookups that found the ring empty and returned null.
+     */
+    public long getNullLookupCount() {
+      return nullLookups;
+    }
+
+    /**
+     * Membership changes that found the write lock held by another writer and had to queue.
+     */
+    public long getContendedWriteCount() {
+      return contendedWrites;
+    }
+
+    /**
+     * Hits per physical node, hottest first.
+     */
+    public List<Map.Entry<N, Long>> getNodeHits() {
+      return nodeHits;
+    }
+
+    /**
+     * Nodes whose hit count exceeds factor times the mean across nodes that have seen hits.
+     */
+    public List<N> getHotNodes(final double factor) {
+      final List<N> hotNodes = new ArrayList<>();
+      if (nodeHits.isEmpty()) {
+        return hotNodes;
+      }
+      long totalHits = 0;
+      for (Map.Entry<N, Long> nodeHit : nodeHits) {
+        totalHits += nodeHit.getValue();
+      }
+      final double threshold = factor * totalHits / nodeHits.size();
+      for (Map.Entry<N, Long> nodeHit : nodeHits) {
+        if (nodeHit.getValue() > threshold) {
+          hotNodes.add(nodeHit.getKey());
+        }
+      }
+      return hotNodes;
+    }
+
+    /**
+     * Hottest keys with their estimated lookup counts, hottest first. Estimates are scaled up by
+     * the sample rate and may over-count.
+     */
+    public List<Map.Entry<String, Long>> getHotKeys() {
+      final List<Map.Entry<String, Long>> scaled = new ArrayList<>(hotKeys.size());
+      for (Map.Entry<String, Long> hotKey : hotKeys) {
+        scaled.add(new AbstractMap.SimpleImmutableEntry<>(hotKey.getKey(),
+            hotKey.getValue() * sampleRate));
+      }
+      return scaled;
+    }
+
+    /**
+     * Number of lookups that were timed.
+     */
+    public long getSampledLookupCount() {
+      long sampled = 0;
+      for (long count : latencyCounts) {
+        sampled += count;
+      }
+      return sampled;
+    }
+
+    /**
+     * Lookup latency in nanos at the given percentile, eg. 99.9, within 12.5%.
+     */
+    public long getLatencyPercentile(final double percentile) {
+      if (percentile <= 0.0d || percentile > 100.0d) {
+        throw new IllegalArgumentException(
+            String.format("%f is not a valid percentile", percentile));
+      }
+      return LatencyHistogram.percentile(latencyCounts, percentile);
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder builder = new StringBuilder();
+      builder.append("RingMetrics [lookups:");
+      builder.append(lookups);
+      builder.append(", nullLookups:");
+      builder.append(nullLookups);
+      builder.append(", contendedWrites:");
+      builder.append(contendedWrites);
+      builder.append(", p50Nanos:");
+      builder.append(getLatencyPercentile(50.0d));
+      builder.append(", p99Nanos:");
+      builder.append(getLatencyPercentile(99.0d));
+      builder.append(", hotKeys:");
+      builder.append(getHotKeys().subList(0, Math.min(3, hotKeys.size())));
+      builder.append("]");
+      return builder.toString();
+    }
+  }
+
+}
@@ -0,0 +1,650 @@
+package com.github.consistenthash.ring;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable point-in-time view of the ring. Virtual node positions live in a sorted primitive
+ * array with a parallel array of the ordinals of the physical nodes that own them, so a lookup is a
+ * binary search over longs with no locking, no boxing and no garbage. There are no per virtual node
+ * objects: a virtual node is just its position plus its owner's ordinal into a table of physical
+ * nodes, and its key is derived on demand.
+ *
+ * Snapshots are never mutated once published; every membership change derives a new snapshot via
+ * copy-on-write and swaps it in atomically.
+ *
+ * Each snapshot also carries a per-physical-node index of the positions its virtual nodes occupy,
+ * in virtual node index order, so that count queries are O(1) and removing a node only needs to
+ * locate its own points (O(v log V)) before the surviving runs are block copied.
+ *
+ * @author gaurav
+ */
+final class RingSnapshot<N extends Node> {
+  @SuppressWarnings("rawtypes")
+  private static final RingSnapshot EMPTY = new RingSnapshot<>(new long[0], new int[0],
+      new Node[0], new long[0][], Collections.emptyMap(), 0L);
+
+  // array header plus length, as laid out by a typical 64 bit jvm
+  private static final int ARRAY_HEADER_BYTES = 16;
+  private static final int REFERENCE_BYTES = 8;
+  // rough cost of one HashMap entry with a boxed Integer value, the key is shared with the node
+  private static final int MAP_ENTRY_BYTES = 64;
+
+  // sorted ascending; duplicates (hash collisions) are allowed and resolve to the first owner
+  private final long[] positions;
+  // ordinals[i] is the index into nodes of the physical node owning positions[i]
+  private final int[] ordinals;
+  // physical nodes by ordinal; ordinals of removed nodes are left null until reused
+  private final Node[] nodes;
+
+  // built by the writer before publishing, null if no preference list width was asked for
+  private final PreferenceTable preferences;
+
+  // physical node ordinal -> positions of its virtual nodes, indexed by virtual node index
+  private final long[][] index;
+  private final Map<String, Integer> ordinalsByKey;
+
+  // bumped on every membership change so caches can cheaply tell stale answers apart
+  private final long epoch;
+
+  private RingSnapshot(final long[] positions, final int[] ordinals, final Node[] nodes,
+      final long[][] index, final Map<String, Integer> ordinalsByKey, final long epoch) {
+    this(positions, ordinals, nodes, index, ordinalsByKey, epoch, 0);
+  }
+
+  private RingSnapshot(final long[] positions, final int[] ordinals, final Node[] nodes,
+      final long[][] index, final Map<String, Integer> ordinalsByKey, final long epoch,
+      final int preferenceWidth) {
+    this.positions = positions;
+    this.ordinals = ordinals;
+    this.nodes = nodes;
+    this.index = index;
+    this.ordinalsByKey = ordinalsByKey;
+    this.epoch = epoch;
+    this.preferences = preferenceWidth > 0 && positions.length > 0
+        ? new PreferenceTable(preferenceWidth) : null;
+  }
+
+  @SuppressWarnings("unchecked")
+  static <N extends Node> RingSnapshot<N> empty() {
+    return (RingSnapshot<N>) EMPTY;
+  }
+
+  /**
+   * Rebuild a snapshot from its raw parts, eg. as read back from a ring file. The caller vouches
+   * for positions being sorted, for ordinals pointing into nodes and for index[o] holding the
+   * positions of node o in virtual node index order.
+   */
+  static <N extends Node> RingSnapshot<N> restore(final long[] positions, final int[] ordinals,
+      final N[] nodes, final long[][] index, final long epoch) {
+    final Map<String, Integer> ordinalsByKey = new HashMap<>();
+    for (int ordinal = 0; ordinal < nodes.length; ordinal++) {
+      ordinalsByKey.put(nodes[ordinal].getKey(), ordinal);
+    }
+    return new RingSnapshot<>(positions, ordinals, nodes.clone(), index, ordinalsByKey, epoch);
+  }
+
+  boolean isEmpty() {
+    return positions.length == 0;
+  }
+
+  int size() {
+    return positions.length;
+  }
+
+  long epoch() {
+    return epoch;
+  }
+
+  long positionAt(final int index) {
+    return positions[index];
+  }
+
+  /**
+   * Physical node owning the virtual node at the given ring index.
+   */
+  @SuppressWarnings("unchecked")
+  N ownerAt(final int index) {
+    return (N) nodes[ordinals[index]];
+  }
+
+  /**
+   * On-demand view of the virtual node at the given ring index, for diagnostics; lookups never
+   * need one.
+   */
+  VirtualNode<N> virtualNodeAt(final int index) {
+    final long[] nodePositions = this.index[ordinals[index]];
+    int virtualNodeIndex = 0;
+    while (nodePositions[virtualNodeIndex] != positions[index]) {
+      virtualNodeIndex++;
+    }
+    return new VirtualNode<>(ownerAt(index), virtualNodeIndex);
+  }
+
+  /**
+   * Virtual node index of every ring position, ie. virtualNodeAt(i).getVirtualNodeIndex() for all
+   * i, in O(V log v) rather than O(V * v).
+   */
+  int[] virtualNodeIndices() {
+    // per node, its virtual node indices ordered by position; the ring visits a node's points in
+    // the same order
+    final int[][] byPosition = new int[index.length][];
+    for (int ordinal = 0; ordinal < index.length; ordinal++) {
+      if (index[ordinal] == null) {
+        continue;
+      }
+      final long[] sorted = index[ordinal].clone();
+      final int[] virtualNodeIndices = new int[sorted.length];
+      for (int iter = 0; iter < sorted.length; iter++) {
+        virtualNodeIndices[iter] = iter;
+      }
+      Sorting.sort(sorted, virtualNodeIndices, 0, sorted.length);
+      byPosition[ordinal] = virtualNodeIndices;
+    }
+    final int[] cursors = new int[index.length];
+    final int[] virtualNodeIndices = new int[positions.length];
+    for (int iter = 0; iter < positions.length; iter++) {
+      final int ordinal = ordinals[iter];
+      virtualNodeIndices[iter] = byPosition[ordinal][cursors[ordinal]++];
+    }
+    return virtualNodeIndices;
+  }
+
+  /**
+   * Key of the given virtual node of a physical node, the string its position is the hash of.
+   */
+  static String virtualNodeKey(final Node physicalNode, final int virtualNodeIndex) {
+    return physicalNode.getKey() + VirtualNode.SEPARATOR + virtualNodeIndex;
+  }
+
+  /**
+   * Index of the first virtual node whose position is >= hash, wrapping around to the lowest
+   * position when hash falls past the last point on the ring. Callers must check isEmpty() first.
+   */
+  int ceilingIndex(final long hash) {
+    final int index = searchCeiling(hash);
+    return index == positions.length ? 0 : index;
+  }
+
+  // like ceilingIndex() but returns size() rather than wrapping around
+  private int searchCeiling(final long hash) {
+    int low = 0;
+    int high = positions.length - 1;
+    while (low <= high) {
+      final int mid = (low + high) >>> 1;
+      if (positions[mid] < hash) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low;
+  }
+
+  int physicalNodeCount() {
+    return ordinalsByKey.size();
+  }
+
+  boolean hasNode(final String nodeKey) {
+    return ordinalsByKey.containsKey(nodeKey);
+  }
+
+  int virtualNodeCount(final Node physicalNode) {
+    final Integer ordinal = ordinalsByKey.get(physicalNode.getKey());
+    return ordinal == null ? 0 : index[ordinal].length;
+  }
+
+  N ownerOf(final long hash) {
+    return ownerAt(ceilingIndex(hash));
+  }
+
+  /**
+   * Estimated heap retained by this snapshot's own structures, excluding the physical nodes
+   * themselves: about 20 bytes per virtual node, 8 for its position, 4 for its owner's ordinal and
+   * 8 for its entry in the per-node index, plus 8 per replica of the preference table if one was
+   * asked for.
+   */
+  long footprintBytes() {
+    long bytes = ARRAY_HEADER_BYTES + (long) Long.BYTES * positions.length;
+    bytes += ARRAY_HEADER_BYTES + (long) Integer.BYTES * ordinals.length;
+    bytes += 2L * (ARRAY_HEADER_BYTES + (long) REFERENCE_BYTES * nodes.length);
+    for (final long[] nodePositions : index) {
+      if (nodePositions != null) {
+        bytes += ARRAY_HEADER_BYTES + (long) Long.BYTES * nodePositions.length;
+      }
+    }
+    final PreferenceTable table = preferences;
+    if (table != null) {
+      bytes += ARRAY_HEADER_BYTES + (long) REFERENCE_BYTES * table.successors.length;
+    }
+    return bytes + (long) MAP_ENTRY_BYTES * ordinalsByKey.size();
+  }
+
+  /**
+   * Resolve owners[i] = ownerOf(hashes[i]) for every i in [from, to). Large batches are sorted and
+   * resolved in a single merge pass over the ring positions instead of one binary search per key;
+   * the caller's hashes are left untouched.
+   */
+  void ownersOf(final long[] hashes, final int from, final int to, final N[] owners) {
+    final int count = to - from;
+    if (count <= 0) {
+      return;
+    }
+    if (isEmpty()) {
+      Arrays.fill(owners, from, to, null);
+      return;
+    }
+    // small batches against a large ring are cheaper to binary search key by key than to sweep
+    final int searchDepth = 64 - Long.numberOfLeadingZeros(positions.length);
+    if ((long) count * searchDepth < positions.length) {
+      for (int iter = from; iter < to; iter++) {
+        owners[iter] = ownerOf(hashes[iter]);
+      }
+      return;
+    }
+    final long[] sorted = Arrays.copyOfRange(hashes, from, to);
+    final int[] order = new int[count];
+    for (int iter = 0; iter < count; iter++) {
+      order[iter] = from + iter;
+    }
+    Sorting.sort(sorted, order, 0, count);
+    int point = searchCeiling(sorted[0]);
+    for (int iter = 0; iter < count; iter++) {
+      final long hash = sorted[iter];
+      while (point < positions.length && positions[point] < hash) {
+        point++;
+      }
+      owners[order[iter]] = ownerAt(point == positions.length ? 0 : point);
+    }
+  }
+
+  /**
+   * Same snapshot, with a table of the first width distinct physical owners of every position
+   * precomputed for preferenceList(); a width of 0 drops the table. Meant for writers, before the
+   * snapshot is published, so that replica lookups never build anything.
+   */
+  RingSnapshot<N> withPreferences(final int width) {
+    final PreferenceTable table = preferences;
+    if (width == 0 ? table == null
+        : isEmpty() || (table != null && table.width == Math.min(width, table.distinctNodes))) {
+      return this;
+    }
+    return new RingSnapshot<>(positions, ordinals, nodes, index, ordinalsByKey, epoch, width);
+  }
+
+  /**
+   * Copy up to replicas distinct physical owners walking clockwise from the given ring index into
+   * owners, returning how many were copied. This is fewer than replicas only when the ring has
+   * fewer distinct physical nodes. Served off the precomputed table when it is wide enough, else
+   * by walking the ring.
+   */
+  int preferenceList(final int index, final int replicas, final Object[] owners) {
+    final PreferenceTable table = preferences;
+    if (table != null && (replicas <= table.width || table.width == table.distinctNodes)) {
+      final int count = Math.min(replicas, table.width);
+      System.arraycopy(table.successors, index * table.width, owners, 0, count);
+      return count;
+    }
+    final int size = positions.length;
+    final int wanted = Math.min(replicas, physicalNodeCount());
+    int found = 0;
+    for (int step = 0; step < size && found < wanted; step++) {
+      final N owner = ownerAt((index + step) % size);
+      if (!contains(owners, 0, found, owner)) {
+        owners[found++] = owner;
+      }
+    }
+    return found;
+  }
+
+  private static boolean contains(final Object[] array, final int from, final int count,
+      final Object node) {
+    for (int slot = from; slot < from + count; slot++) {
+      if (array[slot] == node) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * For every ring position, the first width distinct physical nodes found walking clockwise from
+   * it, flattened into a single array. Built in O(V * width) by walking the ring backwards: the
+   * list at position i is its own owner followed by the list at i+1 minus that owner.
+   */
+  private final class PreferenceTable {
+    private final int width;
+    private final int distinctNodes;
+    private final Object[] successors;
+
+    private PreferenceTable(final int replicas) {
+      final int size = positions.length;
+      this.distinctNodes = physicalNodeCount();
+      this.width = Math.min(replicas, distinctNodes);
+      this.successors = new Object[size * width];
+      if (size == 0) {
+        return;
+      }
+      // seed the last position with an explicit wrap-around walk
+      final int last = size - 1;
+      int found = 0;
+      for (int step = 0; step < size && found < width; step++) {
+        final N owner = ownerAt((last + step) % size);
+        if (!contains(successors, last * width, found, owner)) {
+          successors[last * width + found++] = owner;
+        }
+      }
+      for (int index = last - 1; index >= 0; index--) {
+        final N owner = ownerAt(index);
+        final int base = index * width;
+        final int next = base + width;
+        successors[base] = owner;
+        int filled = 1;
+        for (int slot = 0; slot < width && filled < width; slot++) {
+          final Object candidate = successors[next + slot];
+          if (candidate != owner) {
+            successors[base + filled++] = candidate;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Derive a new snapshot with the given positions of physicalNode's virtual nodes merged in. The
+   * additions need not be sorted but must be the node's next virtual node indices in order;
+   * existing points win ties so that earlier owners keep their position on collisions.
+   */
+  RingSnapshot<N> add(final N physicalNode, final long[] addedPositions) {
+    final int addedCount = addedPositions.length;
+    if (addedCount == 0) {
+      return this;
+    }
+    final long[] sortedAdded = addedPositions.clone();
+    Arrays.sort(sortedAdded);
+
+    // reuse the node's ordinal if it is already on the ring, else the first free one
+    final Integer existingOrdinal = ordinalsByKey.get(physicalNode.getKey());
+    final int ordinal = existingOrdinal != null ? existingOrdinal : freeOrdinal();
+    final Node[] mergedTable = Arrays.copyOf(nodes, Math.max(nodes.length, ordinal + 1));
+    final long[][] mergedIndex = Arrays.copyOf(index, mergedTable.length);
+    mergedTable[ordinal] = physicalNode;
+    final long[] existing = index.length > ordinal ? index[ordinal] : null;
+    if (existing == null) {
+      mergedIndex[ordinal] = addedPositions.clone();
+    } else {
+      final long[] nodePositions = Arrays.copyOf(existing, existing.length + addedCount);
+      System.arraycopy(addedPositions, 0, nodePositions, existing.length, addedCount);
+      mergedIndex[ordinal] = nodePositions;
+    }
+    Map<String, Integer> mergedOrdinals = ordinalsByKey;
+    if (existingOrdinal == null) {
+      mergedOrdinals = new HashMap<>(ordinalsByKey);
+      mergedOrdinals.put(physicalNode.getKey(), ordinal);
+    }
+
+    // locate every insertion point and block copy the untouched runs in between
+    final int total = positions.length + addedCount;
+    final long[] mergedPositions = new long[total];
+    final int[] mergedOwners = new int[total];
+    int source = 0;
+    int out = 0;
+    for (int iter = 0; iter < addedCount; iter++) {
+      final int insertAt = searchHigher(sortedAdded[iter], source);
+      final int run = insertAt - source;
+      System.arraycopy(positions, source, mergedPositions, out, run);
+      System.arraycopy(ordinals, source, mergedOwners, out, run);
+      out += run;
+      source = insertAt;
+      mergedPositions[out] = sortedAdded[iter];
+      mergedOwners[out++] = ordinal;
+    }
+    System.arraycopy(positions, source, mergedPositions, out, positions.length - source);
+    System.arraycopy(ordinals, source, mergedOwners, out, positions.length - source);
+    return new RingSnapshot<>(mergedPositions, mergedOwners, mergedTable, mergedIndex,
+        mergedOrdinals, epoch + 1);
+  }
+
+  private int freeOrdinal() {
+    for (int ordinal = 0; ordinal < nodes.length; ordinal++) {
+      if (nodes[ordinal] == null) {
+        return ordinal;
+      }
+    }
+    return nodes.length;
+  }
+
+  /**
+   * Derive a new snapshot without any of the virtual nodes of the given physical node. Returns this
+   * very snapshot if the physical node owns no points.
+   */
+  RingSnapshot<N> remove(final N physicalNode) {
+    final Integer ordinal = ordinalsByKey.get(physicalNode.getKey());
+    if (ordinal == null) {
+      return this;
+    }
+    final long[][] retainedIndex = index.clone();
+    retainedIndex[ordinal] = null;
+    final Node[] retainedTable = nodes.clone();
+    retainedTable[ordinal] = null;
+    final Map<String, Integer> retainedOrdinals = new HashMap<>(ordinalsByKey);
+    retainedOrdinals.remove(physicalNode.getKey());
+    return drop(ordinal, index[ordinal], retainedTable, retainedIndex, retainedOrdinals);
+  }
+
+  /**
+   * Derive a new snapshot in which physicalNode keeps only its first virtualNodeCount virtual
+   * nodes, dropping those with the highest indices. Returns this very snapshot if the node owns no
+   * more than that many; keeping none removes the node altogether.
+   */
+  RingSnapshot<N> truncate(final N physicalNode, final int virtualNodeCount) {
+    if (virtualNodeCount == 0) {
+      return remove(physicalNode);
+    }
+    final Integer ordinal = ordinalsByKey.get(physicalNode.getKey());
+    if (ordinal == null || index[ordinal].length <= virtualNodeCount) {
+      return this;
+    }
+    final long[] nodePositions = index[ordinal];
+    final long[][] retainedIndex = index.clone();
+    retainedIndex[ordinal] = Arrays.copyOf(nodePositions, virtualNodeCount);
+    return drop(ordinal,
+        Arrays.copyOfRange(nodePositions, virtualNodeCount, nodePositions.length), nodes,
+        retainedIndex, ordinalsByKey);
+  }
+
+  // drop the given positions of the node with the given ordinal from the ring
+  private RingSnapshot<N> drop(final int ordinal, final long[] droppedPositions,
+      final Node[] retainedTable, final long[][] retainedIndex,
+      final Map<String, Integer> retainedOrdinals) {
+    final long[] removals = droppedPositions.clone();
+    Arrays.sort(removals);
+
+    // pin down the exact ring index of each of the points; colliding points of other nodes share
+    // the position so we also match on the owner
+    final int[] dropped = new int[removals.length];
+    for (int iter = 0; iter < removals.length; iter++) {
+      int slot = searchCeiling(removals[iter]);
+      if (iter > 0 && removals[iter] == removals[iter - 1]) {
+        slot = dropped[iter - 1] + 1;
+      }
+      while (ordinals[slot] != ordinal) {
+        slot++;
+      }
+      dropped[iter] = slot;
+    }
+
+    final int retained = positions.length - dropped.length;
+    final long[] retainedPositions = new long[retained];
+    final int[] retainedOwners = new int[retained];
+    int source = 0;
+    int out = 0;
+    for (final int slot : dropped) {
+      final int run = slot - source;
+      System.arraycopy(positions, source, retainedPositions, out, run);
+      System.arraycopy(ordinals, source, retainedOwners, out, run);
+      out += run;
+      source = slot + 1;
+    }
+    System.arraycopy(positions, source, retainedPositions, out, positions.length - source);
+    System.arraycopy(ordinals, source, retainedOwners, out, positions.length - source);
+    return new RingSnapshot<>(retainedPositions, retainedOwners, retainedTable, retainedIndex,
+        retainedOrdinals, epoch + 1);
+  }
+
+  /**
+   * Derive a new snapshot applying many membership changes at once, in one merge pass over the
+   * ring: changed.get(i) keeps its first keep[i] virtual nodes and then gets added[i] appended as
+   * its next virtual node indices; keep[i] must not exceed the node's current count and added[i]
+   * must be empty unless it keeps them all. Nodes left without virtual nodes are removed. Changed
+   * nodes must be distinct. Existing points win ties; ties among additions go to the lower ordinal.
+   * Returns this very snapshot if nothing changes.
+   */
+  RingSnapshot<N> apply(final List<N> changed, final int[] keep, final long[][] added) {
+    final int[] changedOrdinals = new int[changed.size()];
+    int droppedCount = 0;
+    int addedCount = 0;
+    int tableLength = nodes.length;
+    // only ordinals free before this change are reused, so every old point keeps a sane owner
+    int free = 0;
+    for (int iter = 0; iter < changedOrdinals.length; iter++) {
+      final Integer ordinal = ordinalsByKey.get(changed.get(iter).getKey());
+      if (ordinal != null) {
+        changedOrdinals[iter] = ordinal;
+        droppedCount += index[ordinal].length - keep[iter];
+      } else if (added[iter].length > 0) {
+        while (free < nodes.length && nodes[free] != null) {
+          free++;
+        }
+        changedOrdinals[iter] = free < nodes.length ? free++ : tableLength++;
+      } else {
+        changedOrdinals[iter] = -1;
+      }
+      addedCount += added[iter].length;
+    }
+    if (droppedCount == 0 && addedCount == 0) {
+      return this;
+    }
+
+    final Node[] mergedTable = Arrays.copyOf(nodes, tableLength);
+    final long[][] mergedIndex = Arrays.copyOf(index, tableLength);
+    final Map<String, Integer> mergedOrdinals = new HashMap<>(ordinalsByKey);
+    final boolean[] removedOrdinals = new boolean[tableLength];
+    boolean[] droppedSlots = null;
+    final long[] addedPositions = new long[addedCount];
+    final int[] addedOwners = new int[addedCount];
+    int next = 0;
+    for (int iter = 0; iter < changedOrdinals.length; iter++) {
+      final int ordinal = changedOrdinals[iter];
+      if (ordinal < 0) {
+        continue;
+      }
+      final N physicalNode = changed.get(iter);
+      final long[] existing = ordinal < nodes.length && nodes[ordinal] != null ? index[ordinal]
+          : new long[0];
+      if (keep[iter] + added[iter].length == 0) {
+        mergedTable[ordinal] = null;
+        mergedIndex[ordinal] = null;
+        mergedOrdinals.remove(physicalNode.getKey());
+        removedOrdinals[ordinal] = true;
+        continue;
+      }
+      if (keep[iter] < existing.length) {
+        if (droppedSlots == null) {
+          droppedSlots = new boolean[positions.length];
+        }
+        markSlots(ordinal, Arrays.copyOfRange(existing, keep[iter], existing.length),
+            droppedSlots);
+      }
+      final long[] nodePositions = Arrays.copyOf(existing, keep[iter] + added[iter].length);
+      System.arraycopy(added[iter], 0, nodePositions, keep[iter], added[iter].length);
+      mergedTable[ordinal] = physicalNode;
+      mergedIndex[ordinal] = nodePositions;
+      mergedOrdinals.put(physicalNode.getKey(), ordinal);
+      for (final long position : added[iter]) {
+        addedPositions[next] = position;
+        addedOwners[next++] = ordinal;
+      }
+    }
+    Sorting.sort(addedPositions, addedOwners, 0, addedCount);
+    for (int start = 0, end = 1; end <= addedCount; end++) {
+      if (end == addedCount || addedPositions[end] != addedPositions[start]) {
+        Arrays.sort(addedOwners, start, end);
+        start = end;
+      }
+    }
+
+    // merge the surviving points with the sorted additions
+    final int total = positions.length - droppedCount + addedCount;
+    final long[] mergedPositions = new long[total];
+    final int[] mergedOwners = new int[total];
+    int source = 0;
+    int addition = 0;
+    int out = 0;
+    while (out < total) {
+      if (source < positions.length && (removedOrdinals[ordinals[source]]
+          || (droppedSlots != null && droppedSlots[source]))) {
+        source++;
+      } else if (addition == addedCount
+          || (source < positions.length && positions[source] <= addedPositions[addition])) {
+        mergedPositions[out] = positions[source];
+        mergedOwners[out++] = ordinals[source++];
+      } else {
+        mergedPositions[out] = addedPositions[addition];
+        mergedOwners[out++] = addedOwners[addition++];
+      }
+    }
+    return new RingSnapshot<>(mergedPositions, mergedOwners, mergedTable, mergedIndex,
+        mergedOrdinals, epoch + 1);
+  }
+
+  // flag the ring index of each of the given points of the node with the given ordinal
+  private void markSlots(final int ordinal, final long[] nodePositions, final boolean[] slots) {
+    final long[] sorted = nodePositions.clone();
+    Arrays.sort(sorted);
+    int previous = -1;
+    for (int iter = 0; iter < sorted.length; iter++) {
+      int slot = searchCeiling(sorted[iter]);
+      if (iter > 0 && sorted[iter] == sorted[iter - 1]) {
+        slot = previous + 1;
+      }
+      while (ordinals[slot] != ordinal) {
+        slot++;
+      }
+      slots[slot] = true;
+      previous = slot;
+    }
+  }
+
+  // index of the first position > hash at or after from, size() if there is none
+  private int searchHigher(final long hash, final int from) {
+    int low = from;
+    int high = positions.length - 1;
+    while (low <= high) {
+      final int mid = (low + high) >>> 1;
+      if (positions[mid] <= hash) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("RingSnapshot [virtualNodes:");
+    builder.append(positions.length);
+    builder.append(", physicalNodes:");
+    builder.append(physicalNodeCount());
+    builder.append(", positions:");
+    builder.append(positions.length <= 8 ? Arrays.toString(positions) : "...");
+    builder.append("]");
+    return builder.toString();
+  }
+
+}
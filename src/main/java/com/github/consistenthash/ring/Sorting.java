@@ -0,0 +1,79 @@
+package com.github.consistenthash.ring;
+
+/**
+ * Primitive sorting helpers. The JDK can sort a long[] but cannot carry a companion array along
+ * with it, which is what we need to keep ring positions and their owners (or batch hashes and their
+ * original slots) in step without boxing every element.
+ *
+ * @author gaurav
+ */
+final class Sorting {
+  private static final int INSERTION_SORT_THRESHOLD = 24;
+
+  private Sorting() {}
+
+  /**
+   * Sort keys[from, to) ascending, applying the same permutation to values[from, to).
+   */
+  static void sort(final long[] keys, final int[] values, int from, int to) {
+    while (to - from > INSERTION_SORT_THRESHOLD) {
+      final int mid = (from + to) >>> 1;
+      final long pivot = medianOfThree(keys[from], keys[mid], keys[to - 1]);
+      int lessThan = from, iter = from, greaterThan = to - 1;
+      // 3-way partition so that runs of equal hashes don't degrade us to quadratic
+      while (iter <= greaterThan) {
+        final long key = keys[iter];
+        if (key < pivot) {
+          swap(keys, values, lessThan++, iter++);
+        } else if (key > pivot) {
+          swap(keys, values, iter, greaterThan--);
+        } else {
+          iter++;
+        }
+      }
+      // recurse into the smaller half, loop on the larger one to bound stack depth
+      if (lessThan - from < to - greaterThan - 1) {
+        sort(keys, values, from, lessThan);
+        from = greaterThan + 1;
+      } else {
+        sort(keys, values, greaterThan + 1, to);
+        to = lessThan;
+      }
+    }
+    insertionSort(keys, values, from, to);
+  }
+
+  private static void insertionSort(final long[] keys, final int[] values, final int from,
+      final int to) {
+    for (int iter = from + 1; iter < to; iter++) {
+      final long key = keys[iter];
+      final int value = values[iter];
+      int slot = iter - 1;
+      while (slot >= from && keys[slot] > key) {
+        keys[slot + 1] = keys[slot];
+        values[slot + 1] = values[slot];
+        slot--;
+      }
+      keys[slot + 1] = key;
+      values[slot + 1] = value;
+    }
+  }
+
+  private static long medianOfThree(final long a, final long b, final long c) {
+    if (a < b) {
+      return b < c ? b : (a < c ? c : a);
+    }
+    return a < c ? a : (b < c ? c : b);
+  }
+
+  private static void swap(final long[] keys, final int[] values, final int left,
+      final int right) {
+    final long key = keys[left];
+    keys[left] = keys[right];
+    keys[right] = key;
+    final int value = values[left];
+    values[left] = values[right];
+    values[right] = value;
+  }
+
+}
@@ -6,26 +6,25 @@ package com.github.consistenthash.ring;
  * 
  * This is typically done to allow a wider spread of points on the ring.
  * 
+ * The ring itself only keeps a position and an owner ordinal per virtual node; instances of this
+ * class are views created on demand and derive their key when asked.
+ * 
  * @author gaurav
  */
 final class VirtualNode<N extends Node> implements Node {
   // to provide a better spread
-  private final char separator = '_';
+  static final char SEPARATOR = '_';
   private final N physicalNode;
   private final int virtualNodeIndex;
-  private final String key;
 
   VirtualNode(final N physicalNode, final int virtualNodeIndex) {
     this.virtualNodeIndex = virtualNodeIndex;
     this.physicalNode = physicalNode;
-
-    // pre-compute away
-    this.key = physicalNode.getKey() + separator + virtualNodeIndex;
   }
 
   @Override
   public String getKey() {
-    return key;
+    return RingSnapshot.virtualNodeKey(physicalNode, virtualNodeIndex);
   }
 
   // get physical node associated with this virtual node
@@ -33,6 +32,10 @@ final class VirtualNode<N extends Node> implements Node {
     return physicalNode;
   }
 
+  int getVirtualNodeIndex() {
+    return virtualNodeIndex;
+  }
+
   // check if the provided physical node has an association with this virtual node
   boolean isVirtualNodeOf(final N physicalNode) {
     return this.physicalNode.getKey().equals(physicalNode.getKey());
@@ -0,0 +1,335 @@
+package com.github.consistenthash.routing;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.github.consistenthash.hasher.HashFunction;
+import com.github.consistenthash.ring.MembershipListener;
+import com.github.consistenthash.ring.Node;
+import com.github.consistenthash.ring.RangeMove;
+import com.github.consistenthash.ring.RingConsistentHash;
+
+/**
+ * Routes (key, payload) operations to the nodes owning their keys on a ring and ships them in per
+ * node batches, so that callers pay one transport round trip per batch instead of one per key.
+ *
+ * Every submitted operation is resolved to its owner and queued for that node. A node's queue is
+ * sent as one batch via the transport as soon as it holds maxBatchSize operations, or maxBatchDelay
+ * after its first operation was queued, whichever comes first. Batches are sent on the given
+ * executor and the operations' futures complete once the transport returns.
+ *
+ * When the ring's membership changes, queued operations on ranges that moved are requeued to their
+ * new owners; batches already handed to the transport are not recalled.
+ *
+ * @author gaurav
+ */
+public final class BatchingRouter<N extends Node, P, R> implements AutoCloseable {
+  private static final Logger logger = LogManager.getLogger(BatchingRouter.class.getSimpleName());
+  public static final int DEFAULT_MAX_BATCH_SIZE = 64;
+  public static final long DEFAULT_MAX_BATCH_DELAY_MICROS = 500L;
+
+  private final RingConsistentHash<N> ring;
+  private final HashFunction hashFunction;
+  private final Transport<N, P, R> transport;
+  private final Executor executor;
+  private final int maxBatchSize;
+  private final long maxBatchDelayNanos;
+
+  // fires time-bounded flushes, the batches themselves are sent on the executor
+  private final ScheduledThreadPoolExecutor timer;
+  private final MembershipListener<N> requeuer = this::requeue;
+  // pending operations by owner node key
+  private final ConcurrentMap<String, NodeQueue<N, P, R>> queues = new ConcurrentHashMap<>();
+  private final AtomicLong batchCount = new AtomicLong();
+  private final AtomicLong requeuedCount = new AtomicLong();
+  private volatile boolean closed;
+
+  public BatchingRouter(final RingConsistentHash<N> ring, final Transport<N, P, R> transport,
+      final Executor executor) {
+    this(ring, transport, executor, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_BATCH_DELAY_MICROS,
+        TimeUnit.MICROSECONDS);
+  }
+
+  /**
+   * Route over the given ring, sending batches of at most maxBatchSize operations, held back no
+   * longer than maxBatchDelay, via transport on executor.
+   */
+  public BatchingRouter(final RingConsistentHash<N> ring, final Transport<N, P, R> transport,
+      final Executor executor, final int maxBatchSize, final long maxBatchDelay,
+      final TimeUnit unit) {
+    if (maxBatchSize < 1) {
+      throw new IllegalArgumentException(
+          String.format("%d is not a valid batch size", maxBatchSize));
+    }
+    if (maxBatchDelay < 0L) {
+      throw new IllegalArgumentException(
+          String.format("%d is not a valid batch delay", maxBatchDelay));
+    }
+    this.ring = ring;
+    this.hashFunction = ring.getHashFunction();
+    this.transport = transport;
+    this.executor = executor;
+    this.maxBatchSize = maxBatchSize;
+    this.maxBatchDelayNanos = unit.toNanos(maxBatchDelay);
+    this.timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+      final Thread thread = new Thread(runnable, "batching-router-timer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    timer.setRemoveOnCancelPolicy(true);
+    ring.addMembershipListener(requeuer);
+  }
+
+  /**
+   * Queue the operation for the node owning key. The future fails with an IllegalStateException if
+   * the ring has no nodes, and with the transport's exception if its batch cannot be sent.
+   */
+  public CompletableFuture<R> submit(final String key, final P payload) {
+    if (closed) {
+      throw new IllegalStateException("Router is closed");
+    }
+    final Operation<P, R> operation = new Operation<>(key, hashFunction.hash(key), payload);
+    route(operation);
+    return operation.future;
+  }
+
+  private void route(final Operation<P, R> operation) {
+    while (true) {
+      final long epoch = ring.getEpoch();
+      final N owner = ring.chooseNodeByHash(operation.hash);
+      if (owner == null) {
+        operation.future.completeExceptionally(
+            new IllegalStateException(String.format("No node to route %s to", operation.key)));
+        return;
+      }
+      final NodeQueue<N, P, R> queue =
+          queues.computeIfAbsent(owner.getKey(), nodeKey -> new NodeQueue<>(owner));
+      List<Operation<P, R>> batch = null;
+      synchronized (queue) {
+        // re-check under the queue's lock: a membership change published since the lookup above
+        // either bumped the epoch seen here, or requeues this operation once it gets the lock
+        if (queue.retired || ring.getEpoch() != epoch) {
+          continue;
+        }
+        queue.pending.add(operation);
+        if (queue.pending.size() >= maxBatchSize) {
+          batch = queue.take();
+        } else if (queue.flush == null) {
+          try {
+            queue.flush = timer.schedule(() -> flush(queue), maxBatchDelayNanos,
+                TimeUnit.NANOSECONDS);
+          } catch (RejectedExecutionException closing) {
+            // raced with close(), which no longer flushes on a timer
+            batch = queue.take();
+          }
+        }
+      }
+      if (batch != null) {
+        dispatch(queue.node, batch);
+      }
+      return;
+    }
+  }
+
+  private void flush(final NodeQueue<N, P, R> queue) {
+    final List<Operation<P, R>> batch;
+    synchronized (queue) {
+      if (queue.pending.isEmpty()) {
+        return;
+      }
+      batch = queue.take();
+    }
+    dispatch(queue.node, batch);
+  }
+
+  private void dispatch(final N node, final List<Operation<P, R>> batch) {
+    batchCount.incrementAndGet();
+    try {
+      executor.execute(() -> send(node, batch));
+    } catch (RejectedExecutionException problem) {
+      fail(batch, problem);
+    }
+  }
+
+  private void send(final N node, final List<Operation<P, R>> batch) {
+    final List<String> keys = new ArrayList<>(batch.size());
+    final List<P> payloads = new ArrayList<>(batch.size());
+    for (final Operation<P, R> operation : batch) {
+      keys.add(operation.key);
+      payloads.add(operation.payload);
+    }
+    final List<R> results;
+    try {
+      results = transport.send(node, keys, payloads);
+    } catch (IOException | RuntimeException problem) {
+      logger.warn("Failed to send batch of {} to {}", batch.size(), node, problem);
+      fail(batch, problem);
+      return;
+    }
+    if (results == null || results.size() != batch.size()) {
+      fail(batch, new IllegalStateException(String.format(
+          "%s returned %d results for a batch of %d", node,
+          results == null ? 0 : results.size(), batch.size())));
+      return;
+    }
+    for (int iter = 0; iter < batch.size(); iter++) {
+      batch.get(iter).future.complete(results.get(iter));
+    }
+  }
+
+  private static <P, R> void fail(final List<Operation<P, R>> batch, final Throwable problem) {
+    for (final Operation<P, R> operation : batch) {
+      operation.future.completeExceptionally(problem);
+    }
+  }
+
+  // runs on the ring's writer thread once the new ring is published, see MembershipListener
+  private void requeue(final long epoch, final List<RangeMove<N>> moves) {
+    final Set<String> losers = new HashSet<>();
+    for (final RangeMove<N> move : moves) {
+      if (move.getOldOwner() != null) {
+        losers.add(move.getOldOwner().getKey());
+      }
+    }
+    for (final String loser : losers) {
+      final NodeQueue<N, P, R> queue = queues.get(loser);
+      if (queue == null) {
+        continue;
+      }
+      final List<Operation<P, R>> moved = new ArrayList<>();
+      synchronized (queue) {
+        final Iterator<Operation<P, R>> pending = queue.pending.iterator();
+        while (pending.hasNext()) {
+          final Operation<P, R> operation = pending.next();
+          final N owner = ring.chooseNodeByHash(operation.hash);
+          if (owner == null || !owner.getKey().equals(loser)) {
+            pending.remove();
+            moved.add(operation);
+          }
+        }
+        if (ring.getVirtualNodeCount(queue.node) == 0) {
+          // the node left the ring, route anything new through a fresh queue should it come back
+          queue.retired = true;
+          queues.remove(loser, queue);
+        }
+        if (queue.pending.isEmpty() && queue.flush != null) {
+          queue.flush.cancel(false);
+          queue.flush = null;
+        }
+      }
+      if (!moved.isEmpty()) {
+        logger.info("Requeueing {} operations off {} at epoch {}", moved.size(), queue.node,
+            epoch);
+        requeuedCount.addAndGet(moved.size());
+        for (final Operation<P, R> operation : moved) {
+          route(operation);
+        }
+      }
+    }
+  }
+
+  /**
+   * Operations queued and not yet handed to the transport.
+   */
+  public int getPendingCount() {
+    int pending = 0;
+    for (final NodeQueue<N, P, R> queue : queues.values()) {
+      synchronized (queue) {
+        pending += queue.pending.size();
+      }
+    }
+    return pending;
+  }
+
+  public long getBatchCount() {
+    return batchCount.get();
+  }
+
+  /**
+   * Operations moved to another node's queue by membership changes so far.
+   */
+  public long getRequeuedCount() {
+    return requeuedCount.get();
+  }
+
+  /**
+   * Stop accepting operations, send every queued one right away and stop following the ring.
+   * Does not wait for the batches to come back.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    ring.removeMembershipListener(requeuer);
+    for (final NodeQueue<N, P, R> queue : queues.values()) {
+      flush(queue);
+    }
+    timer.shutdownNow();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("BatchingRouter [maxBatchSize:");
+    builder.append(maxBatchSize);
+    builder.append(", maxBatchDelayNanos:");
+    builder.append(maxBatchDelayNanos);
+    builder.append(", batches:");
+    builder.append(batchCount.get());
+    builder.append(", requeued:");
+    builder.append(requeuedCount.get());
+    builder.append("]");
+    return builder.toString();
+  }
+
+  private static final class Operation<P, R> {
+    private final String key;
+    private final long hash;
+    private final P payload;
+    private final CompletableFuture<R> future = new CompletableFuture<>();
+
+    private Operation(final String key, final long hash, final P payload) {
+      this.key = key;
+      this.hash = hash;
+      this.payload = payload;
+    }
+  }
+
+  // guarded by its own monitor
+  private static final class NodeQueue<N extends Node, P, R> {
+    private final N node;
+    private List<Operation<P, R>> pending = new ArrayList<>();
+    private ScheduledFuture<?> flush;
+    private boolean retired;
+
+    private NodeQueue(final N node) {
+      this.node = node;
+    }
+
+    private List<Operation<P, R>> take() {
+      final List<Operation<P, R>> batch = pending;
+      pending = new ArrayList<>();
+      if (flush != null) {
+        flush.cancel(false);
+        flush = null;
+      }
+      return batch;
+    }
+  }
+
+}
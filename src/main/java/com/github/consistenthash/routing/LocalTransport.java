@@ -0,0 +1,51 @@
+package com.github.consistenthash.routing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.consistenthash.ring.Node;
+
+/**
+ * In-process transport that hands every operation straight to a handler, for tests and for
+ * co-located nodes.
+ *
+ * @author gaurav
+ */
+public final class LocalTransport<N extends Node, P, R> implements Transport<N, P, R> {
+  private final Handler<N, P, R> handler;
+  private final AtomicLong batchCount = new AtomicLong();
+  private final AtomicLong operationCount = new AtomicLong();
+
+  public LocalTransport(final Handler<N, P, R> handler) {
+    this.handler = handler;
+  }
+
+  @Override
+  public List<R> send(final N node, final List<String> keys, final List<P> payloads) {
+    batchCount.incrementAndGet();
+    operationCount.addAndGet(keys.size());
+    final List<R> results = new ArrayList<>(keys.size());
+    for (int iter = 0; iter < keys.size(); iter++) {
+      results.add(handler.handle(node, keys.get(iter), payloads.get(iter)));
+    }
+    return results;
+  }
+
+  public long getBatchCount() {
+    return batchCount.get();
+  }
+
+  public long getOperationCount() {
+    return operationCount.get();
+  }
+
+  /**
+   * Serves a single operation on the node it was routed to.
+   */
+  @FunctionalInterface
+  public interface Handler<N extends Node, P, R> {
+    R handle(final N node, final String key, final P payload);
+  }
+
+}
@@ -0,0 +1,22 @@
+package com.github.consistenthash.routing;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.github.consistenthash.ring.Node;
+
+/**
+ * Pluggable transport that ships a batch of operations to the node owning their keys, eg. as one
+ * RPC per batch.
+ *
+ * @author gaurav
+ */
+public interface Transport<N extends Node, P, R> {
+  /**
+   * Send one batch to node and return one result per operation, in the order of keys. Called on
+   * the router's executor, so it may block; it is never called concurrently for the same batch but
+   * may be for different batches, to the same node or not.
+   */
+  List<R> send(final N node, final List<String> keys, final List<P> payloads) throws IOException;
+
+}
@@ -0,0 +1,315 @@
+package com.github.consistenthash.topology;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.github.consistenthash.hasher.HashFunction;
+import com.github.consistenthash.hasher.XXHash64HashFunction;
+import com.github.consistenthash.ring.Node;
+import com.github.consistenthash.ring.RingConsistentHash;
+
+/**
+ * Topology aware placement over nodes labelled with hierarchical failure domains, eg. region, zone
+ * and rack (see Node.getFailureDomains()).
+ *
+ * Every domain holds its own consistent hash ring: of its child domains, or of its nodes at the
+ * innermost level. A lookup walks down one ring per level, so it costs O(log n) per level, and the
+ * key's hash is computed once and remixed per level so that the levels place independently. A
+ * domain gets virtualNodeCount points in its parent's ring for every node it holds, keeping load
+ * per node even when domains differ in size.
+ *
+ * Replicas are spread as widely as possible at every level: R replicas go to R distinct domains
+ * when there are that many, and are otherwise dealt out round-robin across all domains, within
+ * each recursively, only ever placing two replicas in one domain when there is no other domain
+ * with a node to spare.
+ *
+ * Lookups never lock. A removal unlinks and empties domains one ring at a time, so a lookup that
+ * raced it into a domain that has since been emptied walks again from the root.
+ *
+ * Keeping load per node even across domains costs extra key movement. Removing a node shrinks its
+ * domain's share in every parent ring, and the keys the domain gives up are drawn from all of its
+ * nodes, not only from the node leaving. They leave the domain altogether, while the departed
+ * node's own remaining keys move to its siblings. Removing one of six nodes spread over two zones
+ * of three racks moves about 28% of keys, for example, against the 17% that node owned. Adding a
+ * node moves keys the same way in reverse.
+ *
+ * @author gaurav
+ */
+public final class HierarchicalConsistentHash<N extends Node> {
+  private static final Logger logger =
+      LogManager.getLogger(HierarchicalConsistentHash.class.getSimpleName());
+  public static final int DEFAULT_VIRTUAL_NODE_COUNT = 100;
+  private static final char PATH_SEPARATOR = '/';
+
+  private final HashFunction hashFunction;
+  private final int levels;
+  private final int virtualNodeCount;
+  private final Domain<N> root;
+
+  // writers serialize among themselves on this lock, readers only ever walk the rings
+  private final ReentrantLock writeLock = new ReentrantLock(true);
+  private final Map<String, N> nodes = new HashMap<>();
+
+  /**
+   * Hierarchy with the given number of failure domain levels; every node must carry exactly that
+   * many failure domain labels.
+   */
+  public HierarchicalConsistentHash(final int levels) {
+    this(new XXHash64HashFunction(), levels, DEFAULT_VIRTUAL_NODE_COUNT);
+  }
+
+  public HierarchicalConsistentHash(final HashFunction hashFunction, final int levels,
+      final int virtualNodeCount) {
+    if (levels < 1) {
+      throw new IllegalArgumentException(
+          String.format("%d is not a valid failure domain level count", levels));
+    }
+    if (virtualNodeCount < 1) {
+      throw new IllegalArgumentException(
+          String.format("%d is not a valid virtual node count", virtualNodeCount));
+    }
+    this.hashFunction = hashFunction;
+    this.levels = levels;
+    this.virtualNodeCount = virtualNodeCount;
+    this.root = new Domain<>("", false, hashFunction);
+  }
+
+  /**
+   * Add the node under its failure domains, creating any domain seen for the first time. Returns
+   * false if a node with the same key is already present.
+   */
+  public boolean addNode(final N node) {
+    final List<String> labels = checkLabels(node);
+    logger.info("Adding {}", node);
+    writeLock.lock();
+    try {
+      if (nodes.containsKey(node.getKey())) {
+        return false;
+      }
+      final List<Domain<N>> path = new ArrayList<>(levels + 1);
+      path.add(root);
+      for (int level = 0; level < levels; level++) {
+        final Domain<N> parent = path.get(level);
+        final String label = labels.get(level);
+        Domain<N> child = parent.children.get(label);
+        if (child == null) {
+          child = new Domain<>(parent.key + PATH_SEPARATOR + label, level + 1 == levels,
+              hashFunction);
+          parent.children.put(label, child);
+        }
+        path.add(child);
+      }
+      // bottom-up, so that a domain only ever shows up in its parent's ring once it has a node
+      path.get(levels).nodeRing.addNode(node, virtualNodeCount);
+      for (int level = levels - 1; level >= 0; level--) {
+        final Domain<N> child = path.get(level + 1);
+        path.get(level).domainRing.addNode(child, virtualNodeCount);
+        child.nodeCount++;
+      }
+      root.nodeCount++;
+      nodes.put(node.getKey(), node);
+    } finally {
+      writeLock.unlock();
+    }
+    return true;
+  }
+
+  /**
+   * Drop the node, and any domain left without nodes. Returns false if the node is not present.
+   */
+  public boolean removeNode(final N node) {
+    logger.info("Dropping {}", node);
+    writeLock.lock();
+    try {
+      final N existing = nodes.remove(node.getKey());
+      if (existing == null) {
+        return false;
+      }
+      final List<String> labels = existing.getFailureDomains();
+      // top-down, so that an emptied domain leaves its parent's ring before it loses its last node
+      Domain<N> parent = root;
+      parent.nodeCount--;
+      for (int level = 0; level < levels; level++) {
+        final Domain<N> child = parent.children.get(labels.get(level));
+        child.nodeCount--;
+        if (child.nodeCount == 0) {
+          parent.domainRing.removeNode(child);
+          parent.children.remove(labels.get(level));
+        } else {
+          // drops only the domain's highest index points, so only their keys leave the domain
+          parent.domainRing.setVirtualNodeCount(child, virtualNodeCount * child.nodeCount);
+        }
+        parent = child;
+      }
+      parent.nodeRing.removeNode(existing);
+    } finally {
+      writeLock.unlock();
+    }
+    return true;
+  }
+
+  /**
+   * Choose the node for the key: a domain at every level, then a node within the innermost one.
+   * Returns null only if there are no nodes.
+   */
+  public N chooseNode(final String key) {
+    final long hash = hashFunction.hash(key);
+    while (true) {
+      Domain<N> domain = root;
+      for (int level = 0; level < levels && domain != null; level++) {
+        domain = domain.domainRing.chooseNodeByHash(mix(hash, level));
+      }
+      final N node = domain == null ? null : domain.nodeRing.chooseNodeByHash(mix(hash, levels));
+      // a removal can empty a domain this walk already descended into; domains are unlinked from
+      // their parent before they are emptied, so walking again from the root gets past it
+      if (node != null || root.nodeCount == 0) {
+        return node;
+      }
+    }
+  }
+
+  /**
+   * Choose up to replicas distinct nodes for the key, spread across as many failure domains as
+   * possible at every level. The first node is always chooseNode(key). Fewer than replicas nodes
+   * are returned only if there are fewer nodes in total.
+   */
+  public List<N> chooseNodes(final String key, final int replicas) {
+    if (replicas < 1) {
+      throw new IllegalArgumentException(
+          String.format("%d is not a valid replica count", replicas));
+    }
+    final long hash = hashFunction.hash(key);
+    while (true) {
+      final List<N> chosen = new ArrayList<>(replicas);
+      place(root, hash, 0, replicas, chosen);
+      // walk again if a concurrent removal emptied a domain under this one, see chooseNode()
+      if (chosen.size() >= Math.min(replicas, root.nodeCount)) {
+        return chosen;
+      }
+    }
+  }
+
+  private void place(final Domain<N> domain, final long hash, final int level, final int replicas,
+      final List<N> chosen) {
+    if (domain.nodeRing != null) {
+      chosen.addAll(domain.nodeRing.chooseNodesByHash(mix(hash, level), replicas));
+      return;
+    }
+    final long levelHash = mix(hash, level);
+    List<Domain<N>> children = domain.domainRing.chooseNodesByHash(levelHash, replicas);
+    if (children.isEmpty()) {
+      return;
+    }
+    int[] shares = share(children, replicas);
+    if (shares == null) {
+      // the first few domains cannot hold every replica, widen to all of them
+      children = domain.domainRing.chooseNodesByHash(levelHash,
+          domain.domainRing.getTotalPhysicalNodeCount());
+      shares = share(children, replicas);
+      if (shares == null) {
+        shares = new int[children.size()];
+        for (int iter = 0; iter < shares.length; iter++) {
+          shares[iter] = children.get(iter).nodeCount;
+        }
+      }
+    }
+    for (int iter = 0; iter < children.size(); iter++) {
+      if (shares[iter] > 0) {
+        place(children.get(iter), hash, level + 1, shares[iter], chosen);
+      }
+    }
+  }
+
+  // deal replicas out round-robin over domains with nodes to spare, null if they run out
+  private static <N extends Node> int[] share(final List<Domain<N>> children,
+      final int replicas) {
+    final int[] shares = new int[children.size()];
+    int dealt = 0;
+    boolean spare = true;
+    while (dealt < replicas && spare) {
+      spare = false;
+      for (int iter = 0; iter < shares.length && dealt < replicas; iter++) {
+        if (shares[iter] < children.get(iter).nodeCount) {
+          shares[iter]++;
+          dealt++;
+          spare = true;
+        }
+      }
+    }
+    return dealt == replicas ? shares : null;
+  }
+
+  // fmix64 of the hash offset per level, so that each level's choice is independent
+  private static long mix(final long hash, final int level) {
+    long mixed = hash + level * 0x9E3779B97F4A7C15L;
+    mixed = (mixed ^ (mixed >>> 33)) * 0xFF51AFD7ED558CCDL;
+    mixed = (mixed ^ (mixed >>> 33)) * 0xC4CEB9FE1A85EC53L;
+    return mixed ^ (mixed >>> 33);
+  }
+
+  private List<String> checkLabels(final N node) {
+    final List<String> labels = node.getFailureDomains();
+    if (labels.size() != levels) {
+      throw new IllegalArgumentException(String.format(
+          "%s has %d failure domains, expected %d", node, labels.size(), levels));
+    }
+    for (final String label : labels) {
+      if (label == null || label.indexOf(PATH_SEPARATOR) >= 0) {
+        throw new IllegalArgumentException(
+            String.format("%s is not a valid failure domain label", label));
+      }
+    }
+    return labels;
+  }
+
+  public int getNodeCount() {
+    return root.nodeCount;
+  }
+
+  public int getLevelCount() {
+    return levels;
+  }
+
+  /**
+   * A failure domain, itself a node on its parent's ring keyed by its full path.
+   */
+  private static final class Domain<N extends Node> implements Node {
+    private final String key;
+    // child domains, except at the innermost level which holds the nodes instead
+    private final RingConsistentHash<Domain<N>> domainRing;
+    private final RingConsistentHash<N> nodeRing;
+    // only touched by writers
+    private final Map<String, Domain<N>> children = new HashMap<>();
+    // written by writers, read by lookups to spread replicas
+    private volatile int nodeCount;
+
+    private Domain(final String key, final boolean innermost, final HashFunction hashFunction) {
+      this.key = key;
+      this.domainRing = innermost ? null : new RingConsistentHash<>(hashFunction);
+      this.nodeRing = innermost ? new RingConsistentHash<>(hashFunction) : null;
+    }
+
+    @Override
+    public String getKey() {
+      return key;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder builder = new StringBuilder();
+      builder.append("Domain [key:");
+      builder.append(key);
+      builder.append(", nodeCount:");
+      builder.append(nodeCount);
+      builder.append("]");
+      return builder.toString();
+    }
+  }
+
+}
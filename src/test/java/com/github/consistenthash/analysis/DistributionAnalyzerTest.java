@@ -0,0 +1,153 @@
+package com.github.consistenthash.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Test;
+
+import com.github.consistenthash.hasher.HashFunction;
+import com.github.consistenthash.hasher.Murmur3HashFunction;
+import com.github.consistenthash.hasher.XXHash64HashFunction;
+import com.github.consistenthash.jump.JumpConsistentHash;
+import com.github.consistenthash.ring.Node;
+import com.github.consistenthash.ring.PhysicalNode;
+import com.github.consistenthash.ring.RingConsistentHash;
+
+/**
+ * Tests for ensuring correctness of the distribution analyzer.
+ * 
+ * @author gaurav
+ */
+public class DistributionAnalyzerTest {
+  private static final Logger logger =
+      LogManager.getLogger(DistributionAnalyzerTest.class.getSimpleName());
+
+  @Test
+  public void testRingDistributionAndMovement() {
+    final RingConsistentHash<PhysicalNode> consistentHash = new RingConsistentHash<>();
+    final List<PhysicalNode> nodes = new ArrayList<>();
+    for (int iter = 0; iter < 20; iter++) {
+      final PhysicalNode node = new PhysicalNode();
+      nodes.add(node);
+      assertTrue(consistentHash.addNode(node, 100));
+    }
+    final Function<String, PhysicalNode> before = consistentHash.placementSnapshot();
+    final List<PhysicalNode> allNodes = new ArrayList<>(nodes);
+    for (int iter = 0; iter < 5; iter++) {
+      final PhysicalNode node = new PhysicalNode();
+      allNodes.add(node);
+      assertTrue(consistentHash.addNode(node, 100));
+    }
+
+    final int keyCount = 1_000_000;
+    final DistributionAnalyzer<PhysicalNode> analyzer = new DistributionAnalyzer<>(allNodes);
+    final Distribution<PhysicalNode> distribution =
+        analyzer.analyze(consistentHash::chooseNode, keyCount);
+    logger.info(distribution);
+    assertEquals(keyCount, distribution.getKeyCount());
+    assertEquals(0, distribution.getUnplacedKeyCount());
+    assertEquals(keyCount / 25.0d, distribution.getMean(), 0.001d);
+    assertTrue(distribution.getMaxToMean() < 1.5d);
+    assertTrue(distribution.getStandardDeviation() > 0.0d);
+
+    // going from 20 to 25 nodes should move about a fifth of the keys, all onto the new nodes
+    final KeyMovement<PhysicalNode> movement =
+        analyzer.compare(before, consistentHash::chooseNode, keyCount);
+    logger.info(movement);
+    assertTrue(Math.abs(movement.getMovedFraction() - 0.2d) < 0.05d);
+    long newNodeKeys = 0;
+    for (int iter = 20; iter < 25; iter++) {
+      assertEquals(0, movement.getBefore().getLoad(iter));
+      newNodeKeys += movement.getAfter().getLoad(iter);
+    }
+    assertEquals(movement.getMovedKeyCount(), newNodeKeys);
+  }
+
+  @Test
+  public void testHashPlacementAcrossHashFunctions() {
+    final List<PhysicalNode> buckets = new ArrayList<>();
+    for (int iter = 0; iter < 16; iter++) {
+      buckets.add(new PhysicalNode());
+    }
+    final DistributionAnalyzer<PhysicalNode> analyzer = new DistributionAnalyzer<>(buckets);
+    for (HashFunction hashFunction : new HashFunction[] {new XXHash64HashFunction(),
+        new Murmur3HashFunction()}) {
+      final Distribution<PhysicalNode> distribution = analyzer.analyzeHashes(
+          hash -> buckets.get(JumpConsistentHash.bucket(hash, buckets.size())), hashFunction,
+          DistributionAnalyzer::key, 500_000);
+      logger.info(distribution);
+      assertTrue(distribution.getMaxToMean() < 1.05d);
+    }
+  }
+
+  @Test
+  public void testKeyCollectionsAndStreams() {
+    final RingConsistentHash<PhysicalNode> consistentHash = new RingConsistentHash<>();
+    final List<PhysicalNode> nodes = new ArrayList<>();
+    for (int iter = 0; iter < 10; iter++) {
+      final PhysicalNode node = new PhysicalNode();
+      nodes.add(node);
+      assertTrue(consistentHash.addNode(node, 100));
+    }
+    final List<String> keys = new ArrayList<>();
+    for (int iter = 0; iter < 200_000; iter++) {
+      keys.add(UUID.randomUUID().toString());
+    }
+    final DistributionAnalyzer<PhysicalNode> analyzer = new DistributionAnalyzer<>(nodes);
+    final Distribution<PhysicalNode> distribution =
+        analyzer.analyze(consistentHash::chooseNode, keys);
+    logger.info(distribution);
+    assertEquals(keys.size(), distribution.getKeyCount());
+    assertEquals(0, distribution.getUnplacedKeyCount());
+    assertEquals(distribution.getLoads(),
+        analyzer.analyze(consistentHash::chooseNode, keys.stream()).getLoads());
+
+    // placements returning other instances of the same nodes are matched by key
+    final Function<String, PhysicalNode> before = consistentHash.placementSnapshot();
+    final Function<String, Node> copies = key -> {
+      final String nodeKey = consistentHash.chooseNode(key).getKey();
+      return () -> nodeKey;
+    };
+    final DistributionAnalyzer<Node> copyAnalyzer = new DistributionAnalyzer<>(nodes);
+    assertEquals(0, copyAnalyzer.compare(before::apply, copies, keys).getMovedKeyCount());
+
+    final PhysicalNode dropped = nodes.get(3);
+    assertTrue(consistentHash.removeNode(dropped));
+    final KeyMovement<PhysicalNode> movement =
+        analyzer.compare(before, consistentHash::chooseNode, keys.stream());
+    logger.info(movement);
+    assertEquals(distribution.getLoad(3), movement.getMovedKeyCount());
+    assertEquals(0, movement.getAfter().getLoad(3));
+  }
+
+  @Test
+  public void testDuplicateNodesAreRejected() {
+    final PhysicalNode node = new PhysicalNode();
+    final Node copy = () -> node.getKey();
+    try {
+      new DistributionAnalyzer<>(Arrays.asList(node, copy));
+      fail("expected a node listed twice to be rejected");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test
+  public void testUnplacedKeys() {
+    final List<PhysicalNode> nodes = new ArrayList<>();
+    nodes.add(new PhysicalNode());
+    final Distribution<PhysicalNode> distribution =
+        new DistributionAnalyzer<>(nodes).analyze(key -> null, 1_000);
+    assertEquals(1_000, distribution.getUnplacedKeyCount());
+    assertEquals(0, distribution.getMax());
+  }
+
+}
@@ -0,0 +1,112 @@
+package com.github.consistenthash.anchor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Test;
+
+import com.github.consistenthash.ring.PhysicalNode;
+
+/**
+ * Tests for ensuring correctness of anchor consistent hasher.
+ * 
+ * @author gaurav
+ */
+public class AnchorConsistentHashTest {
+  private static final Logger logger =
+      LogManager.getLogger(AnchorConsistentHashTest.class.getSimpleName());
+
+  @Test
+  public void testArbitraryRemovalAndLifoRestore() {
+    final AnchorConsistentHash<PhysicalNode> anchor = new AnchorConsistentHash<>(100);
+    assertNull(anchor.chooseNode("key"));
+    assertEquals(-1, anchor.chooseBucket("key"));
+    final List<PhysicalNode> nodes = new ArrayList<>();
+    for (int iter = 0; iter < 40; iter++) {
+      final PhysicalNode node = new PhysicalNode();
+      nodes.add(node);
+      assertEquals(iter, anchor.addNode(node));
+    }
+    assertEquals(40, anchor.getNodeCount());
+
+    final int keyCount = 100_000;
+    final PhysicalNode[] before = new PhysicalNode[keyCount];
+    final Map<PhysicalNode, Integer> loads = new HashMap<>();
+    for (int iter = 0; iter < keyCount; iter++) {
+      before[iter] = anchor.chooseNode("key_" + iter);
+      loads.merge(before[iter], 1, Integer::sum);
+    }
+    assertEquals(40, loads.size());
+    for (int load : loads.values()) {
+      assertTrue(Math.abs(load - 2_500) < 300);
+    }
+
+    // fail random nodes, keys only ever move off them and spread over the survivors
+    final List<PhysicalNode> failed = new ArrayList<>(nodes);
+    Collections.shuffle(failed, new Random(5));
+    failed.subList(10, failed.size()).clear();
+    final PhysicalNode[] degraded = new PhysicalNode[keyCount];
+    for (PhysicalNode node : failed) {
+      assertTrue(anchor.removeNode(node));
+    }
+    assertFalse(anchor.removeNode(failed.get(0)));
+    assertEquals(30, anchor.getNodeCount());
+    int moved = 0;
+    for (int iter = 0; iter < keyCount; iter++) {
+      degraded[iter] = anchor.chooseNode("key_" + iter);
+      assertFalse(failed.contains(degraded[iter]));
+      if (degraded[iter] != before[iter]) {
+        assertTrue(failed.contains(before[iter]));
+        moved++;
+      }
+    }
+    logger.info(String.format("%d of %d keys moved after failing 10 of 40 nodes", moved,
+        keyCount));
+
+    // restoring in reverse order of failure brings back the original placement exactly
+    for (int iter = failed.size() - 1; iter >= 0; iter--) {
+      anchor.addNode(failed.get(iter));
+    }
+    for (int iter = 0; iter < keyCount; iter++) {
+      assertSame(before[iter], anchor.chooseNode("key_" + iter));
+    }
+  }
+
+  @Test
+  public void testReplacementTakesOverBucket() {
+    final AnchorConsistentHash<PhysicalNode> anchor = new AnchorConsistentHash<>(16);
+    final List<PhysicalNode> nodes = new ArrayList<>();
+    for (int iter = 0; iter < 8; iter++) {
+      final PhysicalNode node = new PhysicalNode();
+      nodes.add(node);
+      anchor.addNode(node);
+    }
+    final PhysicalNode failed = nodes.get(3);
+    assertTrue(anchor.removeNode(failed));
+    assertNull(anchor.getNode(3));
+    final PhysicalNode replacement = new PhysicalNode();
+    assertEquals(3, anchor.addNode(replacement));
+    assertSame(replacement, anchor.getNode(3));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testCapacityExhausted() {
+    final AnchorConsistentHash<PhysicalNode> anchor = new AnchorConsistentHash<>(2);
+    anchor.addNode(new PhysicalNode());
+    anchor.addNode(new PhysicalNode());
+    anchor.addNode(new PhysicalNode());
+  }
+
+}
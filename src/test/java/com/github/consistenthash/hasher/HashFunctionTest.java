@@ -0,0 +1,177 @@
+package com.github.consistenthash.hasher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Tests for ensuring correctness and input-flavor consistency of the hash functions.
+ * 
+ * @author gaurav
+ */
+public class HashFunctionTest {
+  private final HashFunction[] hashFunctions = {new MD5HashFunction(),
+      new XXHash64HashFunction(), new Murmur3HashFunction(), new WyHashFunction()};
+
+  @Test
+  public void testXXHash64ReferenceVectors() {
+    final HashFunction xxHash = new XXHash64HashFunction();
+    assertEquals(0xEF46DB3751D8E999L, xxHash.hash(""));
+    assertEquals(0x44BC2CF5AD770999L, xxHash.hash("abc"));
+  }
+
+  @Test
+  public void testMurmur3ReferenceVectors() {
+    final HashFunction murmur3 = new Murmur3HashFunction();
+    assertEquals(0L, murmur3.hash(""));
+    assertEquals(0xE34BBC7BBC071B6CL,
+        murmur3.hash("The quick brown fox jumps over the lazy dog"));
+  }
+
+  @Test
+  public void testWyHashReferenceVectors() {
+    // test_vector.cpp of wyhash final version 4, hashed with seed i for the i-th message
+    final String[] messages = {"", "a", "abc", "message digest", "abcdefghijklmnopqrstuvwxyz",
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789",
+        "12345678901234567890123456789012345678901234567890123456789012345678901234567890"};
+    final long[] expected = {0x93228A4DE0EEC5A2L, 0xC5BAC3DB178713C4L, 0xA97F2F7B1D9B3314L,
+        0x786D1F1DF3801DF4L, 0xDCA5A8138AD37C87L, 0xB9E734F117CFAF70L, 0x6CC5EAB49A92D617L};
+    for (int seed = 0; seed < messages.length; seed++) {
+      assertEquals(messages[seed], expected[seed], new WyHashFunction(seed).hash(messages[seed]));
+    }
+  }
+
+  @Test
+  public void testMD5UsesLeadingDigestBytes() {
+    // md5("") = d41d8cd98f00b204e9800998ecf8427e
+    assertEquals(0xD41D8CD98F00B204L, new MD5HashFunction().hash(""));
+  }
+
+  @Test
+  public void testInputFlavorsAgree() {
+    final Random random = new Random(7);
+    for (final HashFunction hashFunction : hashFunctions) {
+      // cover every tail length and block boundary of every algorithm
+      for (int length = 0; length <= 130; length++) {
+        final byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        final long expected = hashFunction.hash(bytes);
+
+        final byte[] padded = new byte[length + 5];
+        System.arraycopy(bytes, 0, padded, 3, length);
+        assertEquals(expected, hashFunction.hash(padded, 3, length));
+
+        for (ByteOrder order : new ByteOrder[] {ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+          final ByteBuffer heap = ByteBuffer.wrap(padded, 3, length).order(order);
+          assertEquals(expected, hashFunction.hash(heap));
+          assertEquals(3, heap.position());
+
+          final ByteBuffer direct = ByteBuffer.allocateDirect(length + 2).order(order);
+          direct.put((byte) 1).put(bytes).put((byte) 2);
+          direct.position(1).limit(1 + length);
+          assertEquals(expected, hashFunction.hash(direct));
+          assertEquals(1, direct.position());
+
+          // absolute ranges ignore position and limit
+          direct.clear();
+          assertEquals(expected, hashFunction.hash(direct, 1, length));
+          assertEquals(expected, hashFunction.hash(ByteBuffer.wrap(padded).order(order), 3,
+              length));
+          assertEquals(0, direct.position());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testCharSequenceHashesUtf8() {
+    final String[] keys = {"", "a", "ascii-only-key_42", "café", "中文键",
+        "emoji-😀-key", "lone-\ud83d-surrogate"};
+    for (final HashFunction hashFunction : hashFunctions) {
+      for (final String key : keys) {
+        final long expected = hashFunction.hash(key.getBytes(StandardCharsets.UTF_8));
+        assertEquals(expected, hashFunction.hash(key));
+        assertEquals(expected, hashFunction.hash(new StringBuilder(key)));
+        assertEquals(expected, hashFunction.apply(key).longValue());
+      }
+    }
+  }
+
+  @Test
+  public void testDecimalHashesLikeString() {
+    final long[] values = {0L, 7L, -7L, 10L, 42L, -100L, 1_000_000_007L, Integer.MAX_VALUE,
+        Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE + 1};
+    final Random random = new Random(3);
+    for (final HashFunction hashFunction : hashFunctions) {
+      for (final long value : values) {
+        assertEquals(hashFunction.hash(Long.toString(value)), hashFunction.hashDecimal(value));
+      }
+      for (int iter = 0; iter < 1_000; iter++) {
+        final long value = random.nextLong() >> random.nextInt(64);
+        assertEquals(hashFunction.hash(Long.toString(value)), hashFunction.hashDecimal(value));
+      }
+    }
+  }
+
+  @Test
+  public void testNoTrivialCollisions() {
+    for (final HashFunction hashFunction : hashFunctions) {
+      final Set<Long> hashes = new HashSet<>();
+      for (int iter = 0; iter < 100_000; iter++) {
+        hashes.add(hashFunction.hash("key_" + iter));
+      }
+      assertEquals(100_000, hashes.size());
+      assertNotEquals(hashFunction.hash("a"), hashFunction.hash("b"));
+    }
+  }
+
+  @Test
+  public void testRangeHashesLikeSubstring() {
+    final String key = "prefix:ключ:\uD83D\uDE00:suffix";
+    for (final HashFunction hashFunction : hashFunctions) {
+      for (int start = 0; start <= key.length(); start += 3) {
+        for (int end = start; end <= key.length(); end += 2) {
+          assertEquals(hashFunction.hash(key.substring(start, end)),
+              hashFunction.hash(new StringBuilder(key), start, end));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testHashTags() {
+    for (final HashFunction hashFunction : hashFunctions) {
+      final HashFunction tagged = new HashTagHashFunction(hashFunction);
+      final long user = hashFunction.hash("user:42");
+      for (final String key : new String[] {"{user:42}:profile", "sessions:{user:42}",
+          "}{user:42}{other}", "a{user:42}}b"}) {
+        assertEquals(user, tagged.hash(key));
+        assertEquals(user, tagged.hash(new StringBuilder("xx").append(key), 2, key.length() + 2));
+        final byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        assertEquals(user, tagged.hash(bytes));
+        assertEquals(user, tagged.hash(ByteBuffer.wrap(bytes)));
+        final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        assertEquals(user, tagged.hash(direct));
+        assertEquals(0, direct.position());
+      }
+      // no tag, an empty one or an unterminated one: the whole key is hashed
+      for (final String key : new String[] {"user:42", "{}user:42", "user:{42", "user:}42{"}) {
+        assertEquals(hashFunction.hash(key), tagged.hash(key));
+        assertEquals(hashFunction.hash(key), tagged.hash(key.getBytes(StandardCharsets.UTF_8)));
+      }
+      assertEquals(hashFunction.hashDecimal(42L), tagged.hashDecimal(42L));
+    }
+    final HashFunction custom = new HashTagHashFunction(new XXHash64HashFunction(), '<', '>');
+    assertEquals(custom.hash("a<b>c"), custom.hash("b"));
+  }
+
+}
@@ -0,0 +1,99 @@
+package com.github.consistenthash.jump;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.UUID;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Test;
+
+import com.github.consistenthash.ring.PhysicalNode;
+
+/**
+ * Tests for ensuring correctness of jump consistent hasher.
+ * 
+ * @author gaurav
+ */
+public class JumpConsistentHashTest {
+  private static final Logger logger =
+      LogManager.getLogger(JumpConsistentHashTest.class.getSimpleName());
+
+  @Test
+  public void testBucketMonotonicity() {
+    // growing from n to n+1 buckets must only ever move keys into the new bucket
+    for (long keyHash = 0; keyHash < 10_000; keyHash++) {
+      final long mixed = keyHash * 0x9E3779B97F4A7C15L;
+      int previous = JumpConsistentHash.bucket(mixed, 1);
+      assertEquals(0, previous);
+      for (int buckets = 2; buckets <= 64; buckets++) {
+        final int current = JumpConsistentHash.bucket(mixed, buckets);
+        assertTrue(current == previous || current == buckets - 1);
+        previous = current;
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBucketRejectsEmptyRange() {
+    JumpConsistentHash.bucket(42L, 0);
+  }
+
+  @Test
+  public void testJumpConsistentHash() {
+    final JumpConsistentHash<PhysicalNode> consistentHash = new JumpConsistentHash<>();
+    assertNull(consistentHash.chooseNode("key"));
+    assertEquals(-1, consistentHash.chooseShard("key"));
+
+    final int nodeCount = 10;
+    final PhysicalNode[] nodes = new PhysicalNode[nodeCount];
+    for (int iter = 0; iter < nodeCount; iter++) {
+      nodes[iter] = new PhysicalNode();
+      assertEquals(iter, consistentHash.nextShardId());
+      assertEquals(iter, consistentHash.addNode(nodes[iter]));
+      assertSame(nodes[iter], consistentHash.getNode(iter));
+    }
+    assertEquals(nodeCount, consistentHash.getNodeCount());
+
+    final int keysToHash = 100_000;
+    final String[] keys = new String[keysToHash];
+    final int[] shards = new int[keysToHash];
+    final int[] keysPerShard = new int[nodeCount];
+    for (int iter = 0; iter < keysToHash; iter++) {
+      keys[iter] = UUID.randomUUID().toString();
+      shards[iter] = consistentHash.chooseShard(keys[iter]);
+      assertSame(nodes[shards[iter]], consistentHash.chooseNode(keys[iter]));
+      keysPerShard[shards[iter]]++;
+    }
+    for (int count : keysPerShard) {
+      // expect within 5% of the mean of 10k keys per shard
+      assertTrue(Math.abs(count - keysToHash / nodeCount) < keysToHash / nodeCount / 20);
+    }
+
+    // dropping the last node only moves the keys that it owned
+    assertSame(nodes[nodeCount - 1], consistentHash.removeLastNode());
+    int moved = 0;
+    for (int iter = 0; iter < keysToHash; iter++) {
+      final int shard = consistentHash.chooseShard(keys[iter]);
+      if (shard != shards[iter]) {
+        assertEquals(nodeCount - 1, shards[iter]);
+        moved++;
+      }
+    }
+    assertEquals(keysPerShard[nodeCount - 1], moved);
+    logger.info(String.format("%d of %d keys moved going from %d->%d nodes", moved, keysToHash,
+        nodeCount, nodeCount - 1));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDuplicateNodeRejected() {
+    final JumpConsistentHash<PhysicalNode> consistentHash = new JumpConsistentHash<>();
+    final PhysicalNode node = new PhysicalNode();
+    consistentHash.addNode(node);
+    consistentHash.addNode(node);
+  }
+
+}
@@ -0,0 +1,121 @@
+package com.github.consistenthash.maglev;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Test;
+
+import com.github.consistenthash.hasher.XXHash64HashFunction;
+import com.github.consistenthash.ring.PhysicalNode;
+
+/**
+ * Tests for ensuring correctness of maglev consistent hasher.
+ * 
+ * @author gaurav
+ */
+public class MaglevConsistentHashTest {
+  private static final Logger logger =
+      LogManager.getLogger(MaglevConsistentHashTest.class.getSimpleName());
+
+  @Test
+  public void testMaglevConsistentHash() {
+    final MaglevConsistentHash<PhysicalNode> consistentHash = new MaglevConsistentHash<>();
+    assertNull(consistentHash.chooseNode("key"));
+
+    final int nodeCount = 31;
+    final PhysicalNode[] nodes = new PhysicalNode[nodeCount];
+    for (int iter = 0; iter < nodeCount; iter++) {
+      nodes[iter] = new PhysicalNode();
+      assertTrue(consistentHash.addNode(nodes[iter]));
+    }
+    assertFalse(consistentHash.addNode(nodes[0]));
+    assertEquals(nodeCount, consistentHash.getNodeCount());
+
+    // round-robin population means slot counts never differ by more than one
+    final MaglevTable<PhysicalNode> before = consistentHash.getTable();
+    final int tableSize = consistentHash.getTableSize();
+    for (PhysicalNode node : nodes) {
+      final int slots = before.getSlotCount(node);
+      assertTrue(slots == tableSize / nodeCount || slots == tableSize / nodeCount + 1);
+    }
+
+    for (int iter = 0; iter < 1_000; iter++) {
+      final String key = "key_" + iter;
+      final PhysicalNode chosen = consistentHash.chooseNode(key);
+      assertSame(before.getNode(before.slotOf(new XXHash64HashFunction().hash(key))), chosen);
+    }
+
+    // dropping a node must reassign its slots and disturb only a few others
+    final PhysicalNode dropped = nodes[3];
+    final int droppedSlots = before.getSlotCount(dropped);
+    assertTrue(consistentHash.removeNode(dropped));
+    assertFalse(consistentHash.removeNode(dropped));
+    final MaglevTable<PhysicalNode> after = consistentHash.getTable();
+    assertEquals(0, after.getSlotCount(dropped));
+    final int moved = before.slotsMoved(after);
+    logger.info(String.format("%d slots moved, %d were owned by the dropped node, disruption %.4f",
+        moved, droppedSlots, before.disruption(after)));
+    assertTrue(moved >= droppedSlots);
+    assertTrue(moved < 2 * droppedSlots);
+    assertEquals(0, after.slotsMoved(consistentHash.getTable()));
+  }
+
+  @Test
+  public void testInsertionOrderIndependence() {
+    final PhysicalNode[] nodes = new PhysicalNode[10];
+    final MaglevConsistentHash<PhysicalNode> forward =
+        new MaglevConsistentHash<>(new XXHash64HashFunction(), 1009);
+    final MaglevConsistentHash<PhysicalNode> backward =
+        new MaglevConsistentHash<>(new XXHash64HashFunction(), 1009);
+    for (int iter = 0; iter < nodes.length; iter++) {
+      nodes[iter] = new PhysicalNode();
+      forward.addNode(nodes[iter]);
+    }
+    for (int iter = nodes.length - 1; iter >= 0; iter--) {
+      backward.addNode(nodes[iter]);
+    }
+    assertEquals(0, forward.getTable().slotsMoved(backward.getTable()));
+  }
+
+  @Test
+  public void testBatchedMembership() {
+    final List<PhysicalNode> nodes = new ArrayList<>();
+    final MaglevConsistentHash<PhysicalNode> oneByOne =
+        new MaglevConsistentHash<>(new XXHash64HashFunction(), 1009);
+    for (int iter = 0; iter < 10; iter++) {
+      final PhysicalNode node = new PhysicalNode();
+      nodes.add(node);
+      oneByOne.addNode(node);
+    }
+    final MaglevConsistentHash<PhysicalNode> batched =
+        new MaglevConsistentHash<>(new XXHash64HashFunction(), 1009);
+    assertTrue(batched.addNodes(nodes));
+    assertFalse(batched.addNodes(nodes));
+    assertEquals(0, oneByOne.getTable().slotsMoved(batched.getTable()));
+
+    final List<PhysicalNode> leaving = nodes.subList(0, 3);
+    for (final PhysicalNode node : leaving) {
+      oneByOne.removeNode(node);
+    }
+    final MaglevTable<PhysicalNode> before = batched.getTable();
+    assertTrue(batched.removeNodes(leaving));
+    assertEquals(7, batched.getNodeCount());
+    assertEquals(0, oneByOne.getTable().slotsMoved(batched.getTable()));
+    assertTrue(before.slotsMoved(batched.getTable()) > 0);
+    assertFalse(batched.removeNodes(leaving));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTableSizeMustBePrime() {
+    new MaglevConsistentHash<PhysicalNode>(new XXHash64HashFunction(), 65536);
+  }
+
+}
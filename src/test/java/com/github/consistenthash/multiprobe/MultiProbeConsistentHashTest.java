@@ -0,0 +1,97 @@
+package com.github.consistenthash.multiprobe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Test;
+
+import com.github.consistenthash.ring.PhysicalNode;
+
+/**
+ * Tests for ensuring correctness of multi-probe consistent hasher.
+ * 
+ * @author gaurav
+ */
+public class MultiProbeConsistentHashTest {
+  private static final Logger logger =
+      LogManager.getLogger(MultiProbeConsistentHashTest.class.getSimpleName());
+
+  @Test
+  public void testPeakToMeanLoad() {
+    final MultiProbeConsistentHash<PhysicalNode> multiProbe = new MultiProbeConsistentHash<>();
+    assertNull(multiProbe.chooseNode("key"));
+    final int nodeCount = 100;
+    for (int iter = 0; iter < nodeCount; iter++) {
+      assertTrue(multiProbe.addNode(new PhysicalNode()));
+    }
+    assertEquals(nodeCount, multiProbe.getNodeCount());
+
+    final int keyCount = 500_000;
+    final Map<PhysicalNode, Integer> loads = new HashMap<>();
+    for (int iter = 0; iter < keyCount; iter++) {
+      loads.merge(multiProbe.chooseNode("key_" + iter), 1, Integer::sum);
+    }
+    assertEquals(nodeCount, loads.size());
+    int peak = 0;
+    for (int load : loads.values()) {
+      peak = Math.max(peak, load);
+    }
+    final double peakToMean = peak / ((double) keyCount / nodeCount);
+    logger.info(String.format("peak to mean load %.3f with %d probes", peakToMean,
+        multiProbe.getProbeCount()));
+    assertTrue(peakToMean < 1.2d);
+  }
+
+  @Test
+  public void testMembershipChanges() {
+    final MultiProbeConsistentHash<PhysicalNode> multiProbe = new MultiProbeConsistentHash<>();
+    final List<PhysicalNode> nodes = new ArrayList<>();
+    for (int iter = 0; iter < 20; iter++) {
+      final PhysicalNode node = new PhysicalNode();
+      nodes.add(node);
+      assertTrue(multiProbe.addNode(node));
+    }
+    assertFalse(multiProbe.addNode(nodes.get(0)));
+    final int keyCount = 50_000;
+    final PhysicalNode[] before = new PhysicalNode[keyCount];
+    for (int iter = 0; iter < keyCount; iter++) {
+      before[iter] = multiProbe.chooseNode("key_" + iter);
+    }
+
+    // keys only move off the removed node
+    final PhysicalNode removed = nodes.get(7);
+    assertTrue(multiProbe.removeNode(removed));
+    assertFalse(multiProbe.removeNode(removed));
+    for (int iter = 0; iter < keyCount; iter++) {
+      final PhysicalNode now = multiProbe.chooseNode("key_" + iter);
+      assertTrue(now != removed);
+      if (now != before[iter]) {
+        assertSame(removed, before[iter]);
+      }
+    }
+
+    // and only onto an added one
+    final PhysicalNode added = new PhysicalNode();
+    assertTrue(multiProbe.addNode(added));
+    int moved = 0;
+    for (int iter = 0; iter < keyCount; iter++) {
+      final PhysicalNode now = multiProbe.chooseNode("key_" + iter);
+      if (before[iter] != removed && now != before[iter]) {
+        assertSame(added, now);
+        moved++;
+      }
+    }
+    logger.info(String.format("%d keys moved onto the added node", moved));
+  }
+
+}
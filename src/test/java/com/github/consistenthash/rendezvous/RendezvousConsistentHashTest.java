@@ -0,0 +1,171 @@
+package com.github.consistenthash.rendezvous;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Test;
+
+import com.github.consistenthash.hasher.XXHash64HashFunction;
+import com.github.consistenthash.ring.PhysicalNode;
+
+/**
+ * Tests for ensuring correctness of rendezvous consistent hasher.
+ * 
+ * @author gaurav
+ */
+public class RendezvousConsistentHashTest {
+  private static final Logger logger =
+      LogManager.getLogger(RendezvousConsistentHashTest.class.getSimpleName());
+
+  @Test
+  public void testFlatMinimalMovement() {
+    final RendezvousConsistentHash<PhysicalNode> consistentHash =
+        new RendezvousConsistentHash<>();
+    assertNull(consistentHash.chooseNode("key"));
+    final int nodeCount = 20;
+    final PhysicalNode[] nodes = new PhysicalNode[nodeCount];
+    for (int iter = 0; iter < nodeCount; iter++) {
+      nodes[iter] = new PhysicalNode();
+      assertTrue(consistentHash.addNode(nodes[iter]));
+    }
+    assertFalse(consistentHash.addNode(nodes[0]));
+    assertEquals(nodeCount, consistentHash.getNodeCount());
+
+    final int keysToHash = 100_000;
+    final PhysicalNode[] owners = new PhysicalNode[keysToHash];
+    final Map<PhysicalNode, Integer> keysPerNode = new HashMap<>();
+    for (int iter = 0; iter < keysToHash; iter++) {
+      owners[iter] = consistentHash.chooseNode("key_" + iter);
+      keysPerNode.merge(owners[iter], 1, Integer::sum);
+    }
+    assertEquals(nodeCount, keysPerNode.size());
+    for (int count : keysPerNode.values()) {
+      assertTrue(Math.abs(count - keysToHash / nodeCount) < keysToHash / nodeCount / 10);
+    }
+
+    // only the keys of the dropped node may move
+    final PhysicalNode dropped = nodes[7];
+    assertTrue(consistentHash.removeNode(dropped));
+    assertFalse(consistentHash.removeNode(dropped));
+    for (int iter = 0; iter < keysToHash; iter++) {
+      final PhysicalNode owner = consistentHash.chooseNode("key_" + iter);
+      if (owners[iter] != dropped) {
+        assertEquals(owners[iter], owner);
+      }
+    }
+  }
+
+  @Test
+  public void testWeightedDistribution() {
+    final RendezvousConsistentHash<PhysicalNode> consistentHash =
+        new RendezvousConsistentHash<>();
+    final double[] weights = {1.0d, 2.0d, 3.0d, 4.0d};
+    final PhysicalNode[] nodes = new PhysicalNode[weights.length];
+    for (int iter = 0; iter < weights.length; iter++) {
+      nodes[iter] = new PhysicalNode();
+      assertTrue(consistentHash.addNode(nodes[iter], weights[iter]));
+    }
+    final int keysToHash = 200_000;
+    final Map<PhysicalNode, Integer> keysPerNode = new HashMap<>();
+    for (int iter = 0; iter < keysToHash; iter++) {
+      keysPerNode.merge(consistentHash.chooseNode("key_" + iter), 1, Integer::sum);
+    }
+    for (int iter = 0; iter < weights.length; iter++) {
+      final double expected = keysToHash * weights[iter] / 10.0d;
+      final double actual = keysPerNode.get(nodes[iter]);
+      logger.info(String.format("weight:%.1f expected:%.0f actual:%.0f", weights[iter], expected,
+          actual));
+      assertTrue(Math.abs(actual - expected) / expected < 0.03d);
+    }
+  }
+
+  @Test
+  public void testSkeletonDistribution() {
+    final RendezvousConsistentHash<PhysicalNode> consistentHash =
+        new RendezvousConsistentHash<>(new XXHash64HashFunction(), 4);
+    final int nodeCount = 500;
+    final PhysicalNode[] nodes = new PhysicalNode[nodeCount];
+    for (int iter = 0; iter < nodeCount; iter++) {
+      nodes[iter] = new PhysicalNode();
+      assertTrue(consistentHash.addNode(nodes[iter]));
+    }
+    final int keysToHash = 500_000;
+    final PhysicalNode[] owners = new PhysicalNode[keysToHash];
+    final Map<PhysicalNode, Integer> keysPerNode = new HashMap<>();
+    for (int iter = 0; iter < keysToHash; iter++) {
+      owners[iter] = consistentHash.chooseNode("key_" + iter);
+      keysPerNode.merge(owners[iter], 1, Integer::sum);
+    }
+    assertEquals(nodeCount, keysPerNode.size());
+    int max = 0;
+    for (int count : keysPerNode.values()) {
+      max = Math.max(max, count);
+    }
+    final double peakToMean = max / ((double) keysToHash / nodeCount);
+    logger.info(String.format("skeleton peak-to-mean load %.3f", peakToMean));
+    assertTrue(peakToMean < 1.3d);
+
+    // dropping a node moves its keys plus a bounded spill-over from reweighed sibling subtrees
+    final PhysicalNode dropped = nodes[42];
+    assertTrue(consistentHash.removeNode(dropped));
+    int moved = 0;
+    for (int iter = 0; iter < keysToHash; iter++) {
+      final PhysicalNode owner = consistentHash.chooseNode("key_" + iter);
+      assertTrue(owner != dropped);
+      if (owner != owners[iter]) {
+        moved++;
+      }
+    }
+    logger.info(String.format("%d keys moved, %d were owned by the dropped node", moved,
+        keysPerNode.get(dropped)));
+    assertTrue(moved >= keysPerNode.get(dropped));
+    assertTrue(moved < 5 * keysPerNode.get(dropped));
+
+    // emptying every cluster leaves nothing to choose
+    for (PhysicalNode node : nodes) {
+      consistentHash.removeNode(node);
+    }
+    assertEquals(0, consistentHash.getNodeCount());
+    assertNull(consistentHash.chooseNode("key"));
+  }
+
+  @Test
+  public void testSkeletonDepthFollowsNodeCount() {
+    final RendezvousConsistentHash<PhysicalNode> consistentHash =
+        new RendezvousConsistentHash<>(new XXHash64HashFunction(), 4);
+    assertEquals(1, consistentHash.getLevels());
+    final int nodeCount = 1000;
+    final PhysicalNode[] nodes = new PhysicalNode[nodeCount];
+    for (int iter = 0; iter < nodeCount; iter++) {
+      nodes[iter] = new PhysicalNode();
+      assertTrue(consistentHash.addNode(nodes[iter]));
+    }
+    // 4^5 >= 1000 > 4^4, so leaf clusters average 1000 / 4^4 ~ 4 nodes
+    assertEquals(4, consistentHash.getLevels());
+
+    final int remaining = 20;
+    for (int iter = remaining; iter < nodeCount; iter++) {
+      assertTrue(consistentHash.removeNode(nodes[iter]));
+    }
+    assertEquals(remaining, consistentHash.getNodeCount());
+    assertEquals(2, consistentHash.getLevels());
+
+    // every survivor still owns keys after the rebuilds and no departed node is ever chosen
+    final Map<PhysicalNode, Integer> keysPerNode = new HashMap<>();
+    for (int iter = 0; iter < 100_000; iter++) {
+      keysPerNode.merge(consistentHash.chooseNode("key_" + iter), 1, Integer::sum);
+    }
+    assertEquals(remaining, keysPerNode.size());
+    for (int iter = 0; iter < remaining; iter++) {
+      assertTrue(keysPerNode.containsKey(nodes[iter]));
+    }
+  }
+
+}
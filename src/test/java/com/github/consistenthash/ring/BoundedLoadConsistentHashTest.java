@@ -0,0 +1,138 @@
+package com.github.consistenthash.ring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Test;
+
+/**
+ * Tests for ensuring correctness of the bounded load consistent hasher.
+ * 
+ * @author gaurav
+ */
+public class BoundedLoadConsistentHashTest {
+  private static final Logger logger =
+      LogManager.getLogger(BoundedLoadConsistentHashTest.class.getSimpleName());
+
+  @Test
+  public void testHotKeysAreSpilled() throws Exception {
+    final RingConsistentHash<PhysicalNode> ring = new RingConsistentHash<>();
+    final BoundedLoadConsistentHash<PhysicalNode> consistentHash =
+        new BoundedLoadConsistentHash<>(ring, 0.25d);
+    assertNull(consistentHash.acquire("key"));
+
+    final int nodeCount = 10;
+    final List<PhysicalNode> nodes = new ArrayList<>();
+    for (int iter = 0; iter < nodeCount; iter++) {
+      final PhysicalNode node = new PhysicalNode();
+      nodes.add(node);
+      assertTrue(ring.addNode(node, 100));
+    }
+    // an idle cluster routes exactly like the plain ring
+    assertSame(ring.chooseNode("hot"), consistentHash.chooseNode("hot"));
+
+    // half of all requests hit the same key from a few threads
+    final int threads = 4;
+    final int leasesPerThread = 5_000;
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    final List<Future<List<PhysicalNode>>> futures = new ArrayList<>();
+    for (int thread = 0; thread < threads; thread++) {
+      final int offset = thread * leasesPerThread;
+      futures.add(executor.submit(() -> {
+        final List<PhysicalNode> leased = new ArrayList<>();
+        for (int iter = 0; iter < leasesPerThread; iter++) {
+          final String key = iter % 2 == 0 ? "hot" : "key_" + (offset + iter);
+          leased.add(consistentHash.acquire(key));
+        }
+        return leased;
+      }));
+    }
+    final List<PhysicalNode> leased = new ArrayList<>();
+    for (Future<List<PhysicalNode>> future : futures) {
+      leased.addAll(future.get());
+    }
+    executor.shutdown();
+    executor.awaitTermination(10, TimeUnit.SECONDS);
+
+    final long total = threads * leasesPerThread;
+    assertEquals(total, consistentHash.getTotalLoad());
+    final long bound = (long) Math.ceil(1.25d * total / nodeCount);
+    long max = 0;
+    for (PhysicalNode node : nodes) {
+      max = Math.max(max, consistentHash.getLoad(node));
+      assertTrue(consistentHash.getLoad(node) <= bound);
+    }
+    logger.info(String.format("max load %d against a mean of %d", max, total / nodeCount));
+
+    for (PhysicalNode node : leased) {
+      consistentHash.release(node);
+    }
+    assertEquals(0, consistentHash.getTotalLoad());
+    for (PhysicalNode node : nodes) {
+      assertEquals(0, consistentHash.getLoad(node));
+    }
+  }
+
+  @Test
+  public void testReportedLoadForwardsClockwise() {
+    final RingConsistentHash<PhysicalNode> ring = new RingConsistentHash<>();
+    final BoundedLoadConsistentHash<PhysicalNode> consistentHash =
+        new BoundedLoadConsistentHash<>(ring, 0.1d);
+    for (int iter = 0; iter < 5; iter++) {
+      assertTrue(ring.addNode(new PhysicalNode(), 50));
+    }
+    final PhysicalNode owner = ring.chooseNode("key");
+    consistentHash.reportLoad(owner, 1_000);
+    final PhysicalNode forwarded = consistentHash.chooseNode("key");
+    assertTrue(forwarded != owner);
+    assertSame(ring.chooseNodes("key", 2).get(1), forwarded);
+    consistentHash.reportLoad(owner, 0);
+    assertSame(owner, consistentHash.chooseNode("key"));
+  }
+
+  @Test
+  public void testDepartedNodesAreForgotten() {
+    final RingConsistentHash<PhysicalNode> ring = new RingConsistentHash<>();
+    final BoundedLoadConsistentHash<PhysicalNode> consistentHash =
+        new BoundedLoadConsistentHash<>(ring, 0.25d);
+    final List<PhysicalNode> nodes = new ArrayList<>();
+    for (int iter = 0; iter < 5; iter++) {
+      final PhysicalNode node = new PhysicalNode();
+      nodes.add(node);
+      assertTrue(ring.addNode(node, 50));
+    }
+    for (int iter = 0; iter < 1_000; iter++) {
+      consistentHash.acquire("key_" + iter);
+    }
+    final PhysicalNode departed = nodes.get(2);
+    final long departedLoad = consistentHash.getLoad(departed);
+    assertTrue(departedLoad > 0);
+
+    // leaving drops the node's counter along with its share of the total
+    assertTrue(ring.removeNode(departed));
+    assertEquals(0L, consistentHash.getLoad(departed));
+    assertEquals(1_000L - departedLoad, consistentHash.getTotalLoad());
+    consistentHash.release(departed);
+    assertEquals(1_000L - departedLoad, consistentHash.getTotalLoad());
+
+    // a returning node starts out idle
+    assertTrue(ring.addNode(departed, 50));
+    assertEquals(0L, consistentHash.getLoad(departed));
+
+    consistentHash.close();
+    assertTrue(ring.removeNode(nodes.get(0)));
+    assertTrue(consistentHash.getLoad(nodes.get(0)) > 0);
+  }
+
+}
@@ -0,0 +1,124 @@
+package com.github.consistenthash.ring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Test;
+
+/**
+ * Tests for ensuring correctness of the caching consistent hasher.
+ * 
+ * @author gaurav
+ */
+public class CachingConsistentHashTest {
+  private static final Logger logger =
+      LogManager.getLogger(CachingConsistentHashTest.class.getSimpleName());
+
+  @Test
+  public void testZipfianTrafficHitsCache() {
+    final RingConsistentHash<PhysicalNode> ring = new RingConsistentHash<>();
+    final CachingConsistentHash<PhysicalNode> cache = new CachingConsistentHash<>(ring, 1_024);
+    assertNull(cache.chooseNode("key"));
+    for (int iter = 0; iter < 10; iter++) {
+      assertTrue(ring.addNode(new PhysicalNode(), 100));
+    }
+
+    // zipf(s=1) over 100k keys, a 1k entry cache should absorb a good chunk of lookups
+    final int keySpace = 100_000;
+    final double[] cumulative = new double[keySpace];
+    double sum = 0.0d;
+    for (int rank = 0; rank < keySpace; rank++) {
+      sum += 1.0d / (rank + 1);
+      cumulative[rank] = sum;
+    }
+    final Random random = new Random(11);
+    for (int iter = 0; iter < 200_000; iter++) {
+      final double target = random.nextDouble() * sum;
+      int rank = Arrays.binarySearch(cumulative, target);
+      rank = rank < 0 ? -rank - 1 : rank;
+      final String key = "key_" + rank;
+      assertSame(ring.chooseNode(key), cache.chooseNode(key));
+    }
+    logger.info(String.format("hit rate %.3f, %d evictions, %d rejections", cache.getHitRate(),
+        cache.getEvictionCount(), cache.getRejectionCount()));
+    assertEquals(200_000, cache.getHitCount() + cache.getMissCount());
+    assertTrue(cache.getHitRate() > 0.4d);
+  }
+
+  @Test
+  public void testConcurrentSketchIncrements() throws Exception {
+    final FrequencySketch sketch = new FrequencySketch(1_024);
+    final int threads = 4;
+    final int hashes = 500;
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    final List<Future<?>> futures = new ArrayList<>();
+    for (int thread = 0; thread < threads; thread++) {
+      futures.add(executor.submit(() -> {
+        // every thread counts every hash 3 times, all threads walking the hashes in step
+        for (int hash = 0; hash < hashes; hash++) {
+          for (int iter = 0; iter < 3; iter++) {
+            sketch.increment(hash);
+          }
+        }
+      }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    // 6k additions stay below the sample size, so nothing was aged and no increment may be lost
+    for (int hash = 0; hash < hashes; hash++) {
+      assertTrue(sketch.frequency(hash) >= threads * 3);
+    }
+
+    // contended increments of a single hash never push its counters past the cap
+    futures.clear();
+    for (int thread = 0; thread < threads; thread++) {
+      futures.add(executor.submit(() -> {
+        for (int iter = 0; iter < 2_000; iter++) {
+          sketch.increment(-1);
+          assertTrue(sketch.frequency(-1) <= 15);
+        }
+      }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+    executor.awaitTermination(10, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void testEpochInvalidatesEntries() {
+    final RingConsistentHash<PhysicalNode> ring = new RingConsistentHash<>();
+    final CachingConsistentHash<PhysicalNode> cache = new CachingConsistentHash<>(ring, 64);
+    final PhysicalNode first = new PhysicalNode();
+    assertTrue(ring.addNode(first, 10));
+    final long epoch = ring.getEpoch();
+    assertSame(first, cache.chooseNode("key"));
+    assertSame(first, cache.chooseNode("key"));
+    assertEquals(1, cache.getHitCount());
+
+    // after a membership change cached answers must not be served
+    final PhysicalNode second = new PhysicalNode();
+    assertTrue(ring.addNode(second, 10));
+    assertTrue(ring.removeNode(first));
+    assertEquals(epoch + 2, ring.getEpoch());
+    assertSame(second, cache.chooseNode("key"));
+    assertEquals(1, cache.getHitCount());
+    assertEquals(2, cache.getMissCount());
+  }
+
+}
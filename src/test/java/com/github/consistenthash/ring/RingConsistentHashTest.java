@@ -1,17 +1,40 @@
 package com.github.consistenthash.ring;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.junit.Test;
 
+import com.github.consistenthash.hasher.HashFunction;
+import com.github.consistenthash.hasher.HashTagHashFunction;
 import com.github.consistenthash.hasher.MD5HashFunction;
+import com.github.consistenthash.hasher.XXHash64HashFunction;
 
 /**
  * Tests for ensuring correctness of ring consistent hasher.
@@ -190,9 +213,579 @@ public class RingConsistentHashTest {
 
   }
 
+  @Test
+  public void testChooseNodeDuringMembershipChurn() throws Exception {
+    final int virtualNodeCount = 50;
+    final RingConsistentHash<PhysicalNode> consistentHash =
+        new RingConsistentHash<>(new MD5HashFunction());
+    // a stable node guarantees the ring is never legitimately empty
+    assertTrue(consistentHash.addNode(new PhysicalNode(), virtualNodeCount));
+
+    final int readerCount = 4;
+    final AtomicBoolean churning = new AtomicBoolean(true);
+    final AtomicLong lookups = new AtomicLong();
+    final CountDownLatch readersStarted = new CountDownLatch(readerCount);
+    final ExecutorService executor = Executors.newFixedThreadPool(readerCount + 2);
+    try {
+      final List<Future<Integer>> readers = new ArrayList<>();
+      for (int reader = 0; reader < readerCount; reader++) {
+        readers.add(executor.submit(() -> {
+          int nullLookups = 0;
+          readersStarted.countDown();
+          while (churning.get()) {
+            if (consistentHash.chooseNode(UUID.randomUUID().toString()) == null) {
+              nullLookups++;
+            }
+            lookups.incrementAndGet();
+          }
+          return nullLookups;
+        }));
+      }
+      readersStarted.await();
+
+      // concurrent writers must queue up rather than fail
+      final List<Future<Integer>> writers = new ArrayList<>();
+      for (int writer = 0; writer < 2; writer++) {
+        writers.add(executor.submit(() -> {
+          int failedChanges = 0;
+          for (int iter = 0; iter < 50; iter++) {
+            final PhysicalNode physicalNode = new PhysicalNode();
+            if (!consistentHash.addNode(physicalNode, virtualNodeCount)) {
+              failedChanges++;
+            }
+            if (!consistentHash.removeNode(physicalNode)) {
+              failedChanges++;
+            }
+          }
+          return failedChanges;
+        }));
+      }
+      for (Future<Integer> writer : writers) {
+        assertEquals(0, writer.get().intValue());
+      }
+      churning.set(false);
+      for (Future<Integer> reader : readers) {
+        assertEquals(0, reader.get().intValue());
+      }
+    } finally {
+      executor.shutdownNow();
+      executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+    logger.info(String.format("%d lookups served during membership churn", lookups.get()));
+    assertNotNull(consistentHash.chooseNode(UUID.randomUUID().toString()));
+    assertEquals(1, consistentHash.getTotalPhysicalNodeCount());
+    assertEquals(virtualNodeCount, consistentHash.getTotalVirtualNodeCount());
+  }
+
+  @Test
+  public void testBatchChooseNodes() {
+    final RingConsistentHash<PhysicalNode> consistentHash = new RingConsistentHash<>();
+    final int keysToHash = 50_000;
+    final String[] keys = new String[keysToHash];
+    final long[] keyHashes = new long[keysToHash];
+    for (int iter = 0; iter < keysToHash; iter++) {
+      keys[iter] = UUID.randomUUID().toString();
+      keyHashes[iter] = new XXHash64HashFunction().hash(keys[iter]);
+    }
+    final PhysicalNode[] owners = new PhysicalNode[keysToHash];
+    consistentHash.chooseNodes(keys, owners);
+    for (PhysicalNode owner : owners) {
+      assertEquals(null, owner);
+    }
+    assertTrue(consistentHash.groupByNode(Arrays.asList(keys)).isEmpty());
+
+    for (int iter = 0; iter < 10; iter++) {
+      assertTrue(consistentHash.addNode(new PhysicalNode(), 100));
+    }
+    // small batch takes the binary search path, large batches take the sort and merge path
+    for (int batchSize : new int[] {3, keysToHash}) {
+      final String[] batch = Arrays.copyOf(keys, batchSize);
+      final PhysicalNode[] fromArray = new PhysicalNode[batchSize];
+      final PhysicalNode[] fromList = new PhysicalNode[batchSize];
+      final PhysicalNode[] fromHashes = new PhysicalNode[batchSize];
+      final PhysicalNode[] fromPool = new PhysicalNode[batchSize];
+      final long[] batchHashes = Arrays.copyOf(keyHashes, batchSize);
+      consistentHash.chooseNodes(batch, fromArray);
+      consistentHash.chooseNodes(Arrays.asList(batch), fromList);
+      consistentHash.chooseNodesByHash(batchHashes, fromHashes);
+      consistentHash.chooseNodes(batch, fromPool, ForkJoinPool.commonPool());
+      assertTrue(Arrays.equals(Arrays.copyOf(keyHashes, batchSize), batchHashes));
+      for (int iter = 0; iter < batchSize; iter++) {
+        final PhysicalNode expected = consistentHash.chooseNode(batch[iter]);
+        assertSame(expected, fromArray[iter]);
+        assertSame(expected, fromList[iter]);
+        assertSame(expected, fromHashes[iter]);
+        assertSame(expected, fromPool[iter]);
+      }
+    }
+
+    final Map<PhysicalNode, List<String>> groups =
+        consistentHash.groupByNode(Arrays.asList(keys));
+    assertEquals(10, groups.size());
+    int grouped = 0;
+    for (Map.Entry<PhysicalNode, List<String>> group : groups.entrySet()) {
+      for (String key : group.getValue()) {
+        assertSame(group.getKey(), consistentHash.chooseNode(key));
+      }
+      grouped += group.getValue().size();
+    }
+    assertEquals(keysToHash, grouped);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBatchOwnersTooSmall() {
+    new RingConsistentHash<PhysicalNode>().chooseNodes(new String[2], new PhysicalNode[1]);
+  }
+
+  @Test
+  public void testReplicaPreferenceLists() {
+    final RingConsistentHash<PhysicalNode> consistentHash = new RingConsistentHash<>();
+    assertTrue(consistentHash.chooseNodes("key", 3).isEmpty());
+    final PhysicalNode first = new PhysicalNode();
+    assertTrue(consistentHash.addNode(first, 10));
+    assertEquals(Arrays.asList(first), consistentHash.chooseNodes("key", 3));
+
+    for (int iter = 0; iter < 9; iter++) {
+      assertTrue(consistentHash.addNode(new PhysicalNode(), 100));
+    }
+    final int replicas = 3;
+    final int keysToHash = 10_000;
+    final List<List<PhysicalNode>> before = new ArrayList<>();
+    for (int iter = 0; iter < keysToHash; iter++) {
+      final String key = "key_" + iter;
+      final List<PhysicalNode> preferenceList = consistentHash.chooseNodes(key, replicas);
+      assertEquals(replicas, preferenceList.size());
+      assertEquals(replicas, new HashSet<>(preferenceList).size());
+      assertSame(consistentHash.chooseNode(key), preferenceList.get(0));
+      // a wider list on the same snapshot extends the narrower one
+      assertEquals(preferenceList, consistentHash.chooseNodes(key, 5).subList(0, replicas));
+      before.add(preferenceList);
+    }
+
+    // a new node can only be inserted into a list, pushing the last replica out
+    final PhysicalNode added = new PhysicalNode();
+    assertTrue(consistentHash.addNode(added, 100));
+    int changed = 0;
+    for (int iter = 0; iter < keysToHash; iter++) {
+      final List<PhysicalNode> after = consistentHash.chooseNodes("key_" + iter, replicas);
+      if (!after.equals(before.get(iter))) {
+        changed++;
+        assertTrue(after.contains(added));
+        final List<PhysicalNode> withoutAdded = new ArrayList<>(after);
+        withoutAdded.remove(added);
+        assertEquals(before.get(iter).subList(0, replicas - 1), withoutAdded);
+      }
+    }
+    logger.info(String.format("%d of %d preference lists changed after adding a node", changed,
+        keysToHash));
+
+    // lists walked off the ring match those served off the precomputed table
+    final List<List<PhysicalNode>> precomputed = new ArrayList<>();
+    consistentHash.setPreferenceListWidth(11);
+    for (int iter = 0; iter < keysToHash; iter += 7) {
+      precomputed.add(consistentHash.chooseNodes("key_" + iter, 11));
+    }
+    consistentHash.setPreferenceListWidth(0);
+    for (int iter = 0; iter < keysToHash; iter += 7) {
+      assertEquals(precomputed.get(iter / 7), consistentHash.chooseNodes("key_" + iter, 11));
+    }
+  }
+
+  @Test
+  public void testMembershipIndexWithCollisions() {
+    // every point collides, which forces removal to pick its own points out of shared positions
+    final HashFunction constant = new HashFunction() {
+      @Override
+      public long hash(final byte[] bytes, final int offset, final int length) {
+        return 42L;
+      }
+
+      @Override
+      public long hash(final ByteBuffer buffer) {
+        return 42L;
+      }
+    };
+    final RingConsistentHash<PhysicalNode> consistentHash = new RingConsistentHash<>(constant);
+    final PhysicalNode first = new PhysicalNode();
+    final PhysicalNode second = new PhysicalNode();
+    assertTrue(consistentHash.addNode(first, 3));
+    assertTrue(consistentHash.addNode(second, 3));
+    assertTrue(consistentHash.addNode(first, 2));
+    assertEquals(5, consistentHash.getVirtualNodeCount(first));
+    assertEquals(3, consistentHash.getVirtualNodeCount(second));
+    assertEquals(2, consistentHash.getTotalPhysicalNodeCount());
+    assertEquals(8, consistentHash.getTotalVirtualNodeCount());
+    // existing points win ties
+    assertSame(first, consistentHash.chooseNode("key"));
+
+    assertTrue(consistentHash.removeNode(first));
+    assertFalse(consistentHash.removeNode(first));
+    assertEquals(0, consistentHash.getVirtualNodeCount(first));
+    assertEquals(1, consistentHash.getTotalPhysicalNodeCount());
+    assertEquals(3, consistentHash.getTotalVirtualNodeCount());
+    assertSame(second, consistentHash.chooseNode("key"));
+  }
+
   private static int percentageKeysMoved(Integer previous, Integer current) {
     int difference = Math.abs(previous - current);
     return (difference * 100) / previous;
   }
 
+  @Test
+  public void testCompactLayout() {
+    final XXHash64HashFunction hashFunction = new XXHash64HashFunction();
+    final RingConsistentHash<PhysicalNode> consistentHash = new RingConsistentHash<>(hashFunction);
+    final List<PhysicalNode> nodes = new ArrayList<>();
+    for (int iter = 0; iter < 100; iter++) {
+      final PhysicalNode node = new PhysicalNode();
+      nodes.add(node);
+      assertTrue(consistentHash.addNode(node, 500));
+    }
+    final double bytesPerVirtualNode = (double) consistentHash.getMemoryFootprint()
+        / consistentHash.getTotalVirtualNodeCount();
+    logger.info(String.format("%.1f bytes per virtual node", bytesPerVirtualNode));
+    assertTrue(bytesPerVirtualNode < 24.0d);
+
+    // a preference table of width 3 adds three references per virtual node
+    final long footprint = consistentHash.getMemoryFootprint();
+    consistentHash.setPreferenceListWidth(3);
+    assertEquals(footprint + 16 + 3 * 8L * consistentHash.getTotalVirtualNodeCount(),
+        consistentHash.getMemoryFootprint());
+    consistentHash.setPreferenceListWidth(0);
+    assertEquals(footprint, consistentHash.getMemoryFootprint());
+
+    // virtual node keys are derived on demand and hash back to their positions
+    final RingSnapshot<PhysicalNode> snapshot = consistentHash.snapshot();
+    final int[] virtualNodeIndices = snapshot.virtualNodeIndices();
+    for (int iter = 0; iter < snapshot.size(); iter += 97) {
+      final VirtualNode<PhysicalNode> virtualNode = snapshot.virtualNodeAt(iter);
+      assertSame(snapshot.ownerAt(iter), virtualNode.getPhysicalNode());
+      assertEquals(virtualNodeIndices[iter], virtualNode.getVirtualNodeIndex());
+      assertEquals(snapshot.positionAt(iter), hashFunction.hash(virtualNode.getKey()));
+    }
+
+    // a removed node's ordinal is reused by the next node added
+    final Map<String, PhysicalNode> owners = new HashMap<>();
+    for (int iter = 0; iter < 1_000; iter++) {
+      owners.put("key_" + iter, consistentHash.chooseNode("key_" + iter));
+    }
+    final PhysicalNode removed = nodes.get(17);
+    assertTrue(consistentHash.removeNode(removed));
+    final PhysicalNode added = new PhysicalNode();
+    assertTrue(consistentHash.addNode(added, 500));
+    assertEquals(100, consistentHash.getTotalPhysicalNodeCount());
+    assertEquals(50_000, consistentHash.getTotalVirtualNodeCount());
+    for (Map.Entry<String, PhysicalNode> owner : owners.entrySet()) {
+      final PhysicalNode now = consistentHash.chooseNode(owner.getKey());
+      assertTrue(now == owner.getValue() || now == added || owner.getValue() == removed);
+    }
+  }
+
+  @Test
+  public void testZeroCopyLookups() {
+    final RingConsistentHash<PhysicalNode> consistentHash =
+        new RingConsistentHash<>(new MD5HashFunction());
+    assertNull(consistentHash.chooseNode(42L));
+    for (int iter = 0; iter < 10; iter++) {
+      assertTrue(consistentHash.addNode(new PhysicalNode(), 100));
+    }
+    final ByteBuffer direct = ByteBuffer.allocateDirect(64);
+    for (int iter = 0; iter < 5_000; iter++) {
+      final String key = "key_" + iter;
+      final PhysicalNode expected = consistentHash.chooseNode(key);
+      final byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+      final byte[] padded = new byte[bytes.length + 4];
+      System.arraycopy(bytes, 0, padded, 2, bytes.length);
+      assertSame(expected, consistentHash.chooseNode(padded, 2, bytes.length));
+      assertSame(expected, consistentHash.chooseNode(ByteBuffer.wrap(bytes)));
+
+      direct.clear();
+      direct.put((byte) 0).put(bytes);
+      direct.flip();
+      direct.get();
+      assertSame(expected, consistentHash.chooseNode(direct));
+      assertEquals(1, direct.position());
+      assertSame(expected, consistentHash.chooseNodeByHash(new MD5HashFunction().hash(key)));
+
+      assertSame(consistentHash.chooseNode(Long.toString(iter * 7919L)),
+          consistentHash.chooseNode(iter * 7919L));
+    }
+  }
+
+  @Test
+  public void testReweighting() {
+    final RingConsistentHash<PhysicalNode> consistentHash =
+        new RingConsistentHash<>(new XXHash64HashFunction(), 100);
+    final List<PhysicalNode> nodes = new ArrayList<>();
+    for (int iter = 0; iter < 10; iter++) {
+      final PhysicalNode node = new PhysicalNode();
+      nodes.add(node);
+      assertTrue(consistentHash.setWeight(node, 2.0d));
+    }
+    final PhysicalNode resized = nodes.get(3);
+    assertEquals(200, consistentHash.getVirtualNodeCount(resized));
+    assertEquals(2.0d, consistentHash.getWeight(resized), 0.0d);
+    assertFalse(consistentHash.setWeight(resized, 2.0d));
+
+    final int keyCount = 20_000;
+    final PhysicalNode[] before = new PhysicalNode[keyCount];
+    for (int iter = 0; iter < keyCount; iter++) {
+      before[iter] = consistentHash.chooseNode("key_" + iter);
+    }
+
+    // halving a node's weight only moves keys off that node, about half of them
+    assertTrue(consistentHash.setWeight(resized, 1.0d));
+    assertEquals(100, consistentHash.getVirtualNodeCount(resized));
+    int moved = 0;
+    int owned = 0;
+    for (int iter = 0; iter < keyCount; iter++) {
+      final PhysicalNode now = consistentHash.chooseNode("key_" + iter);
+      if (before[iter] == resized) {
+        owned++;
+      }
+      if (now != before[iter]) {
+        assertSame(resized, before[iter]);
+        moved++;
+      }
+    }
+    logger.info(String.format("%d of %d keys moved off the halved node", moved, owned));
+    assertTrue(moved > owned / 4 && moved < owned * 3 / 4);
+
+    // growing it back only moves keys onto it and restores the original placement exactly
+    assertTrue(consistentHash.setVirtualNodeCount(resized, 200));
+    for (int iter = 0; iter < keyCount; iter++) {
+      assertSame(before[iter], consistentHash.chooseNode("key_" + iter));
+    }
+
+    // a weight of 0 drops the node
+    assertTrue(consistentHash.setWeight(resized, 0.0d));
+    assertEquals(9, consistentHash.getTotalPhysicalNodeCount());
+    assertEquals(1_800, consistentHash.getTotalVirtualNodeCount());
+  }
+
+  @Test
+  public void testMembershipDiff() {
+    final HashFunction hashFunction = new XXHash64HashFunction();
+    final RingConsistentHash<PhysicalNode> consistentHash =
+        new RingConsistentHash<>(hashFunction);
+    final List<List<RangeMove<PhysicalNode>>> published = new ArrayList<>();
+    final List<Long> epochs = new ArrayList<>();
+    consistentHash.addMembershipListener((epoch, moves) -> {
+      epochs.add(epoch);
+      published.add(moves);
+    });
+    // a failing listener is logged and does not stop the others
+    final MembershipListener<PhysicalNode> failing = (epoch, moves) -> {
+      throw new IllegalStateException("boom");
+    };
+    consistentHash.addMembershipListener(failing);
+
+    // the first node takes over the whole ring
+    final PhysicalNode first = new PhysicalNode();
+    consistentHash.addNode(first, 100);
+    assertEquals(1, published.size());
+    assertEquals(1, published.get(0).size());
+    final RangeMove<PhysicalNode> whole = published.get(0).get(0);
+    assertNull(whole.getOldOwner());
+    assertSame(first, whole.getNewOwner());
+    assertTrue(whole.contains(Long.MIN_VALUE) && whole.contains(0L)
+        && whole.contains(Long.MAX_VALUE));
+    assertTrue(consistentHash.removeMembershipListener(failing));
+
+    final List<PhysicalNode> nodes = new ArrayList<>();
+    nodes.add(first);
+    for (int iter = 0; iter < 9; iter++) {
+      final PhysicalNode node = new PhysicalNode();
+      nodes.add(node);
+      consistentHash.addNode(node, 100);
+    }
+    final int keyCount = 20_000;
+    final long[] hashes = new long[keyCount];
+    final PhysicalNode[] before = new PhysicalNode[keyCount];
+    for (int iter = 0; iter < keyCount; iter++) {
+      hashes[iter] = hashFunction.hash("key_" + iter);
+      before[iter] = consistentHash.chooseNodeByHash(hashes[iter]);
+    }
+
+    // adding a node: exactly the keys that moved fall into a range, and only onto the new node
+    published.clear();
+    final PhysicalNode added = new PhysicalNode();
+    consistentHash.addNode(added, 100);
+    assertEquals(1, published.size());
+    assertEquals(consistentHash.getEpoch(), epochs.get(epochs.size() - 1).longValue());
+    assertMoves(consistentHash, hashes, before, published.get(0));
+    for (final RangeMove<PhysicalNode> move : published.get(0)) {
+      assertSame(added, move.getNewOwner());
+    }
+
+    // dropping a node: only its ranges move, straight back to the previous owners
+    for (int iter = 0; iter < keyCount; iter++) {
+      before[iter] = consistentHash.chooseNodeByHash(hashes[iter]);
+    }
+    published.clear();
+    consistentHash.removeNode(added);
+    assertMoves(consistentHash, hashes, before, published.get(0));
+    for (final RangeMove<PhysicalNode> move : published.get(0)) {
+      assertSame(added, move.getOldOwner());
+    }
+
+    // no-op changes publish nothing
+    published.clear();
+    consistentHash.removeNode(added);
+    consistentHash.setVirtualNodeCount(first, 100);
+    assertTrue(published.isEmpty());
+
+    // diff() against a staged ring predicts the moves of the same change
+    for (int iter = 0; iter < keyCount; iter++) {
+      before[iter] = consistentHash.chooseNodeByHash(hashes[iter]);
+    }
+    final RingConsistentHash<PhysicalNode> staged = new RingConsistentHash<>(hashFunction);
+    for (final PhysicalNode node : nodes) {
+      staged.addNode(node, node == first ? 50 : 100);
+    }
+    final List<RangeMove<PhysicalNode>> predicted = consistentHash.diff(staged);
+    consistentHash.setVirtualNodeCount(first, 50);
+    assertEquals(predicted.size(), published.get(0).size());
+    assertMoves(consistentHash, hashes, before, predicted);
+  }
+
+  private static void assertMoves(final RingConsistentHash<PhysicalNode> consistentHash,
+      final long[] hashes, final PhysicalNode[] before, final List<RangeMove<PhysicalNode>> moves) {
+    int moved = 0;
+    for (int iter = 0; iter < hashes.length; iter++) {
+      final PhysicalNode now = consistentHash.chooseNodeByHash(hashes[iter]);
+      RangeMove<PhysicalNode> range = null;
+      for (final RangeMove<PhysicalNode> move : moves) {
+        if (move.contains(hashes[iter])) {
+          assertNull(range);
+          range = move;
+        }
+      }
+      if (now == before[iter]) {
+        assertNull(range);
+      } else {
+        assertNotNull(range);
+        assertSame(before[iter], range.getOldOwner());
+        assertSame(now, range.getNewOwner());
+        moved++;
+      }
+    }
+    logger.info(String.format("%d of %d keys moved across %d ranges", moved, hashes.length,
+        moves.size()));
+    assertTrue(moved > 0);
+  }
+
+  @Test
+  public void testBulkMembership() {
+    final RingConsistentHash<PhysicalNode> sequential = new RingConsistentHash<>();
+    final RingConsistentHash<PhysicalNode> bulk = new RingConsistentHash<>();
+    final List<PhysicalNode> nodes = new ArrayList<>();
+    for (int iter = 0; iter < 200; iter++) {
+      final PhysicalNode node = new PhysicalNode();
+      nodes.add(node);
+      sequential.addNode(node, 100);
+    }
+    final List<Long> epochs = new ArrayList<>();
+    bulk.addMembershipListener((epoch, moves) -> epochs.add(epoch));
+    long start = System.nanoTime();
+    assertTrue(bulk.addNodes(nodes, 100));
+    logger.info(String.format("Bulk loaded %d virtual nodes in %d millis",
+        bulk.getTotalVirtualNodeCount(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+    // one change, published once
+    assertEquals(1L, bulk.getEpoch());
+    assertEquals(Arrays.asList(1L), epochs);
+    assertSamePlacement(sequential, bulk);
+
+    // grow, shrink, drop, add and leave one alone, all in one go
+    final PhysicalNode added = new PhysicalNode();
+    final Map<PhysicalNode, Integer> counts = new HashMap<>();
+    counts.put(nodes.get(0), 150);
+    counts.put(nodes.get(1), 40);
+    counts.put(nodes.get(2), 0);
+    counts.put(nodes.get(3), 100);
+    counts.put(added, 120);
+    assertTrue(bulk.applyMembership(counts));
+    for (final Map.Entry<PhysicalNode, Integer> entry : counts.entrySet()) {
+      sequential.setVirtualNodeCount(entry.getKey(), entry.getValue());
+    }
+    assertEquals(2L, bulk.getEpoch());
+    assertEquals(200, bulk.getTotalPhysicalNodeCount());
+    assertEquals(0, bulk.getVirtualNodeCount(nodes.get(2)));
+    assertEquals(150, bulk.getVirtualNodeCount(nodes.get(0)));
+    assertSamePlacement(sequential, bulk);
+
+    // a no-op change publishes nothing
+    assertFalse(bulk.applyMembership(counts));
+    assertEquals(2L, bulk.getEpoch());
+
+    // back to the original placement, the dropped node reusing a free ordinal
+    counts.clear();
+    counts.put(nodes.get(0), 100);
+    counts.put(nodes.get(1), 100);
+    counts.put(nodes.get(2), 100);
+    counts.put(added, 0);
+    assertTrue(bulk.applyMembership(counts));
+    final RingConsistentHash<PhysicalNode> original = new RingConsistentHash<>();
+    original.addNodes(nodes, 100);
+    assertSamePlacement(original, bulk);
+
+    try {
+      bulk.addNodes(Arrays.asList(added, added), 10);
+      fail("expected duplicate nodes to be rejected");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  private static void assertSamePlacement(final RingConsistentHash<PhysicalNode> expected,
+      final RingConsistentHash<PhysicalNode> actual) {
+    assertEquals(expected.getTotalVirtualNodeCount(), actual.getTotalVirtualNodeCount());
+    assertEquals(expected.getTotalPhysicalNodeCount(), actual.getTotalPhysicalNodeCount());
+    for (int iter = 0; iter < 20_000; iter++) {
+      final String key = "key_" + iter;
+      assertEquals(expected.chooseNode(key).getKey(), actual.chooseNode(key).getKey());
+      assertEquals(expected.chooseNodes(key, 3), actual.chooseNodes(key, 3));
+    }
+  }
+
+  @Test
+  public void testHashTagColocation() {
+    final RingConsistentHash<PhysicalNode> consistentHash =
+        new RingConsistentHash<>(new HashTagHashFunction(new XXHash64HashFunction()));
+    for (int iter = 0; iter < 20; iter++) {
+      consistentHash.addNode(new PhysicalNode(), 100);
+    }
+    final Set<PhysicalNode> owners = new HashSet<>();
+    final Set<PhysicalNode> untagged = new HashSet<>();
+    for (int user = 0; user < 100; user++) {
+      owners.clear();
+      for (final String field : new String[] {"profile", "sessions", "cart", "orders"}) {
+        owners.add(consistentHash.chooseNode("user:{" + user + "}:" + field));
+        untagged.add(consistentHash.chooseNode("user:" + user + ":" + field));
+      }
+      // every key of one user lands on the node of the bare tag
+      assertEquals(1, owners.size());
+      assertSame(consistentHash.chooseNode(Integer.toString(user)), owners.iterator().next());
+    }
+    assertTrue(untagged.size() > 1);
+
+    // node keys carrying a tag are still hashed whole, so their virtual nodes stay spread out
+    final RingConsistentHash<Node> tagged =
+        new RingConsistentHash<>(new HashTagHashFunction(new XXHash64HashFunction()));
+    for (int iter = 0; iter < 4; iter++) {
+      final String key = "{rack-1}:node-" + iter;
+      tagged.addNode(() -> key, 100);
+    }
+    final RingSnapshot<Node> snapshot = tagged.snapshot();
+    final Set<Long> positions = new HashSet<>();
+    for (int iter = 0; iter < snapshot.size(); iter++) {
+      positions.add(snapshot.positionAt(iter));
+    }
+    assertEquals(400, positions.size());
+    final Set<String> nodeKeys = new HashSet<>();
+    for (int iter = 0; iter < 1_000; iter++) {
+      nodeKeys.add(tagged.chooseNode("key_" + iter).getKey());
+    }
+    assertEquals(4, nodeKeys.size());
+  }
+
 }
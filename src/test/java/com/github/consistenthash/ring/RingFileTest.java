@@ -0,0 +1,112 @@
+package com.github.consistenthash.ring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.consistenthash.hasher.MD5HashFunction;
+import com.github.consistenthash.hasher.XXHash64HashFunction;
+
+/**
+ * Tests for ensuring correctness of saving, mapping and loading ring files.
+ * 
+ * @author gaurav
+ */
+public class RingFileTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testSaveMapAndLoad() throws IOException {
+    final RingConsistentHash<PhysicalNode> ring = new RingConsistentHash<>();
+    final Map<String, PhysicalNode> registry = new HashMap<>();
+    for (int iter = 0; iter < 20; iter++) {
+      final PhysicalNode node = new PhysicalNode();
+      registry.put(node.getKey(), node);
+      assertTrue(ring.addNode(node, 50 + iter));
+    }
+    final Path path = folder.getRoot().toPath().resolve("ring.bin");
+    ring.save(path);
+
+    final MappedRing<PhysicalNode> mapped =
+        MappedRing.open(path, new XXHash64HashFunction(), registry::get);
+    assertEquals(ring.getTotalVirtualNodeCount(), mapped.getTotalVirtualNodeCount());
+    assertEquals(20, mapped.getTotalPhysicalNodeCount());
+    assertEquals(ring.getEpoch(), mapped.getEpoch());
+
+    final RingConsistentHash<PhysicalNode> loaded = new RingConsistentHash<>();
+    loaded.load(path, registry::get);
+    assertEquals(ring.getTotalVirtualNodeCount(), loaded.getTotalVirtualNodeCount());
+    assertEquals(20, loaded.getTotalPhysicalNodeCount());
+    for (PhysicalNode node : registry.values()) {
+      assertEquals(ring.getVirtualNodeCount(node), loaded.getVirtualNodeCount(node));
+    }
+    for (int iter = 0; iter < 10_000; iter++) {
+      final String key = "key_" + iter;
+      final PhysicalNode owner = ring.chooseNode(key);
+      assertSame(owner, mapped.chooseNode(key));
+      assertSame(owner, loaded.chooseNode(key));
+    }
+
+    // the loaded ring stays fully mutable
+    final PhysicalNode removed = registry.values().iterator().next();
+    assertTrue(loaded.removeNode(removed));
+    assertTrue(ring.removeNode(removed));
+    for (int iter = 0; iter < 1_000; iter++) {
+      assertSame(ring.chooseNode("key_" + iter), loaded.chooseNode("key_" + iter));
+    }
+  }
+
+  @Test
+  public void testEmptyRing() throws IOException {
+    final Path path = folder.getRoot().toPath().resolve("empty.bin");
+    new RingConsistentHash<PhysicalNode>().save(path);
+    final MappedRing<PhysicalNode> mapped =
+        MappedRing.open(path, new XXHash64HashFunction(), key -> null);
+    assertNull(mapped.chooseNode("key"));
+    assertEquals(0, mapped.getTotalVirtualNodeCount());
+  }
+
+  @Test
+  public void testRejectsCorruptOrMismatchedFiles() throws IOException {
+    final RingConsistentHash<PhysicalNode> ring = new RingConsistentHash<>();
+    final PhysicalNode node = new PhysicalNode();
+    assertTrue(ring.addNode(node, 10));
+    final Path path = folder.getRoot().toPath().resolve("ring.bin");
+    ring.save(path);
+
+    try {
+      MappedRing.open(path, new MD5HashFunction(), key -> node);
+      fail("expected a hash function mismatch");
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      MappedRing.open(path, new XXHash64HashFunction(), key -> null);
+      fail("expected an unresolved node");
+    } catch (IllegalArgumentException expected) {
+    }
+
+    final byte[] bytes = Files.readAllBytes(path);
+    bytes[bytes.length / 2] ^= 1;
+    final Path corrupt = folder.getRoot().toPath().resolve("corrupt.bin");
+    Files.write(corrupt, bytes);
+    try {
+      MappedRing.open(corrupt, new XXHash64HashFunction(), key -> node);
+      fail("expected a checksum mismatch");
+    } catch (IOException expected) {
+    }
+  }
+
+}
@@ -0,0 +1,146 @@
+package com.github.consistenthash.ring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Test;
+
+/**
+ * Tests for ensuring correctness of the ring's lookup metrics.
+ * 
+ * @author gaurav
+ */
+public class RingMetricsTest {
+  private static final Logger logger = LogManager.getLogger(RingMetricsTest.class.getSimpleName());
+
+  @Test
+  public void testLookupMetrics() {
+    final RingConsistentHash<PhysicalNode> ring = new RingConsistentHash<>();
+    assertNull(ring.getMetrics());
+    final RingMetrics<PhysicalNode> metrics = ring.enableMetrics(1, 4);
+    assertSame(metrics, ring.enableMetrics());
+    assertNull(ring.chooseNode("key"));
+
+    final PhysicalNode first = new PhysicalNode();
+    final PhysicalNode second = new PhysicalNode();
+    assertTrue(ring.addNode(first, 100));
+    assertTrue(ring.addNode(second, 100));
+
+    // one key takes half of all lookups, the rest are spread thin
+    final String hotKey = "key_hot";
+    for (int iter = 0; iter < 10_000; iter++) {
+      ring.chooseNode(hotKey);
+      ring.chooseNode("key_" + iter);
+    }
+    final RingMetrics.Snapshot<PhysicalNode> snapshot = metrics.snapshot();
+    logger.info(snapshot);
+    assertEquals(20_001, snapshot.getLookupCount());
+    assertEquals(1, snapshot.getNullLookupCount());
+    assertEquals(20_001, snapshot.getSampledLookupCount());
+
+    final List<Map.Entry<PhysicalNode, Long>> nodeHits = snapshot.getNodeHits();
+    assertEquals(2, nodeHits.size());
+    assertEquals(20_000, nodeHits.get(0).getValue() + nodeHits.get(1).getValue());
+    assertTrue(nodeHits.get(0).getValue() >= nodeHits.get(1).getValue());
+    // the hot key's owner takes at least half of the traffic
+    assertEquals(ring.chooseNode(hotKey), snapshot.getHotNodes(1.0d).get(0));
+
+    final List<Map.Entry<String, Long>> hotKeys = snapshot.getHotKeys();
+    assertTrue(hotKeys.size() <= 4);
+    assertEquals(hotKey, hotKeys.get(0).getKey());
+    assertTrue(hotKeys.get(0).getValue() >= 10_000);
+
+    assertTrue(snapshot.getLatencyPercentile(50.0d) > 0);
+    assertTrue(snapshot.getLatencyPercentile(50.0d) <= snapshot.getLatencyPercentile(99.9d));
+
+    ring.disableMetrics();
+    assertNull(ring.getMetrics());
+    ring.chooseNode(hotKey);
+    assertEquals(20_002, metrics.snapshot().getLookupCount());
+  }
+
+  @Test
+  public void testDepartedNodesAreForgotten() {
+    final RingConsistentHash<PhysicalNode> ring = new RingConsistentHash<>();
+    final RingMetrics<PhysicalNode> metrics = ring.enableMetrics(1, 4);
+    final PhysicalNode staying = new PhysicalNode();
+    final PhysicalNode leaving = new PhysicalNode();
+    ring.addNode(staying, 100);
+    ring.addNode(leaving, 100);
+    for (int iter = 0; iter < 1_000; iter++) {
+      ring.chooseNode("key_" + iter);
+    }
+    assertEquals(2, metrics.snapshot().getNodeHits().size());
+
+    ring.removeNode(leaving);
+    final List<Map.Entry<PhysicalNode, Long>> nodeHits = metrics.snapshot().getNodeHits();
+    assertEquals(1, nodeHits.size());
+    assertSame(staying, nodeHits.get(0).getKey());
+  }
+
+  @Test
+  public void testHeavyHittersStayBounded() throws Exception {
+    final int capacity = 8;
+    final HeavyHitters heavyHitters = new HeavyHitters(capacity, 1_024);
+    final int threads = 4;
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    final List<Future<?>> futures = new ArrayList<>();
+    for (int thread = 0; thread < threads; thread++) {
+      final Random random = new Random(thread);
+      futures.add(executor.submit(() -> {
+        // three hot keys plus a pool of lukewarm keys whose updates keep racing their evictions
+        for (int iter = 0; iter < 200_000; iter++) {
+          heavyHitters.record(iter % 2 == 0 ? "hot_" + (iter % 6) : "warm_" + random.nextInt(64));
+        }
+      }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+    executor.awaitTermination(10, TimeUnit.SECONDS);
+
+    final List<Map.Entry<String, Long>> top = heavyHitters.top();
+    logger.info(String.format("heavy hitters %s", top));
+    assertTrue(top.size() <= capacity);
+    for (int iter = 0; iter < 3; iter++) {
+      assertTrue(top.get(iter).getKey().startsWith("hot_"));
+    }
+  }
+
+  @Test
+  public void testLatencyHistogramBuckets() {
+    long previous = -1;
+    for (long value = 0; value < 100_000; value++) {
+      final int bucket = LatencyHistogram.bucketOf(value);
+      assertTrue(LatencyHistogram.lowerBound(bucket) <= value);
+      assertTrue(value < LatencyHistogram.lowerBound(bucket + 1));
+      // at most 12.5% relative error
+      assertTrue(LatencyHistogram.lowerBound(bucket + 1) - 1 - value <= Math.max(1, value / 8));
+      assertTrue(bucket >= previous);
+      previous = bucket;
+    }
+    assertEquals(487, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+
+    final long[] counts = new long[488];
+    counts[LatencyHistogram.bucketOf(100)] = 99;
+    counts[LatencyHistogram.bucketOf(10_000)] = 1;
+    assertTrue(LatencyHistogram.percentile(counts, 50.0d) >= 100);
+    assertTrue(LatencyHistogram.percentile(counts, 50.0d) < 113);
+    assertTrue(LatencyHistogram.percentile(counts, 100.0d) >= 10_000);
+  }
+
+}
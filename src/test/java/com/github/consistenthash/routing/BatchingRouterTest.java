@@ -0,0 +1,163 @@
+package com.github.consistenthash.routing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.consistenthash.ring.PhysicalNode;
+import com.github.consistenthash.ring.RingConsistentHash;
+import com.github.consistenthash.ring.RingMetrics;
+
+/**
+ * Tests for ensuring correctness of the batching router.
+ * 
+ * @author gaurav
+ */
+public class BatchingRouterTest {
+  private static final Logger logger =
+      LogManager.getLogger(BatchingRouterTest.class.getSimpleName());
+
+  private final RingConsistentHash<PhysicalNode> ring = new RingConsistentHash<>();
+  private final List<PhysicalNode> nodes = new ArrayList<>();
+  // every operation echoes back the node that served it
+  private final LocalTransport<PhysicalNode, String, PhysicalNode> transport =
+      new LocalTransport<>((node, key, payload) -> node);
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newFixedThreadPool(4);
+    for (int iter = 0; iter < 5; iter++) {
+      final PhysicalNode node = new PhysicalNode();
+      nodes.add(node);
+      ring.addNode(node, 100);
+    }
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testSizeBoundedBatches() throws Exception {
+    final List<CompletableFuture<PhysicalNode>> futures = new ArrayList<>();
+    try (BatchingRouter<PhysicalNode, String, PhysicalNode> router =
+        new BatchingRouter<>(ring, transport, executor, 50, 10, TimeUnit.SECONDS)) {
+      for (int iter = 0; iter < 2_000; iter++) {
+        futures.add(router.submit("key_" + iter, "value_" + iter));
+      }
+      // full batches go out without waiting for the delay
+      for (int iter = 0; iter < futures.size(); iter++) {
+        final CompletableFuture<PhysicalNode> future = futures.get(iter);
+        if (future.isDone()) {
+          assertSame(ring.chooseNode("key_" + iter), future.get());
+        }
+      }
+      logger.info(router);
+    }
+    for (int iter = 0; iter < futures.size(); iter++) {
+      assertSame(ring.chooseNode("key_" + iter), futures.get(iter).get(5, TimeUnit.SECONDS));
+    }
+    assertEquals(2_000L, transport.getOperationCount());
+    // at most one partial batch per node
+    assertTrue(transport.getBatchCount() <= 2_000 / 50 + nodes.size());
+  }
+
+  @Test
+  public void testOneLookupPerOperation() throws Exception {
+    final RingMetrics<PhysicalNode> metrics = ring.enableMetrics();
+    final List<CompletableFuture<PhysicalNode>> futures = new ArrayList<>();
+    try (BatchingRouter<PhysicalNode, String, PhysicalNode> router =
+        new BatchingRouter<>(ring, transport, executor)) {
+      for (int iter = 0; iter < 1_000; iter++) {
+        futures.add(router.submit("key_" + iter, "value_" + iter));
+      }
+    }
+    for (final CompletableFuture<PhysicalNode> future : futures) {
+      future.get(5, TimeUnit.SECONDS);
+    }
+    // the ring never changed, so no operation had to be looked up again
+    assertEquals(1_000L, metrics.snapshot().getLookupCount());
+  }
+
+  @Test
+  public void testTimeBoundedBatches() throws Exception {
+    try (BatchingRouter<PhysicalNode, String, PhysicalNode> router =
+        new BatchingRouter<>(ring, transport, executor, 1_000, 5, TimeUnit.MILLISECONDS)) {
+      final CompletableFuture<PhysicalNode> future = router.submit("lonely", "value");
+      assertSame(ring.chooseNode("lonely"), future.get(5, TimeUnit.SECONDS));
+      assertEquals(1L, router.getBatchCount());
+      assertEquals(0, router.getPendingCount());
+    }
+  }
+
+  @Test
+  public void testRequeueOnMembershipChange() throws Exception {
+    final List<CompletableFuture<PhysicalNode>> futures = new ArrayList<>();
+    try (BatchingRouter<PhysicalNode, String, PhysicalNode> router =
+        new BatchingRouter<>(ring, transport, executor, 100_000, 1, TimeUnit.MINUTES)) {
+      for (int iter = 0; iter < 2_000; iter++) {
+        futures.add(router.submit("key_" + iter, "value_" + iter));
+      }
+      assertEquals(2_000, router.getPendingCount());
+
+      final PhysicalNode removed = nodes.get(2);
+      ring.removeNode(removed);
+      final PhysicalNode added = new PhysicalNode();
+      ring.addNode(added, 100);
+      assertEquals(2_000, router.getPendingCount());
+      assertTrue(router.getRequeuedCount() > 0);
+      logger.info(router);
+    }
+    // everything lands on its owner as of the latest ring
+    for (int iter = 0; iter < futures.size(); iter++) {
+      assertSame(ring.chooseNode("key_" + iter), futures.get(iter).get(5, TimeUnit.SECONDS));
+    }
+    assertEquals(nodes.size(), transport.getBatchCount());
+  }
+
+  @Test
+  public void testFailures() throws Exception {
+    final Transport<PhysicalNode, String, PhysicalNode> broken = (node, keys, payloads) -> {
+      throw new IOException("unreachable " + node);
+    };
+    try (BatchingRouter<PhysicalNode, String, PhysicalNode> router =
+        new BatchingRouter<>(ring, broken, executor, 1, 1, TimeUnit.MILLISECONDS)) {
+      try {
+        router.submit("key", "value").get(5, TimeUnit.SECONDS);
+        fail("expected the transport failure");
+      } catch (ExecutionException expected) {
+        assertTrue(expected.getCause() instanceof IOException);
+      }
+    }
+
+    final RingConsistentHash<PhysicalNode> empty = new RingConsistentHash<>();
+    try (BatchingRouter<PhysicalNode, String, PhysicalNode> router =
+        new BatchingRouter<>(empty, transport, executor)) {
+      try {
+        router.submit("key", "value").get(5, TimeUnit.SECONDS);
+        fail("expected no node to route to");
+      } catch (ExecutionException expected) {
+        assertTrue(expected.getCause() instanceof IllegalStateException);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,160 @@
+package com.github.consistenthash.topology;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Test;
+
+import com.github.consistenthash.ring.PhysicalNode;
+
+/**
+ * Tests for ensuring correctness of topology aware hierarchical placement.
+ * 
+ * @author gaurav
+ */
+public class HierarchicalConsistentHashTest {
+  private static final Logger logger =
+      LogManager.getLogger(HierarchicalConsistentHashTest.class.getSimpleName());
+
+  @Test
+  public void testReplicasSpreadAcrossDomains() {
+    final HierarchicalConsistentHash<PhysicalNode> hierarchy = new HierarchicalConsistentHash<>(2);
+    assertNull(hierarchy.chooseNode("key"));
+    final List<PhysicalNode> nodes = new ArrayList<>();
+    for (int zone = 0; zone < 3; zone++) {
+      for (int rack = 0; rack < 4; rack++) {
+        for (int iter = 0; iter < 2; iter++) {
+          final PhysicalNode node = new PhysicalNode("zone-" + zone, "rack-" + rack);
+          nodes.add(node);
+          assertTrue(hierarchy.addNode(node));
+        }
+      }
+    }
+    assertFalse(hierarchy.addNode(nodes.get(0)));
+    assertEquals(24, hierarchy.getNodeCount());
+
+    final Map<PhysicalNode, Integer> loads = new HashMap<>();
+    for (int iter = 0; iter < 48_000; iter++) {
+      final String key = "key_" + iter;
+      final PhysicalNode owner = hierarchy.chooseNode(key);
+      loads.merge(owner, 1, Integer::sum);
+
+      // three replicas land in three zones
+      final List<PhysicalNode> replicas = hierarchy.chooseNodes(key, 3);
+      assertSame(owner, replicas.get(0));
+      final Set<String> zones = new HashSet<>();
+      for (PhysicalNode replica : replicas) {
+        zones.add(replica.getFailureDomains().get(0));
+      }
+      assertEquals(3, zones.size());
+
+      // five replicas: two zones get two each, on distinct racks
+      if (iter % 10 == 0) {
+        final List<PhysicalNode> wide = hierarchy.chooseNodes(key, 5);
+        assertEquals(5, new HashSet<>(wide).size());
+        final Set<List<String>> racks = new HashSet<>();
+        for (PhysicalNode replica : wide) {
+          racks.add(replica.getFailureDomains());
+        }
+        assertEquals(5, racks.size());
+        assertEquals(24, hierarchy.chooseNodes(key, 30).size());
+      }
+    }
+    for (Map.Entry<PhysicalNode, Integer> load : loads.entrySet()) {
+      logger.info(String.format("%s load:%d", load.getKey().getFailureDomains(), load.getValue()));
+      assertTrue(Math.abs(load.getValue() - 2_000) < 700);
+    }
+    assertEquals(24, loads.size());
+  }
+
+  @Test
+  public void testMembershipChanges() {
+    final HierarchicalConsistentHash<PhysicalNode> hierarchy = new HierarchicalConsistentHash<>(2);
+    final List<PhysicalNode> nodes = new ArrayList<>();
+    for (int zone = 0; zone < 2; zone++) {
+      for (int rack = 0; rack < 3; rack++) {
+        final PhysicalNode node = new PhysicalNode("zone-" + zone, "rack-" + rack);
+        nodes.add(node);
+        assertTrue(hierarchy.addNode(node));
+      }
+    }
+    final Map<String, PhysicalNode> owners = new HashMap<>();
+    for (int iter = 0; iter < 10_000; iter++) {
+      owners.put("key_" + iter, hierarchy.chooseNode("key_" + iter));
+    }
+    final PhysicalNode removed = nodes.get(4);
+    assertTrue(hierarchy.removeNode(removed));
+    assertFalse(hierarchy.removeNode(removed));
+    assertEquals(5, hierarchy.getNodeCount());
+    int moved = 0;
+    for (Map.Entry<String, PhysicalNode> owner : owners.entrySet()) {
+      final PhysicalNode now = hierarchy.chooseNode(owner.getKey());
+      if (now != owner.getValue()) {
+        moved++;
+      } else {
+        assertTrue(now != removed);
+      }
+    }
+    // more than the removed node's own keys move, see the class javadoc
+    logger.info(String.format("moved %d of %d keys", moved, owners.size()));
+    assertTrue(moved < 3_500);
+
+    // emptying a whole zone leaves every replica in the other one
+    for (PhysicalNode node : nodes.subList(0, 3)) {
+      assertTrue(hierarchy.removeNode(node));
+    }
+    for (int iter = 0; iter < 1_000; iter++) {
+      for (PhysicalNode replica : hierarchy.chooseNodes("key_" + iter, 3)) {
+        assertEquals("zone-1", replica.getFailureDomains().get(0));
+      }
+    }
+  }
+
+  @Test
+  public void testLookupsRacingRemovals() throws Exception {
+    final HierarchicalConsistentHash<PhysicalNode> hierarchy = new HierarchicalConsistentHash<>(2);
+    for (int zone = 0; zone < 2; zone++) {
+      assertTrue(hierarchy.addNode(new PhysicalNode("zone-" + zone, "rack-0")));
+    }
+    final AtomicBoolean done = new AtomicBoolean();
+    final AtomicInteger misses = new AtomicInteger();
+    final Thread reader = new Thread(() -> {
+      for (int iter = 0; !done.get(); iter++) {
+        if (hierarchy.chooseNode("key_" + (iter & 1023)) == null
+            || hierarchy.chooseNodes("key_" + (iter & 1023), 2).size() < 2) {
+          misses.incrementAndGet();
+        }
+      }
+    });
+    reader.start();
+    // keep creating and emptying a whole zone and rack while lookups walk into them
+    for (int iter = 0; iter < 500; iter++) {
+      final PhysicalNode churn = new PhysicalNode("zone-2", "rack-" + (iter & 3));
+      assertTrue(hierarchy.addNode(churn));
+      assertTrue(hierarchy.removeNode(churn));
+    }
+    done.set(true);
+    reader.join();
+    assertEquals(0, misses.get());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMismatchedLabels() {
+    new HierarchicalConsistentHash<PhysicalNode>(3).addNode(new PhysicalNode("zone", "rack"));
+  }
+
+}